@@ -0,0 +1,1071 @@
+import java.util.*;
+
+/**
+ * 單一條模擬退火鏈
+ * 每條鏈擁有自己的亂數產生器 (SplittableRandom)、排程狀態、移動物件與增量成本評估器，
+ * 多條鏈可以在不同執行緒上同時執行，彼此不共享任何可變狀態。
+ */
+public class AnnealingChain {
+    private final int chainId;
+    private final SplittableRandom random;
+    /** 增量成本評估器，狀態永遠對應目前解 (currentSchedule) */
+    private final CostEvaluator costEvaluator;
+    /** 房間編號 -> 是否為特殊手術房 (各鏈共用，唯讀) */
+    private final boolean[] specialRoomFlags;
+    /** 需要特殊手術房的手術可移入的房間編號 (沒有特殊手術房時為 null，表示不限制) */
+    private final int[] specialRoomIndices;
+    /** 可重複使用的移動物件，避免在熱迴圈中配置 */
+    private final Move move = new Move();
+    /** 是否印出每個溫度層級的進度 */
+    private final boolean verbose;
+    /** 校準初始溫度時取樣的鄰近解數量 */
+    private final int calibrationSamples;
+    /** 初始溫度下取樣鄰近解的目標接受率 */
+    private double initialAcceptanceRate;
+    /** 最佳解連續多少個溫度層級未改善即提前結束 (0 表示不啟用) */
+    private final int stallLevels;
+    /** 加班與超時皆達到下界時是否提前結束 */
+    private final boolean stopAtLowerBound;
+    /** 移動運算子的自適應選擇 (adaptiveOperators=1 時啟用)；null 表示使用固定的 {@link #perturbSchedule} */
+    private final OperatorSelector operatorSelector;
+
+    // --- 演算法參數定義 ---
+    /** 模擬退火: 預設的初始接受率 (%)，用於動態計算初始溫度；可用 initialAcceptance 參數或 {@link #setInitialAcceptance} 調低 */
+    private static final int DEFAULT_INITIAL_ACCEPTANCE = 95;
+    /** 模擬退火: 終止溫度，當溫度降至此值時演算法結束 */
+    private static final double FINAL_TEMPERATURE = 0.01;
+    /** 模擬退火: 高溫階段的溫度門檻值 (正規化後) */
+    private static final double TH = 0.6;
+    /** 模擬退火: 低溫階段的溫度門檻值 (正規化後) */
+    private static final double TL = 0.2;
+    /** 模擬退火: 冷卻係數的調整因子 alpha */
+    private static final double ALPHA = 1.2;
+    /** 模擬退火: 迭代次數的調整因子 beta */
+    private static final double BETA = 1.5;
+    /** 校準初始溫度時預設的取樣數量 */
+    private static final int DEFAULT_CALIBRATION_SAMPLES = 200;
+    /** 未設定時間上限 */
+    private static final long NO_DEADLINE = Long.MAX_VALUE;
+    /** 局部修復 (repair) 由初始溫度降到終止溫度的溫度層級數 */
+    private static final int REPAIR_LEVELS = 20;
+    /** 熱迴圈中每隔多少次迭代檢查一次時間上限並回報遙測 (2 的次方減 1) */
+    private static final int DEADLINE_CHECK_MASK = 1023;
+    /** 遙測每隔多少次迭代量測一次各步驟的耗時 (2 的次方減 1)，其餘迭代以此推估 */
+    private static final int TIMING_SAMPLE_MASK = 255;
+    /** 自適應運算子選擇每隔多少次迭代量測一次運算子的耗時 (2 的次方減 1) */
+    private static final int OPERATOR_TIMING_MASK = 63;
+
+    // --- 統計資料 ---
+    private long iterationCount;
+    private long acceptedCount;
+    private long rejectedCount;
+    /** 產生移動時因來源房間為空等原因重試的次數 */
+    private long moveRetryCount;
+
+    // --- 遙測 (未設定時為 null，熱迴圈不做任何額外工作) ---
+    private SearchTelemetry telemetry;
+    private long reportedIterations;
+    private long reportedAccepted;
+    private long reportedRejected;
+    private long reportedRetries;
+    private long moveNanos;
+    private long costNanos;
+    private long copyNanos;
+    private long startNanos;
+    private long bestFoundNanos;
+    private Stats stats;
+    /** 搜尋的截止時間 (System.nanoTime)，NO_DEADLINE 表示不限時 */
+    private long deadlineNanos = NO_DEADLINE;
+    /** 已證明的最佳成本 (例如分支定界的結果)，最佳解達到此值即可結束；負數表示未知 */
+    private double provenOptimum = -1;
+
+    // --- 鏈的執行狀態 ---
+    private CompactSchedule currentSchedule;
+    private CompactSchedule bestSchedule;
+    private long bestRegularOvertime;
+    private long bestOvertime;
+    private long bestConflictMinutes;
+    /** 公開給其他執行緒讀取的最佳解快照 (不會再被修改)，供隨時取得目前最佳解 */
+    private volatile CompactSchedule publishedBest;
+    /** 最佳解自上次公開後是否有改善 */
+    private boolean bestChangedSincePublish;
+    /** 局部修復時受影響的房間編號：每次移動的來源或目標必為其中之一；一般退火時為 null (不限制) */
+    private int[] focusRooms;
+
+    /** 搜尋結束的原因 */
+    public enum StopReason {
+        TEMPERATURE("降至終止溫度"),
+        TIME_LIMIT("達到時間上限"),
+        STALLED("最佳解停滯"),
+        LOWER_BOUND("加班與超時達到下界"),
+        OPTIMAL("達到已證明的最佳成本");
+
+        private final String label;
+
+        StopReason(String label) {
+            this.label = label;
+        }
+
+        public String getLabel() {
+            return label;
+        }
+    }
+
+    /** 單一條鏈的執行統計 */
+    public static class Stats {
+        public final int chainId;
+        /** 起始溫度 (平行回火時為此副本的固定溫度) */
+        public final double temperature;
+        public final double bestCost;
+        public final long iterations;
+        public final long accepted;
+        /** 被 Metropolis 準則拒絕的鄰近解數量 (迭代數減去接受與拒絕數即為無法產生移動的次數) */
+        public final long rejected;
+        public final long elapsedMillis;
+        /** 找到最佳解所花費的時間 (毫秒)，用於比較各引擎達到目標成本的速度 */
+        public final long bestFoundMillis;
+        public final StopReason stopReason;
+        /** 各移動運算子的統計 (未啟用自適應運算子選擇時為空) */
+        public final List<OperatorSelector.OperatorStats> operatorStats;
+        /** 分支定界展開的節點數 (退火鏈與平行回火的副本為 0) */
+        public final long nodesExplored;
+
+        public Stats(int chainId, double temperature, double bestCost, long iterations, long accepted,
+                long rejected, long elapsedMillis, long bestFoundMillis, StopReason stopReason) {
+            this(chainId, temperature, bestCost, iterations, accepted, rejected, elapsedMillis, bestFoundMillis,
+                    stopReason, Collections.emptyList());
+        }
+
+        public Stats(int chainId, double temperature, double bestCost, long iterations, long accepted,
+                long rejected, long elapsedMillis, long bestFoundMillis, StopReason stopReason,
+                List<OperatorSelector.OperatorStats> operatorStats) {
+            this(chainId, temperature, bestCost, iterations, accepted, rejected, elapsedMillis, bestFoundMillis,
+                    stopReason, operatorStats, 0);
+        }
+
+        private Stats(int chainId, double temperature, double bestCost, long iterations, long accepted,
+                long rejected, long elapsedMillis, long bestFoundMillis, StopReason stopReason,
+                List<OperatorSelector.OperatorStats> operatorStats, long nodesExplored) {
+            this.chainId = chainId;
+            this.temperature = temperature;
+            this.bestCost = bestCost;
+            this.iterations = iterations;
+            this.accepted = accepted;
+            this.rejected = rejected;
+            this.elapsedMillis = elapsedMillis;
+            this.bestFoundMillis = bestFoundMillis;
+            this.stopReason = stopReason;
+            this.operatorStats = operatorStats;
+            this.nodesExplored = nodesExplored;
+        }
+
+        /**
+         * 分支定界直接證明最佳解 (不需接續退火) 時的統計：沒有退火迭代，只記錄展開的節點數
+         * * @param bestCost 最佳成本
+         *
+         * @param nodesExplored   展開的節點數
+         * @param elapsedMillis   分支定界的耗時 (毫秒)
+         * @param bestFoundMillis 找到最佳解所花費的時間 (毫秒)
+         * @return 統計資料
+         */
+        public static Stats branchAndBound(double bestCost, long nodesExplored, long elapsedMillis,
+                long bestFoundMillis) {
+            return new Stats(0, 0, bestCost, 0, 0, 0, elapsedMillis, bestFoundMillis, StopReason.OPTIMAL,
+                    Collections.emptyList(), nodesExplored);
+        }
+    }
+
+    /**
+     * 建構子
+     * * @param chainId 鏈的編號
+     *
+     * @param dataManager      資料管理器 (只讀取參數：calibrationSamples、initialAcceptance、stallLevels、stopAtLowerBound、
+     *                         adaptiveOperators)
+     * @param specialRoomFlags 房間編號 -> 是否為特殊手術房
+     * @param random           此鏈專用的亂數產生器
+     * @param verbose          是否印出每個溫度層級的進度
+     */
+    public AnnealingChain(int chainId, DataManager dataManager, boolean[] specialRoomFlags, SplittableRandom random,
+            boolean verbose) {
+        this.chainId = chainId;
+        this.costEvaluator = new CostEvaluator(dataManager);
+        this.specialRoomFlags = specialRoomFlags;
+        this.specialRoomIndices = eligibleSpecialRooms(specialRoomFlags);
+        this.random = random;
+        this.verbose = verbose;
+        this.calibrationSamples = Math.max(1,
+                dataManager.getArguments().getOrDefault("calibrationSamples", DEFAULT_CALIBRATION_SAMPLES));
+        int acceptance = dataManager.getArguments().getOrDefault("initialAcceptance", DEFAULT_INITIAL_ACCEPTANCE);
+        this.initialAcceptanceRate = Math.min(99, Math.max(1, acceptance)) / 100.0;
+        this.stallLevels = Math.max(0, dataManager.getArguments().getOrDefault("stallLevels", 0));
+        this.stopAtLowerBound = dataManager.getArguments().getOrDefault("stopAtLowerBound", 0) != 0;
+        this.operatorSelector = dataManager.getArguments().getOrDefault("adaptiveOperators", 0) != 0
+                ? new OperatorSelector()
+                : null;
+    }
+
+    /**
+     * 從指定的初始解開始執行模擬退火
+     * * @param initialSchedule 初始排程 (不會被修改)
+     *
+     * @return 此鏈找到的最佳排程
+     */
+    public CompactSchedule run(CompactSchedule initialSchedule) {
+        // 1. 初始化目前解與最佳解
+        start(initialSchedule);
+
+        // 2. 根據初始接受率動態計算初始溫度
+        double initialTemperature = calibrateTemperature();
+        double currentTemperature = initialTemperature;
+        if (verbose) {
+            System.out.println("計算出的初始溫度為: " + String.format("%.2f", initialTemperature));
+        }
+
+        // 3. 計算問題規模 n (手術數量 * 手術房數量)，並據此計算每個溫度的迭代次數
+        int n = currentSchedule.getSurgeryCount() * currentSchedule.getRoomCount();
+        int iterations = iterationsPerLevel(currentSchedule);
+
+        // 新增：用於追蹤上一次的加班與超時時間
+        long lastRegularOvertime = -1;
+        long lastOvertime = -1;
+
+        // 4. 模擬退火主要迴圈，直到溫度降至終止溫度，或提前符合結束條件 (時間上限、停滯、下界)
+        StopReason reason = StopReason.TEMPERATURE;
+        int stalledLevels = 0;
+        int levelsDone = 0;
+        long loopStartNanos = System.nanoTime();
+        while (currentTemperature > FINAL_TEMPERATURE) {
+            double levelStartCost = bestSchedule.getCost();
+            sweep(currentTemperature, initialTemperature, iterations);
+            publishBest();
+            reportLevel(currentTemperature);
+            stalledLevels = bestSchedule.getCost() < levelStartCost ? 0 : stalledLevels + 1;
+
+            if (verbose) {
+                printProgress(currentTemperature, bestRegularOvertime, bestOvertime, lastRegularOvertime,
+                        lastOvertime);
+            }
+
+            // 更新上一次的加班與超時時間
+            lastRegularOvertime = bestRegularOvertime;
+            lastOvertime = bestOvertime;
+
+            StopReason earlyStop = checkEarlyStop(stalledLevels);
+            if (earlyStop != null) {
+                reason = earlyStop;
+                if (verbose) {
+                    System.out.println("提前結束：" + earlyStop.getLabel());
+                }
+                break;
+            }
+
+            // 根據冷卻策略降低溫度；有時間上限時，若剩餘時間不足以照原本的冷卻係數降到終止溫度則加快冷卻
+            levelsDone++;
+            currentTemperature *= budgetedCoolingRate(calculateCoolingRate(n), currentTemperature,
+                    (System.nanoTime() - loopStartNanos) / levelsDone);
+        }
+
+        finish(initialTemperature, reason);
+        return bestSchedule;
+    }
+
+    /**
+     * 局部修復：從已接近最佳解的排程出發，只針對受影響的房間執行短時間的低溫退火
+     * 每次移動各有一半機率以受影響的房間為來源或為目標，其餘房間只會與受影響的房間交換或移入移出手術；
+     * 初始溫度依 initialAcceptance 參數 (呼叫端通常設為較低的接受率) 校準，並以固定的總迭代數在
+     * REPAIR_LEVELS 個溫度層級內降到終止溫度，不依問題規模決定迭代數
+     * * @param initialSchedule 已局部修補的排程 (不會被修改)
+     *
+     * @param rooms      受影響的房間編號；空陣列表示不限制
+     * @param iterations 總迭代數
+     * @return 此鏈找到的最佳排程
+     */
+    public CompactSchedule repair(CompactSchedule initialSchedule, int[] rooms, int iterations) {
+        start(initialSchedule);
+        focusRooms = rooms.length > 0 ? rooms.clone() : null;
+        try {
+            double initialTemperature = calibrateTemperature(Math.max(1, Math.min(calibrationSamples, iterations)));
+            double coolingRate = Math.min(1, Math.pow(FINAL_TEMPERATURE / initialTemperature, 1.0 / REPAIR_LEVELS));
+            int levelIterations = Math.max(1, iterations / REPAIR_LEVELS);
+            double temperature = initialTemperature;
+            for (int level = 0; level < REPAIR_LEVELS && !pastDeadline(); level++) {
+                sweep(temperature, initialTemperature, levelIterations);
+                temperature *= coolingRate;
+            }
+            // 與 run 相同，統計中記錄的是起始溫度
+            finish(initialTemperature, pastDeadline() ? StopReason.TIME_LIMIT : StopReason.TEMPERATURE);
+        } finally {
+            focusRooms = null;
+        }
+        return bestSchedule;
+    }
+
+    /**
+     * 以指定的初始解重設此鏈的目前解、最佳解與統計資料
+     * * @param initialSchedule 初始排程 (不會被修改)
+     */
+    public void start(CompactSchedule initialSchedule) {
+        startNanos = System.nanoTime();
+        bestFoundNanos = startNanos;
+        iterationCount = 0;
+        acceptedCount = 0;
+        rejectedCount = 0;
+        moveRetryCount = 0;
+        reportedIterations = 0;
+        reportedAccepted = 0;
+        reportedRejected = 0;
+        reportedRetries = 0;
+        currentSchedule = initialSchedule.copy();
+        calculateCost(currentSchedule); // 計算初始解的成本，並作為增量評估的基準
+        bestSchedule = currentSchedule.copy();
+        bestRegularOvertime = costEvaluator.getTotalRegularOvertime();
+        bestOvertime = costEvaluator.getTotalOvertime();
+        bestConflictMinutes = costEvaluator.getTotalConflictMinutes();
+        publishedBest = bestSchedule.copy();
+        bestChangedSincePublish = false;
+    }
+
+    /**
+     * 設定搜尋的截止時間；超過後 {@link #sweep} 會在下一次檢查時結束，{@link #checkEarlyStop} 回傳 TIME_LIMIT
+     * * @param deadlineNanos 以 System.nanoTime 表示的截止時間，可由 {@link #deadlineAfter} 取得
+     */
+    public void setDeadline(long deadlineNanos) {
+        this.deadlineNanos = deadlineNanos;
+    }
+
+    /**
+     * 設定已證明的最佳成本；最佳解達到此值時 {@link #checkEarlyStop} 回傳 OPTIMAL
+     * * @param cost 已證明的最佳成本，負數表示未知
+     */
+    public void setProvenOptimum(double cost) {
+        this.provenOptimum = cost;
+    }
+
+    /**
+     * 以指定的初始接受率取代 initialAcceptance 參數 (暖啟動、貪婪或局部修復的初始解由較低的溫度開始)，
+     * 不修改 DataManager 的參數
+     * * @param percent 校準初始溫度的目標接受率 (%)
+     */
+    public void setInitialAcceptance(int percent) {
+        this.initialAcceptanceRate = Math.min(99, Math.max(1, percent)) / 100.0;
+    }
+
+    /**
+     * 設定遙測；各計數會定期彙整到其中
+     * * @param telemetry 遙測，null 表示不記錄
+     */
+    public void setTelemetry(SearchTelemetry telemetry) {
+        this.telemetry = telemetry;
+    }
+
+    /**
+     * 由時間上限計算截止時間
+     * * @param timeLimitMillis 時間上限 (毫秒)，0 或負數表示不限時
+     *
+     * @return 以 System.nanoTime 表示的截止時間
+     */
+    public static long deadlineAfter(long timeLimitMillis) {
+        return timeLimitMillis > 0 ? System.nanoTime() + timeLimitMillis * 1_000_000L : NO_DEADLINE;
+    }
+
+    /**
+     * 檢查是否符合提前結束的條件
+     * * @param stalledLevels 最佳解已連續未改善的溫度層級 (或回合) 數
+     *
+     * @return 結束原因；尚未符合任何條件時回傳 null
+     */
+    public StopReason checkEarlyStop(int stalledLevels) {
+        if (pastDeadline()) {
+            return StopReason.TIME_LIMIT;
+        }
+        if (provenOptimum >= 0 && bestSchedule.getCost() <= provenOptimum + 1e-9) {
+            return StopReason.OPTIMAL;
+        }
+        if (stallLevels > 0 && stalledLevels >= stallLevels) {
+            return StopReason.STALLED;
+        }
+        if (stopAtLowerBound && bestRegularOvertime <= costEvaluator.getRegularOvertimeLowerBound()
+                && bestOvertime <= costEvaluator.getOvertimeLowerBound() && bestConflictMinutes == 0) {
+            return StopReason.LOWER_BOUND;
+        }
+        return null;
+    }
+
+    /** 若最佳解自上次公開後有改善，將其快照公開給其他執行緒 (每個溫度層級結束時呼叫) */
+    public void publishBest() {
+        if (bestChangedSincePublish) {
+            publishedBest = bestSchedule.copy();
+            bestChangedSincePublish = false;
+        }
+    }
+
+    /**
+     * 取得最近一次公開的最佳解快照，可在搜尋進行中由其他執行緒呼叫
+     * * @return 最佳解快照 (不會再被修改)；尚未開始時為 null
+     */
+    public CompactSchedule getPublishedBest() {
+        return publishedBest;
+    }
+
+    /**
+     * 取得多條鏈中目前公開的最佳解 (相同成本時取編號較小的鏈)
+     * * @param chains 退火鏈
+     *
+     * @return 成本最低的快照；沒有任何快照時為 null
+     */
+    public static CompactSchedule bestPublished(List<AnnealingChain> chains) {
+        CompactSchedule best = null;
+        for (AnnealingChain chain : chains) {
+            CompactSchedule candidate = chain.getPublishedBest();
+            if (candidate != null && (best == null || candidate.getCost() < best.getCost())) {
+                best = candidate;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * 以目前解計算符合初始接受率的初始溫度 (取樣數量由 calibrationSamples 參數決定)
+     * * @return 初始溫度
+     */
+    public double calibrateTemperature() {
+        return calibrateTemperature(calibrationSamples);
+    }
+
+    /**
+     * 以目前解計算符合初始接受率 (initialAcceptance 參數，預設 95%) 的初始溫度
+     * 先一次取樣固定數量的鄰近解並記錄其成本差異，之後對這組快取的差異二分搜尋溫度，
+     * 不需在每個候選溫度重新產生鄰近解，結果也不受取樣雜訊影響
+     * * @param sampleSize 取樣的鄰近解數量
+     *
+     * @return 初始溫度
+     */
+    public double calibrateTemperature(int sampleSize) {
+        return findInitialTemperature(sampleUphillDeltas(currentSchedule, sampleSize), sampleSize,
+                initialAcceptanceRate);
+    }
+
+    /**
+     * 在固定溫度下執行指定次數的 Metropolis 迭代
+     * * @param temperature 目前溫度
+     *
+     * @param referenceTemperature 用來正規化溫度以判斷擾動階段的最高溫度 (退火時為初始溫度)
+     * @param iterations           迭代次數 (超過截止時間時提前結束)
+     */
+    public void sweep(double temperature, double referenceTemperature, int iterations) {
+        int phase = phaseOf(temperature, referenceTemperature);
+        for (int i = 0; i < iterations; i++) {
+            if ((i & DEADLINE_CHECK_MASK) == 0) {
+                if (pastDeadline()) {
+                    break;
+                }
+                reportCounters(phase);
+            }
+            iterationCount++;
+            boolean timed = telemetry != null && (i & TIMING_SAMPLE_MASK) == 0;
+            long moveStart = timed ? System.nanoTime() : 0;
+            // 擾動目前解以產生一個鄰近解：移動直接套用在目前解上，找不到有效移動時跳過此次迭代
+            // (啟用自適應選擇時由選擇器抽選運算子，局部修復仍使用固定的擾動方式)
+            MoveOperator operator = operatorSelector != null && focusRooms == null
+                    ? operatorSelector.select(random)
+                    : null;
+            boolean operatorTimed = operator != null && (i & OPERATOR_TIMING_MASK) == 0;
+            long operatorStart = operatorTimed ? System.nanoTime() : 0;
+            if (operator == null ? !perturbSchedule(currentSchedule, temperature, referenceTemperature)
+                    : !applyOperator(operator, currentSchedule, temperature, referenceTemperature)) {
+                // 找不到有效移動的嘗試同樣花費時間，一併計入產生移動與運算子的耗時
+                if (timed) {
+                    moveNanos += (System.nanoTime() - moveStart) * (TIMING_SAMPLE_MASK + 1);
+                }
+                if (operator != null) {
+                    operatorSelector.recordFailure(operator);
+                    if (operatorTimed) {
+                        operatorSelector.recordTime(operator, System.nanoTime() - operatorStart);
+                    }
+                }
+                continue;
+            }
+            long costStart = timed ? System.nanoTime() : 0;
+            // 鄰近解的成本由 costEvaluator 依受影響的兩個房間增量算出 (醫師衝突的變化先以下界計入)
+            double boundDelta = costEvaluator.propose(currentSchedule, move) - currentSchedule.getCost();
+            if (timed) {
+                long now = System.nanoTime();
+                moveNanos += (costStart - moveStart) * (TIMING_SAMPLE_MASK + 1);
+                costNanos += (now - costStart) * (TIMING_SAMPLE_MASK + 1);
+            }
+
+            if (acceptMove(boundDelta, temperature)) {
+                acceptedCount++;
+                double neighborCost = costEvaluator.resolveProposal();
+                costEvaluator.commit();
+                if (operator != null) {
+                    operatorSelector.recordAccepted(operator, neighborCost - currentSchedule.getCost());
+                }
+                currentSchedule.setCost(neighborCost);
+                // 如果目前解優於歷史最佳解，將其內容複製到最佳解 (不配置新陣列)
+                if (currentSchedule.getCost() < bestSchedule.getCost()) {
+                    recordBest();
+                }
+            } else {
+                // 拒絕：還原目前解
+                rejectedCount++;
+                move.undo(currentSchedule);
+                costEvaluator.clearProposal();
+            }
+            if (operatorTimed) {
+                operatorSelector.recordTime(operator, System.nanoTime() - operatorStart);
+            }
+        }
+        reportCounters(phase);
+        if (operatorSelector != null && focusRooms == null) {
+            operatorSelector.endLevel();
+        }
+    }
+
+    /**
+     * 將一個溫度層級 (或回合) 結束時的成本回報給遙測
+     * * @param temperature 此層級的溫度
+     */
+    public void reportLevel(double temperature) {
+        if (telemetry != null) {
+            telemetry.levelCompleted(chainId, temperature, currentSchedule.getCost(), bestSchedule.getCost());
+        }
+    }
+
+    // 將自上次回報以來的計數彙整到遙測
+    private void reportCounters(int phase) {
+        if (telemetry == null) {
+            return;
+        }
+        telemetry.record(phase, iterationCount - reportedIterations, acceptedCount - reportedAccepted,
+                rejectedCount - reportedRejected, moveRetryCount - reportedRetries, moveNanos, costNanos, copyNanos);
+        reportedIterations = iterationCount;
+        reportedAccepted = acceptedCount;
+        reportedRejected = rejectedCount;
+        reportedRetries = moveRetryCount;
+        moveNanos = 0;
+        costNanos = 0;
+        copyNanos = 0;
+    }
+
+    // 依正規化溫度判斷遙測的溫度階段
+    private static int phaseOf(double temperature, double referenceTemperature) {
+        double tNorm = (temperature - FINAL_TEMPERATURE) / (referenceTemperature - FINAL_TEMPERATURE);
+        if (tNorm > TH) {
+            return SearchTelemetry.HIGH_PHASE;
+        }
+        return tNorm < TL ? SearchTelemetry.LOW_PHASE : SearchTelemetry.MID_PHASE;
+    }
+
+    /**
+     * 與另一條鏈交換目前解 (平行回火的副本交換)，交換後各自以完整掃描重設增量評估狀態
+     * * @param other 另一條鏈
+     */
+    public void exchangeWith(AnnealingChain other) {
+        CompactSchedule mine = currentSchedule;
+        currentSchedule = other.currentSchedule;
+        other.currentSchedule = mine;
+        calculateCost(currentSchedule);
+        other.calculateCost(other.currentSchedule);
+        if (currentSchedule.getCost() < bestSchedule.getCost()) {
+            recordBest();
+        }
+        if (other.currentSchedule.getCost() < other.bestSchedule.getCost()) {
+            other.recordBest();
+        }
+    }
+
+    /**
+     * 結束此鏈的執行並產生統計資料
+     * * @param temperature 記錄於統計中的溫度：退火與局部修復為起始溫度，平行回火為副本的固定溫度
+     *
+     * @param reason 結束原因
+     */
+    public void finish(double temperature, StopReason reason) {
+        long now = System.nanoTime();
+        publishBest();
+        stats = new Stats(chainId, temperature, bestSchedule.getCost(), iterationCount, acceptedCount,
+                rejectedCount, (now - startNanos) / 1_000_000, (bestFoundNanos - startNanos) / 1_000_000, reason,
+                operatorSelector != null ? operatorSelector.snapshot()
+                        : Collections.<OperatorSelector.OperatorStats>emptyList());
+    }
+
+    public double getCurrentCost() {
+        return currentSchedule.getCost();
+    }
+
+    public CompactSchedule getBestSchedule() {
+        return bestSchedule;
+    }
+
+    public Stats getStats() {
+        return stats;
+    }
+
+    // 以下套件層級的存取方法供基準測試 (bench/) 直接量測熱迴圈的各個步驟
+    CompactSchedule getCurrentSchedule() {
+        return currentSchedule;
+    }
+
+    Move getLastMove() {
+        return move;
+    }
+
+    /**
+     * 根據問題規模 n (手術數量 * 手術房數量) 計算每個溫度層級的迭代次數
+     * * @param schedule 排程
+     *
+     * @return 迭代次數
+     */
+    public static int iterationsPerLevel(CompactSchedule schedule) {
+        return (int) Math.round(BETA * schedule.getSurgeryCount() * schedule.getRoomCount());
+    }
+
+    /**
+     * 計算從初始溫度依冷卻策略降到終止溫度所需的溫度層級數
+     * * @param initialTemperature 初始溫度
+     *
+     * @param schedule 排程
+     * @return 溫度層級數
+     */
+    public static int levelCount(double initialTemperature, CompactSchedule schedule) {
+        double coolingRate = calculateCoolingRate(schedule.getSurgeryCount() * schedule.getRoomCount());
+        return Math.max(1, (int) Math.ceil(Math.log(FINAL_TEMPERATURE / initialTemperature) / Math.log(coolingRate)));
+    }
+
+    // 將目前解記錄為最佳解
+    private void recordBest() {
+        long copyStart = telemetry != null ? System.nanoTime() : 0;
+        bestSchedule.copyFrom(currentSchedule);
+        if (telemetry != null) {
+            copyNanos += System.nanoTime() - copyStart;
+        }
+        bestRegularOvertime = costEvaluator.getTotalRegularOvertime();
+        bestOvertime = costEvaluator.getTotalOvertime();
+        bestConflictMinutes = costEvaluator.getTotalConflictMinutes();
+        bestFoundNanos = System.nanoTime();
+        bestChangedSincePublish = true;
+    }
+
+    /**
+     * 依剩餘時間調整冷卻係數，使退火在截止時間前降到終止溫度 (不限時時維持原本的冷卻係數)
+     * * @param coolingRate 原本的冷卻係數
+     *
+     * @param temperature   目前溫度
+     * @param nanosPerLevel 目前為止每個溫度層級的平均耗時
+     * @return 實際使用的冷卻係數
+     */
+    private double budgetedCoolingRate(double coolingRate, double temperature, long nanosPerLevel) {
+        if (deadlineNanos == NO_DEADLINE) {
+            return coolingRate;
+        }
+        long levelsLeft = Math.max(1, (deadlineNanos - System.nanoTime()) / Math.max(1, nanosPerLevel));
+        return Math.min(coolingRate, Math.pow(FINAL_TEMPERATURE / temperature, 1.0 / levelsLeft));
+    }
+
+    private boolean pastDeadline() {
+        return deadlineNanos != NO_DEADLINE && System.nanoTime() - deadlineNanos >= 0;
+    }
+
+    // 印出當前溫度層級的最佳解加班與超時時間，以及相對上一層級的改善率
+    private void printProgress(double temperature, long currentRegularOvertime, long currentOvertime,
+            long lastRegularOvertime, long lastOvertime) {
+        if (lastRegularOvertime != -1) {
+            double regularOvertimeReduction = lastRegularOvertime > 0
+                    ? (1 - (double) currentRegularOvertime / lastRegularOvertime) * 100
+                    : 0;
+            double overtimeReduction = lastOvertime > 0 ? (1 - (double) currentOvertime / lastOvertime) * 100 : 0;
+
+            System.out.printf("溫度: %.2f -> 加班時間: %d (下降 %.2f%%), 超時時間: %d (下降 %.2f%%)\n",
+                    temperature, currentRegularOvertime, regularOvertimeReduction,
+                    currentOvertime, overtimeReduction);
+        } else {
+            System.out.printf("溫度: %.2f -> 初始加班時間: %d, 初始超時時間: %d\n",
+                    temperature, currentRegularOvertime, currentOvertime);
+        }
+    }
+
+    /**
+     * 計算排程的成本函數
+     * 成本 = 總加班成本 + 總超時成本 (權重為2) + 各房間使用時間的平衡成本
+     * 此方法會完整掃描排程，並以該排程重設 costEvaluator 的增量狀態；
+     * 退火迴圈中的鄰近解則由 {@link CostEvaluator#propose} 只針對受影響的兩個房間計算
+     * * @param schedule 待計算成本的排程
+     *
+     * @return 計算出的總成本
+     */
+    private double calculateCost(CompactSchedule schedule) {
+        return costEvaluator.reset(schedule);
+    }
+
+    /**
+     * 檢查排程是否滿足所有限制 (例如：特殊手術是否在特殊房)
+     * * @param schedule 待檢查的排程
+     *
+     * @return 如果排程有效則回傳 true，否則 false
+     */
+    boolean isValid(CompactSchedule schedule) {
+        for (int r = 0; r < schedule.getRoomCount(); r++) {
+            if (specialRoomFlags[r]) {
+                continue;
+            }
+            for (int i = 0; i < schedule.length(r); i++) {
+                // 檢查要求特殊房的手術是否被安排在非特殊房中
+                if (schedule.isSpecialRequired(schedule.get(r, i))) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 使用二分搜尋法找到適合的初始溫度
+     * 目標是找到一個溫度，使得取樣鄰近解的接受率約等於目標接受率；
+     * 若成本不上升的取樣 (一律接受) 已達目標接受率，任何溫度都符合，改以成本上升的取樣本身的接受率為目標，
+     * 以免較低的目標接受率 (例如暖啟動時) 在較差的初始解上退化為搜尋下限的溫度
+     * * @param uphillDeltas 取樣中成本上升的差異 (其餘取樣一律接受)
+     *
+     * @param sampleSize     取樣總數
+     * @param acceptanceRate 目標接受率
+     * @return 計算出的初始溫度
+     */
+    private static double findInitialTemperature(double[] uphillDeltas, int sampleSize, double acceptanceRate) {
+        if (sampleSize - uphillDeltas.length >= acceptanceRate * sampleSize && uphillDeltas.length > 0) {
+            sampleSize = uphillDeltas.length;
+        }
+        double low = 0.01, high = 10000;
+        double mid;
+        while (high - low > 0.1) {
+            mid = low + (high - low) / 2.0;
+            if (calculateAcceptanceRate(uphillDeltas, sampleSize, mid) < acceptanceRate) {
+                low = mid;
+            } else {
+                high = mid;
+            }
+        }
+        return high;
+    }
+
+    /**
+     * 在給定溫度下，計算取樣鄰近解的期望接受率
+     * 成本下降 (或無法產生移動) 的取樣必定接受，成本上升者以 exp(-deltaE / T) 的機率接受
+     * * @param uphillDeltas 取樣中成本上升的差異
+     *
+     * @param sampleSize  取樣總數
+     * @param temperature 測試溫度
+     * @return 接受率
+     */
+    private static double calculateAcceptanceRate(double[] uphillDeltas, int sampleSize, double temperature) {
+        double accepted = sampleSize - uphillDeltas.length;
+        for (double deltaE : uphillDeltas) {
+            accepted += Math.exp(-deltaE / temperature);
+        }
+        return accepted / sampleSize;
+    }
+
+    /**
+     * 以中低溫階段的移動 (移動最短手術) 取樣鄰近解，回傳其中成本上升的差異
+     * 原本逐一溫度試算時，收斂範圍內的候選溫度皆落在中低溫階段，因此沿用相同的移動以維持校準結果的尺度
+     * * @param schedule 目前排程 (取樣後維持不變)
+     *
+     * @param sampleSize 取樣的鄰近解數量
+     * @return 成本上升的差異
+     */
+    private double[] sampleUphillDeltas(CompactSchedule schedule, int sampleSize) {
+        double[] deltas = new double[sampleSize];
+        int uphill = 0;
+        for (int i = 0; i < sampleSize; i++) {
+            if (perturbSchedule(schedule, FINAL_TEMPERATURE, 1)) {
+                double deltaE = evaluateMove(move) - schedule.getCost();
+                // 只是試算，立即還原
+                move.undo(schedule);
+                costEvaluator.clearProposal();
+                if (deltaE > 0) {
+                    deltas[uphill++] = deltaE;
+                }
+            }
+        }
+        return Arrays.copyOf(deltas, uphill);
+    }
+
+    /**
+     * 根據溫度階段對目前排程進行擾動，以產生鄰近解
+     * 目標房間只從被移動手術可進入的房間中抽選，交換時換出的手術若不能進入來源房間則改為插入，
+     * 因此每個產生的鄰近解都滿足特殊手術房限制，不需再完整掃描排程檢查。
+     * 移動會直接套用在目前排程上並記錄於 {@link #move}，呼叫端需在拒絕時以 {@link Move#undo} 還原
+     * * @param currentSchedule 目前的排程 (會被修改)
+     *
+     * @param temp        目前溫度
+     * @param initialTemp 初始溫度
+     * @return 是否成功套用一個移動；若多次都抽到空房間或沒有可進入的房間則回傳 false (排程維持不變)
+     */
+    boolean perturbSchedule(CompactSchedule currentSchedule, double temp, double initialTemp) {
+        int maxTries = 50; // 最大嘗試次數，避免無限迴圈
+        int roomCount = currentSchedule.getRoomCount();
+        if (roomCount < 2)
+            return false;
+
+        // 正規化溫度，用於判斷目前是高、中、低溫的哪個階段
+        double tNorm = (temp - FINAL_TEMPERATURE) / (initialTemp - FINAL_TEMPERATURE);
+
+        for (int tries = 0; tries < maxTries; tries++) {
+            // 局部修復時一半機率移入受影響的房間 (來源不限)，另一半機率由受影響的房間移出
+            boolean inbound = focusRooms != null && random.nextBoolean();
+            int room1 = focusRooms != null && !inbound ? focusRooms[random.nextInt(focusRooms.length)]
+                    : random.nextInt(roomCount);
+            int length1 = currentSchedule.length(room1);
+            if (length1 == 0) {
+                moveRetryCount++;
+                continue; // 如果來源房間是空的，就重來
+            }
+
+            // 高溫階段：移動手術時間最長的手術，進行大範圍擾動
+            // 中低溫階段：移動手術時間最短的手術，進行小範圍微調
+            int sourceIndex = tNorm > TH ? currentSchedule.indexOfLongest(room1)
+                    : currentSchedule.indexOfShortest(room1);
+            int surgery = currentSchedule.get(room1, sourceIndex);
+
+            // 從此手術可進入的房間中選擇一個不同於來源的目標房間
+            int room2 = inbound ? focusRooms[random.nextInt(focusRooms.length)]
+                    : pickTargetRoom(currentSchedule, surgery, room1, roomCount);
+            if (room2 < 0 || room2 == room1 || !canHost(currentSchedule, room2, surgery)) {
+                moveRetryCount++;
+                continue;
+            }
+            int length2 = currentSchedule.length(room2);
+
+            // 50% 的機率進行交換 (swap)，50% 的機率進行插入 (insert)；換出的手術不能進入來源房間時改為插入
+            int swapIndex = random.nextBoolean() && length2 > 0 ? random.nextInt(length2) : -1;
+            if (swapIndex >= 0 && canHost(currentSchedule, room1, currentSchedule.get(room2, swapIndex))) {
+                move.set(Move.Type.SWAP, room1, sourceIndex, room2, swapIndex);
+            } else {
+                int insertIndex = length2 == 0 ? 0 : random.nextInt(length2 + 1);
+                move.set(Move.Type.INSERT, room1, sourceIndex, room2, insertIndex);
+            }
+            move.apply(currentSchedule);
+            return true;
+        }
+
+        // 如果嘗試多次都無法產生移動
+        return false;
+    }
+
+    /**
+     * 以指定的運算子產生一個移動並直接套用在目前排程上 (與 {@link #perturbSchedule} 相同，產生的移動都滿足特殊手術房限制)
+     * * @param operator 移動運算子
+     *
+     * @param schedule    目前的排程 (會被修改)
+     * @param temp        目前溫度
+     * @param initialTemp 初始溫度
+     * @return 是否成功套用一個移動；多次嘗試都找不到有效移動時回傳 false (排程維持不變)
+     */
+    boolean applyOperator(MoveOperator operator, CompactSchedule schedule, double temp, double initialTemp) {
+        int roomCount = schedule.getRoomCount();
+        if (roomCount < 2) {
+            return false;
+        }
+        double tNorm = (temp - FINAL_TEMPERATURE) / (initialTemp - FINAL_TEMPERATURE);
+        for (int tries = 0; tries < 50; tries++) {
+            boolean applied;
+            switch (operator) {
+                case INSERT:
+                case SWAP:
+                    applied = insertOrSwap(schedule, operator == MoveOperator.SWAP, tNorm);
+                    break;
+                case REBALANCE:
+                    applied = rebalance(schedule);
+                    break;
+                default:
+                    applied = relieveOverloaded(schedule);
+            }
+            if (applied) {
+                move.apply(schedule);
+                return true;
+            }
+            moveRetryCount++;
+        }
+        return false;
+    }
+
+    // 插入或交換：與 perturbSchedule 相同的來源選擇，但固定移動類型；換出的手術不能進入來源房間時視為失敗
+    private boolean insertOrSwap(CompactSchedule schedule, boolean swap, double tNorm) {
+        int room1 = random.nextInt(schedule.getRoomCount());
+        if (schedule.length(room1) == 0) {
+            return false;
+        }
+        int sourceIndex = tNorm > TH ? schedule.indexOfLongest(room1) : schedule.indexOfShortest(room1);
+        int surgery = schedule.get(room1, sourceIndex);
+        int room2 = pickTargetRoom(schedule, surgery, room1, schedule.getRoomCount());
+        if (room2 < 0) {
+            return false;
+        }
+        int length2 = schedule.length(room2);
+        if (!swap) {
+            move.set(Move.Type.INSERT, room1, sourceIndex, room2, length2 == 0 ? 0 : random.nextInt(length2 + 1));
+            return true;
+        }
+        if (length2 == 0) {
+            return false;
+        }
+        int swapIndex = random.nextInt(length2);
+        if (!canHost(schedule, room1, schedule.get(room2, swapIndex))) {
+            return false;
+        }
+        move.set(Move.Type.SWAP, room1, sourceIndex, room2, swapIndex);
+        return true;
+    }
+
+    // 兩房平衡：隨機兩間房由使用時間較長者移出一檯手術到較短者，手術時間取最接近拉平兩房所需者
+    private boolean rebalance(CompactSchedule schedule) {
+        int roomCount = schedule.getRoomCount();
+        int room1 = random.nextInt(roomCount);
+        int room2 = random.nextInt(roomCount - 1);
+        room2 = room2 >= room1 ? room2 + 1 : room2;
+        if (costEvaluator.getUsage(room1) < costEvaluator.getUsage(room2)) {
+            int t = room1;
+            room1 = room2;
+            room2 = t;
+        }
+        int length1 = schedule.length(room1);
+        int length2 = schedule.length(room2);
+        // 移出 d 分鐘的手術後，兩房差距縮小約 2 * (d + 銜接時間)，因此理想的手術時間約為差距的一半減去銜接時間
+        int target = (costEvaluator.getUsage(room1) - costEvaluator.getUsage(room2)) / 2
+                - costEvaluator.getTransitionTime();
+        int sourceIndex = -1;
+        int bestGap = Integer.MAX_VALUE;
+        for (int i = 0; i < length1; i++) {
+            int surgery = schedule.get(room1, i);
+            int gap = Math.abs(schedule.getDuration(surgery) - target);
+            if (gap < bestGap && canHost(schedule, room2, surgery)) {
+                bestGap = gap;
+                sourceIndex = i;
+            }
+        }
+        if (sourceIndex < 0) {
+            return false;
+        }
+        move.set(Move.Type.INSERT, room1, sourceIndex, room2, length2 == 0 ? 0 : random.nextInt(length2 + 1));
+        return true;
+    }
+
+    // 紓解最滿房：由使用時間最長的房間隨機移出一檯手術，目標為隨機兩間可進入房間中使用時間較短者
+    private boolean relieveOverloaded(CompactSchedule schedule) {
+        int roomCount = schedule.getRoomCount();
+        int room1 = 0;
+        for (int r = 1; r < roomCount; r++) {
+            if (costEvaluator.getUsage(r) > costEvaluator.getUsage(room1)) {
+                room1 = r;
+            }
+        }
+        int length1 = schedule.length(room1);
+        if (length1 == 0) {
+            return false;
+        }
+        int sourceIndex = random.nextInt(length1);
+        int surgery = schedule.get(room1, sourceIndex);
+        int room2 = pickTargetRoom(schedule, surgery, room1, roomCount);
+        int other = pickTargetRoom(schedule, surgery, room1, roomCount);
+        if (room2 < 0) {
+            return false;
+        }
+        if (costEvaluator.getUsage(other) < costEvaluator.getUsage(room2)) {
+            room2 = other;
+        }
+        int length2 = schedule.length(room2);
+        move.set(Move.Type.INSERT, room1, sourceIndex, room2, length2 == 0 ? 0 : random.nextInt(length2 + 1));
+        return true;
+    }
+
+    /**
+     * 為手術抽選一個不同於來源房間、且手術可進入的目標房間
+     * * @param schedule 目前排程
+     *
+     * @param surgery    被移動的手術
+     * @param sourceRoom 來源房間
+     * @param roomCount  房間數
+     * @return 目標房間編號；沒有其他可進入的房間時回傳 -1
+     */
+    private int pickTargetRoom(CompactSchedule schedule, int surgery, int sourceRoom, int roomCount) {
+        if (specialRoomIndices == null || !schedule.isSpecialRequired(surgery)) {
+            int room = random.nextInt(roomCount - 1);
+            return room >= sourceRoom ? room + 1 : room;
+        }
+        int count = specialRoomIndices.length;
+        if (!specialRoomFlags[sourceRoom]) {
+            return specialRoomIndices[random.nextInt(count)];
+        }
+        if (count < 2) {
+            return -1;
+        }
+        // 來源本身是特殊手術房：在其餘 count - 1 間中均勻抽選
+        int room = specialRoomIndices[random.nextInt(count - 1)];
+        return room == sourceRoom ? specialRoomIndices[count - 1] : room;
+    }
+
+    /** O(1) 檢查手術是否可以安排在指定房間 */
+    private boolean canHost(CompactSchedule schedule, int room, int surgery) {
+        return specialRoomIndices == null || specialRoomFlags[room] || !schedule.isSpecialRequired(surgery);
+    }
+
+    /** 回傳所有特殊手術房的編號；沒有特殊手術房時回傳 null (無法滿足限制，因此不加以限制) */
+    private static int[] eligibleSpecialRooms(boolean[] specialRoomFlags) {
+        int count = 0;
+        for (boolean flag : specialRoomFlags) {
+            if (flag) {
+                count++;
+            }
+        }
+        if (count == 0) {
+            return null;
+        }
+        int[] indices = new int[count];
+        for (int r = 0, k = 0; r < specialRoomFlags.length; r++) {
+            if (specialRoomFlags[r]) {
+                indices[k++] = r;
+            }
+        }
+        return indices;
+    }
+
+    /**
+     * Metropolis 接受準則：如果鄰近解更好 (deltaE < 0)，則直接接受；
+     * 如果鄰近解較差，則以一定機率接受，避免陷入局部最佳解。
+     * 成本下界的差異不小於 0 時實際差異也不小於 0，先以下界比較亂數，必定拒絕時就不需計算醫師衝突的實際變化；
+     * 抽取亂數的時機與接受結果都與直接使用實際成本相同
+     * * @param boundDelta 鄰近解成本下界與目前成本的差異
+     *
+     * @param temperature 目前溫度
+     * @return 是否接受鄰近解
+     */
+    private boolean acceptMove(double boundDelta, double temperature) {
+        if (boundDelta < 0) {
+            double deltaE = costEvaluator.resolveProposal() - currentSchedule.getCost();
+            return deltaE < 0 || random.nextDouble() < Math.exp(-deltaE / temperature);
+        }
+        double u = random.nextDouble();
+        return u < Math.exp(-boundDelta / temperature) && (costEvaluator.isProposalExact()
+                || u < Math.exp(-(costEvaluator.resolveProposal() - currentSchedule.getCost()) / temperature));
+    }
+
+    /**
+     * 以增量方式計算已套用移動後的排程成本 (尚未提交至 costEvaluator)
+     * * @param move 已套用在目前解上的移動
+     *
+     * @return 鄰近解的成本
+     */
+    double evaluateMove(Move move) {
+        costEvaluator.propose(currentSchedule, move);
+        return costEvaluator.resolveProposal();
+    }
+
+    /**
+     * 根據問題規模計算自適應的冷卻係數
+     * * @param n 問題規模 (手術數量 * 房間數量)
+     *
+     * @return 冷卻係數
+     */
+    private static double calculateCoolingRate(int n) {
+        return (ALPHA * Math.sqrt(n) - 1) / (ALPHA * Math.sqrt(n));
+    }
+}
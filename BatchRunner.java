@@ -0,0 +1,269 @@
+import java.io.*;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.text.SimpleDateFormat;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * 批次排程：在同一個 JVM 中以固定大小的執行緒池同時排程多天的 TimeTable 檔案
+ * room.csv 與 Arguments4Exec.csv 只讀取一次並由所有天共用，每天各自寫出 OutTimeTable，
+ * 最後再寫出一份彙整所有天結果的比較報告。
+ */
+public class BatchRunner {
+    private final DataManager sharedData;
+    private final String engineName;
+    private final int workers;
+
+    /** 單一天的排程結果 */
+    public static class DayResult {
+        public final String day;
+        public final int surgeryCount;
+        public final ScheduleMetrics initial;
+        public final ScheduleMetrics best;
+        public final long elapsedMillis;
+        public final String outputFile;
+        /** 此天使用的亂數種子 */
+        public final int seed;
+        /** 此天是否採用前幾天的暖啟動初始解 (滾動式排程) */
+        public final boolean warmStarted;
+        /** 此天所有退火鏈 (或副本) 的總迭代數 */
+        public final long iterations;
+        /** 此天的成本下界 */
+        public final double costLowerBound;
+
+        public DayResult(String day, int surgeryCount, ScheduleMetrics initial, ScheduleMetrics best,
+                long elapsedMillis, String outputFile, int seed, boolean warmStarted, long iterations,
+                double costLowerBound) {
+            this.day = day;
+            this.surgeryCount = surgeryCount;
+            this.initial = initial;
+            this.best = best;
+            this.elapsedMillis = elapsedMillis;
+            this.outputFile = outputFile;
+            this.seed = seed;
+            this.warmStarted = warmStarted;
+            this.iterations = iterations;
+            this.costLowerBound = costLowerBound;
+        }
+    }
+
+    /**
+     * 建構子
+     * * @param sharedData 已讀取 room.csv 與 Arguments4Exec.csv 的 DataManager
+     *
+     * @param engineName 搜尋引擎名稱
+     * @param workers    同時排程的天數上限
+     */
+    public BatchRunner(DataManager sharedData, String engineName, int workers) {
+        this.sharedData = sharedData;
+        this.engineName = engineName;
+        this.workers = Math.max(1, workers);
+    }
+
+    /**
+     * 解析批次輸入：可以是資料夾 (取其中所有 .csv 檔) 或檔名的 glob 樣式 (例如 TimeTable/_2024-07-*.csv)
+     * * @param pattern 資料夾路徑或 glob 樣式
+     *
+     * @return 依檔名排序的 TimeTable 檔案
+     * @throws IOException 讀取資料夾錯誤
+     */
+    public static List<Path> resolveInputs(String pattern) throws IOException {
+        Path path = Paths.get(pattern);
+        Path directory;
+        PathMatcher matcher;
+        if (Files.isDirectory(path)) {
+            directory = path;
+            matcher = FileSystems.getDefault().getPathMatcher("glob:*.csv");
+        } else {
+            directory = path.getParent() != null ? path.getParent() : Paths.get(".");
+            matcher = FileSystems.getDefault().getPathMatcher("glob:" + path.getFileName());
+        }
+
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+            for (Path file : stream) {
+                if (Files.isRegularFile(file) && matcher.matches(file.getFileName())) {
+                    files.add(file);
+                }
+            }
+        }
+        Collections.sort(files);
+        return files;
+    }
+
+    /**
+     * 同時排程所有檔案，並寫出每天的 OutTimeTable 與一份彙整報告
+     * 參數 combinedOutput=1 時改為將所有天依輸入順序寫入同一個檔案 (經由 FileChannel 串流寫出)；
+     * 參數 rollingHorizon=W (W > 0) 時改為依輸入順序逐天排程，每天以最近 W 天最佳排程的科別與手術房親和度暖啟動
+     * * @param files 待排程的 TimeTable 檔案
+     *
+     * @return 成功排程的各天結果 (依輸入順序)
+     * @throws IOException 寫入輸出檔或彙整報告錯誤
+     */
+    public List<DayResult> run(List<Path> files) throws IOException {
+        Files.createDirectories(Paths.get("out"));
+        long startNanos = System.nanoTime();
+
+        boolean combined = sharedData.getArguments().getOrDefault("combinedOutput", 0) != 0;
+        String combinedFile = combined
+                ? "out/OutTimeTable_batch_" + new SimpleDateFormat("yyyyMMdd_HHmmss").format(new Date()) + ".csv"
+                : null;
+        // 合併輸出時已排程完成、等待依序寫出的各天資料
+        Map<Path, DataManager> pendingOutputs = new ConcurrentHashMap<>();
+
+        // 滾動式排程的每一天都依賴前一天的結果，只能逐天執行
+        int rollingHorizon = sharedData.getArguments().getOrDefault("rollingHorizon", 0);
+        RoomAffinity affinity = rollingHorizon > 0 ? new RoomAffinity(rollingHorizon) : null;
+        int poolSize = affinity != null ? 1 : Math.min(workers, Math.max(1, files.size()));
+
+        ExecutorService executor = Executors.newFixedThreadPool(poolSize);
+        List<DayResult> results = new ArrayList<>();
+        try (FileChannel channel = combined ? FileChannel.open(Paths.get(combinedFile), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING) : null;
+                OutputStream combinedOut = combined
+                        ? new BufferedOutputStream(Channels.newOutputStream(channel), 65536)
+                        : null) {
+            boolean headerWritten = false;
+            List<Future<DayResult>> futures = new ArrayList<>();
+            for (Path file : files) {
+                futures.add(executor.submit(() -> scheduleDay(file, combinedFile, pendingOutputs, affinity)));
+            }
+            for (int i = 0; i < futures.size(); i++) {
+                try {
+                    DayResult result = futures.get(i).get();
+                    if (result != null) {
+                        results.add(result);
+                    }
+                    DataManager pending = pendingOutputs.remove(files.get(i));
+                    if (pending != null) {
+                        pending.writeTo(combinedOut, !headerWritten); // 表頭只在檔案開頭寫出一次
+                        headerWritten = true;
+                    }
+                } catch (ExecutionException e) {
+                    // 單一天失敗不影響其他天
+                    System.err.println("排程失敗：" + files.get(i) + "，原因：" + e.getCause());
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("批次排程被中斷", e);
+        } finally {
+            executor.shutdownNow();
+        }
+        if (combined) {
+            System.out.println("輸出完成：" + combinedFile);
+        }
+
+        long elapsedMillis = (System.nanoTime() - startNanos) / 1_000_000;
+        System.out.printf("批次排程完成：%d / %d 天，共耗時 %d ms (同時排程 %d 天)\n", results.size(), files.size(),
+                elapsedMillis, poolSize);
+        writeBatchReport(results);
+        return results;
+    }
+
+    // 排程單一天：共用手術房資料，讀取當天的 TimeTable 並寫出結果 (合併輸出時交由 run 依序寫出)；
+    // 滾動式排程時以 affinity 暖啟動，並將當天的最佳排程加入 affinity
+    private DayResult scheduleDay(Path file, String combinedFile, Map<Path, DataManager> pendingOutputs,
+            RoomAffinity affinity) throws IOException {
+        long startNanos = System.nanoTime();
+        DataManager dataManager = new DataManager(sharedData);
+        dataManager.getArguments().put("verbose", 0); // 多天同時執行時不印出每個溫度層級的進度
+        readDay(dataManager, file.toString());
+
+        Scheduler scheduler = new Scheduler(dataManager, engineName);
+        scheduler.setWarmStart(affinity);
+        Map<String, Schedule> results = scheduler.schedule();
+        if (results.isEmpty()) {
+            return null;
+        }
+        if (affinity != null) {
+            affinity.record(results.get("best"));
+        }
+        long iterations = 0;
+        for (AnnealingChain.Stats stats : scheduler.getChainStats()) {
+            iterations += stats.iterations;
+        }
+
+        ScheduleMetrics initialMetrics = new ScheduleMetrics(results.get("initial"), dataManager);
+        ScheduleMetrics bestMetrics = new ScheduleMetrics(results.get("best"), dataManager);
+        String day = dayLabel(file);
+        String outputFile;
+        if (combinedFile != null) {
+            pendingOutputs.put(file, dataManager);
+            outputFile = combinedFile;
+        } else {
+            outputFile = dataManager.writeOutput("out/OutTimeTable_" + day + ".csv");
+        }
+        long elapsedMillis = (System.nanoTime() - startNanos) / 1_000_000;
+        return new DayResult(day, dataManager.getSurgeryNodes().size(), initialMetrics, bestMetrics, elapsedMillis,
+                outputFile, scheduler.getSeed(), scheduler.isWarmStarted(), iterations,
+                scheduler.getCostLowerBound());
+    }
+
+    // 讀取當天的 TimeTable：來源未變更時載入快照，否則解析 CSV 並重建快照
+    private void readDay(DataManager dataManager, String timetablePath) throws IOException {
+        String roomPath = sharedData.getRoomSource();
+        String argumentsPath = sharedData.getArgumentsSource();
+        if (dataManager.getArguments().getOrDefault("snapshot", 1) == 0 || roomPath == null
+                || argumentsPath == null) {
+            dataManager.readTimeTableData(timetablePath);
+            return;
+        }
+        String snapshotPath = DataManager.snapshotPathFor(timetablePath);
+        if (!dataManager.loadSnapshot(snapshotPath, roomPath, argumentsPath, timetablePath)) {
+            dataManager.readTimeTableData(timetablePath);
+            dataManager.saveSnapshot(snapshotPath, roomPath, argumentsPath, timetablePath);
+        }
+    }
+
+    // 由檔名取得日期標籤，例如 _2024-07-01_TimeTable.csv -> 2024-07-01
+    private static String dayLabel(Path file) {
+        String name = file.getFileName().toString();
+        if (name.endsWith(".csv")) {
+            name = name.substring(0, name.length() - ".csv".length());
+        }
+        if (name.endsWith("_TimeTable")) {
+            name = name.substring(0, name.length() - "_TimeTable".length());
+        }
+        while (name.startsWith("_")) {
+            name = name.substring(1);
+        }
+        return name.isEmpty() ? "TimeTable" : name;
+    }
+
+    /**
+     * 將所有天的比較結果寫入 log 資料夾下的單一 CSV 檔案
+     * * @param results 各天結果
+     *
+     * @throws IOException 檔案寫入錯誤
+     */
+    private void writeBatchReport(List<DayResult> results) throws IOException {
+        String outputDir = "log";
+        Files.createDirectories(Paths.get(outputDir));
+
+        String timestamp = new SimpleDateFormat("yyyyMMdd_HHmmss").format(new Date());
+        String outputFileName = outputDir + "/Batch_Report_" + timestamp + ".csv";
+
+        try (CsvWriter csv = CsvWriter.create(outputFileName)) {
+            csv.field("日期").field("手術數").field("初始成本").field("最佳成本").field("成本下界").field("成本改善率 (%)")
+                    .field("初始加班 (分)").field("最佳加班 (分)").field("初始超時 (分)").field("最佳超時 (分)")
+                    .field("初始醫師衝突 (分)").field("最佳醫師衝突 (分)")
+                    .field("暖啟動").field("迭代數")
+                    .field("耗時 (ms)").field("亂數種子").field("輸出檔案").endRecord();
+            for (DayResult result : results) {
+                double costReduction = result.initial.cost > 0 ? (1 - result.best.cost / result.initial.cost) * 100
+                        : 0;
+                csv.field(result.day).field(result.surgeryCount).field(result.initial.cost, 2)
+                        .field(result.best.cost, 2).field(result.costLowerBound, 2).percent(costReduction)
+                        .field(result.initial.totalRegularOvertime).field(result.best.totalRegularOvertime)
+                        .field(result.initial.totalOvertime).field(result.best.totalOvertime)
+                        .field(result.initial.totalSurgeonConflict).field(result.best.totalSurgeonConflict)
+                        .field(result.warmStarted ? "Y" : "N").field(result.iterations)
+                        .field(result.elapsedMillis).field(result.seed).field(result.outputFile).endRecord();
+            }
+        }
+        System.out.println("批次比較報告已成功匯出至：" + outputFileName);
+    }
+}
@@ -0,0 +1,561 @@
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * 小型實例的精確求解引擎 (分支定界)，證明不了最佳解時把目前最佳解交給模擬退火繼續搜尋
+ * 加班、超時與平衡成本只與各房間的使用時間有關，與房間內的手術順序無關，因此分支定界只決定每檯手術的房間：
+ * 1. 手術依時間由長到短逐一分配，每一層先嘗試使用時間最短的房間 (第一條路徑即為 LPT 貪婪解)；
+ * 2. 同類型 (特殊房或一般房) 且使用時間相同的房間可以互換，每一層只嘗試其中一間 (包含所有空房)；
+ * 3. 由目前各房間的使用時間與剩餘手術的工作量增量地計算成本下界，不低於目前最佳解的分支直接剪除；
+ * 4. 相同深度下，各類型房間使用時間的多重集合相同的狀態之後的最佳成本也相同，已展開過的狀態以雜湊集合記錄，不再重複展開。
+ * 搜尋在專用的執行緒上執行並受 bbTimeLimit 限制；完整搜尋完畢即證明了上述成本的最佳值。
+ * 醫師衝突與手術順序有關，不在分支定界的範圍內：最佳分配沒有醫師衝突時即為整體最佳解，否則交由模擬退火調整順序與分配。
+ */
+public class BranchAndBoundEngine implements SchedulingEngine {
+    /** 預設的分支定界時間上限 (毫秒)，可用 bbTimeLimit 參數設定 */
+    private static final int DEFAULT_TIME_LIMIT = 1000;
+    /** 預設最多記錄的已展開狀態數，可用 bbMemoLimit 參數設定 */
+    private static final int DEFAULT_MEMO_LIMIT = 200000;
+    /** 由分支定界的最佳解接續退火時的預設初始接受率 (%)，可用 bbAcceptance 參數設定 */
+    private static final int DEFAULT_HANDOFF_ACCEPTANCE = 20;
+    /** 每展開幾個節點檢查一次是否超過時間上限 */
+    private static final int DEADLINE_CHECK_INTERVAL = 1024;
+
+    private final DataManager dataManager;
+    private final boolean[] specialRoomFlags;
+    private final boolean verbose;
+    /** 證明不了最佳解或有醫師衝突時接續搜尋的模擬退火引擎 */
+    private final MultiStartAnnealingEngine annealer;
+    private final List<AnnealingChain.Stats> stats = new ArrayList<>();
+    /** 由原本的初始解接續退火時的初始接受率 (%)，0 表示依 initialAcceptance 參數 */
+    private int initialAcceptance;
+    /** 分支定界的最佳解 (搜尋完成後設定)，供 {@link #getCurrentBest()} 在退火開始前讀取 */
+    private volatile CompactSchedule exactBest;
+    private boolean provedOptimal;
+    private double provenLowerBound;
+    private long nodesExplored;
+    private long memoHits;
+
+    /**
+     * 建構子
+     * * @param dataManager 資料管理器
+     *
+     * @param specialRoomFlags 房間編號 -> 是否為特殊手術房
+     * @param seed             接續退火時的亂數種子
+     * @param telemetry        搜尋遙測 (只用於接續的退火)，null 表示不記錄
+     */
+    public BranchAndBoundEngine(DataManager dataManager, boolean[] specialRoomFlags, long seed,
+            SearchTelemetry telemetry) {
+        this.dataManager = dataManager;
+        this.specialRoomFlags = specialRoomFlags;
+        this.verbose = dataManager.getArguments().getOrDefault("verbose", 1) != 0;
+        this.annealer = new MultiStartAnnealingEngine(dataManager, specialRoomFlags, seed, telemetry);
+    }
+
+    @Override
+    public CompactSchedule search(CompactSchedule initialSchedule) {
+        Map<String, Integer> args = dataManager.getArguments();
+        int timeLimit = Math.max(1, args.getOrDefault("bbTimeLimit", DEFAULT_TIME_LIMIT));
+        int memoLimit = Math.max(0, args.getOrDefault("bbMemoLimit", DEFAULT_MEMO_LIMIT));
+        int conflictWeight = Math.max(0, args.getOrDefault("surgeonConflictWeight", 0));
+        exactBest = null;
+        stats.clear();
+
+        Search exact = new Search(initialSchedule, specialRoomFlags, args, memoLimit);
+        long startNanos = System.nanoTime();
+        runWithTimeLimit(exact, timeLimit);
+        long elapsedMillis = (System.nanoTime() - startNanos) / 1_000_000;
+        provedOptimal = exact.completed;
+        provenLowerBound = provedOptimal ? exact.bestScaledCost / (double) initialSchedule.getRoomCount() : 0;
+        nodesExplored = exact.nodes;
+        memoHits = exact.memoHits;
+
+        CompactSchedule candidate = exact.toSchedule(initialSchedule);
+        CostEvaluator evaluator = new CostEvaluator(dataManager);
+        evaluator.reset(candidate);
+        exactBest = candidate;
+        if (verbose) {
+            System.out.printf("分支定界%s：成本 %.2f (不含醫師衝突 %.2f)，展開 %d 個節點，重複狀態 %d 次，耗時 %d ms\n",
+                    provedOptimal ? "證明最佳解" : "達到時間上限", candidate.getCost(),
+                    exact.bestScaledCost / (double) candidate.getRoomCount(), nodesExplored, memoHits,
+                    elapsedMillis);
+        }
+
+        // 證明了最佳分配且沒有醫師衝突 (或不計醫師衝突)：即為整體最佳解，不需要再退火
+        if (provedOptimal && (conflictWeight == 0 || evaluator.getTotalConflictMinutes() == 0)) {
+            stats.add(AnnealingChain.Stats.branchAndBound(candidate.getCost(), nodesExplored, elapsedMillis,
+                    exact.bestFoundMillis));
+            return candidate;
+        }
+
+        // 否則由分支定界的最佳解 (比原本的初始解好時) 以較低的初始接受率接續退火
+        CompactSchedule start = initialSchedule;
+        int acceptance = initialAcceptance;
+        if (candidate.getCost() < initialSchedule.getCost()) {
+            start = candidate;
+            acceptance = args.getOrDefault("bbAcceptance", DEFAULT_HANDOFF_ACCEPTANCE);
+        }
+        annealer.setInitialAcceptance(acceptance);
+        // 已證明的最佳分配成本同時是含醫師衝突的成本下界，退火達到此值即為整體最佳解
+        annealer.setProvenOptimum(provedOptimal ? provenLowerBound : -1);
+        CompactSchedule best = annealer.search(start);
+        stats.addAll(annealer.getStats());
+        return best.getCost() <= candidate.getCost() ? best : candidate;
+    }
+
+    @Override
+    public void setInitialAcceptance(int percent) {
+        this.initialAcceptance = percent;
+    }
+
+    @Override
+    public List<AnnealingChain.Stats> getStats() {
+        return Collections.unmodifiableList(stats);
+    }
+
+    @Override
+    public CompactSchedule getCurrentBest() {
+        CompactSchedule annealed = annealer.getCurrentBest();
+        return annealed != null ? annealed : exactBest;
+    }
+
+    @Override
+    public String getName() {
+        return "bb";
+    }
+
+    /** 最近一次搜尋是否證明了加班、超時與平衡成本的最佳值 */
+    public boolean isProvedOptimal() {
+        return provedOptimal;
+    }
+
+    /**
+     * 取得最近一次搜尋證明的成本下界：證明了最佳分配時為其加班、超時與平衡成本 (醫師衝突以 0 計)，否則為 0
+     * * @return 成本下界
+     */
+    public double getProvenLowerBound() {
+        return provenLowerBound;
+    }
+
+    public long getNodesExplored() {
+        return nodesExplored;
+    }
+
+    /**
+     * 在專用的執行緒上執行分支定界，超過時間上限時通知搜尋停止並等待其交出目前最佳解
+     * * @param exact 分支定界搜尋
+     *
+     * @param timeLimitMillis 時間上限 (毫秒)
+     */
+    private static void runWithTimeLimit(Search exact, int timeLimitMillis) {
+        ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "branch-and-bound");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            Future<?> future = executor.submit(exact);
+            try {
+                future.get(timeLimitMillis, TimeUnit.MILLISECONDS);
+            } catch (TimeoutException e) {
+                exact.stop = true;
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("分支定界被中斷", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("分支定界執行失敗", e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * 分支定界的搜尋狀態 (只在一個執行緒上執行)
+     * 成本以整數 R * (加班 + 2 * 超時) + sum|R * usage - T| 表示 (即 {@link CostEvaluator} 的成本乘以房間數 R)，避免浮點誤差
+     */
+    private static class Search implements Runnable {
+        private final int roomCount;
+        private final int maxRegularTime;
+        private final int maxOvertime;
+        private final int transitionTime;
+        private final int memoLimit;
+        private final boolean[] specialRoom;
+        /** 是否有可用的特殊手術房 (沒有時需要特殊房的手術可排入任何房間) */
+        private final boolean hasSpecialRoom;
+        /** 分配順序 (手術時間由長到短) -> 手術編號 */
+        private final int[] order;
+        private final int[] durations;
+        private final boolean[] special;
+        /** 分配順序第 k 檯之後 (含) 所有手術的時間總和、需要特殊房者的時間總和與檯數 */
+        private final long[] remainingTime;
+        private final long[] remainingSpecialTime;
+        private final int[] remainingSpecialCount;
+
+        private final int[] usage;
+        private final int[] assignment; // 手術編號 -> 房間編號
+        private final int[] bestAssignment;
+        /** 每一層的候選房間 (預先配置，展開節點時不建立新陣列) */
+        private final int[][] candidates;
+        private final Set<StateKey> visited = new HashSet<>();
+        /** 查詢已展開狀態用的鍵 (內容每次覆寫，只有加入集合時才複製) */
+        private final StateKey probe;
+
+        // --- 成本下界的各項總和，隨 usage 增量維護 (見 setUsage) ---
+        private long total;
+        private int emptyRooms;
+        private int emptySpecialRooms;
+        private long regular;
+        private long over;
+        private long regularSlack;
+        private long overSlack;
+        private long specialRegularSlack;
+        private long specialOverSlack;
+        /** R * usage 超過目前使用時間總和上限 (見 maxTotal) 的房間數與其 R * usage 的總和 */
+        private int balanceRooms;
+        private long balanceUsage;
+        private final long startNanos = System.nanoTime();
+        /** 由其他執行緒設定，要求搜尋儘快停止 */
+        volatile boolean stop;
+        volatile boolean completed;
+        long bestScaledCost;
+        long bestFoundMillis;
+        long nodes;
+        long memoHits;
+
+        Search(CompactSchedule initial, boolean[] specialRoomFlags, Map<String, Integer> args, int memoLimit) {
+            this.roomCount = initial.getRoomCount();
+            this.maxRegularTime = args.getOrDefault("maxRegularTime", 540);
+            this.maxOvertime = args.getOrDefault("maxOvertime", 120);
+            this.transitionTime = args.getOrDefault("transitionTime", 45);
+            this.memoLimit = memoLimit;
+            this.specialRoom = specialRoomFlags.clone();
+            boolean any = false;
+            for (boolean flag : specialRoom) {
+                any |= flag;
+            }
+            this.hasSpecialRoom = any;
+
+            int n = initial.getSurgeryCount();
+            this.durations = new int[n];
+            this.special = new boolean[n];
+            Integer[] sorted = new Integer[n];
+            for (int i = 0; i < n; i++) {
+                durations[i] = initial.getDuration(i);
+                special[i] = initial.isSpecialRequired(i) && hasSpecialRoom;
+                sorted[i] = i;
+            }
+            Arrays.sort(sorted, (a, b) -> Integer.compare(durations[b], durations[a]));
+            this.order = new int[n];
+            this.remainingTime = new long[n + 1];
+            this.remainingSpecialTime = new long[n + 1];
+            this.remainingSpecialCount = new int[n + 1];
+            for (int k = n - 1; k >= 0; k--) {
+                order[k] = sorted[k];
+                remainingTime[k] = remainingTime[k + 1] + durations[order[k]];
+                remainingSpecialTime[k] = remainingSpecialTime[k + 1] + (special[order[k]] ? durations[order[k]] : 0);
+                remainingSpecialCount[k] = remainingSpecialCount[k + 1] + (special[order[k]] ? 1 : 0);
+            }
+
+            this.usage = new int[roomCount];
+            this.assignment = new int[n];
+            this.bestAssignment = new int[n];
+            this.candidates = new int[n][roomCount];
+            this.probe = new StateKey(new int[roomCount + 1]);
+            // 以初始解的房間分配作為第一個最佳解
+            for (int r = 0; r < roomCount; r++) {
+                for (int i = 0; i < initial.length(r); i++) {
+                    bestAssignment[initial.get(r, i)] = r;
+                }
+            }
+            this.bestScaledCost = scaledCostOf(bestAssignment);
+            for (int r = 0; r < roomCount; r++) {
+                addRoomTerms(r, 1);
+            }
+            rescanBalance(maxTotal(0));
+        }
+
+        @Override
+        public void run() {
+            branch(0);
+            completed = !stop;
+        }
+
+        /**
+         * 依最佳分配建立排程 (房間內依手術編號排列)
+         * * @param template 提供房間與手術資料的排程 (不會被修改)
+         *
+         * @return 新的排程 (成本尚未計算)
+         */
+        CompactSchedule toSchedule(CompactSchedule template) {
+            CompactSchedule schedule = template.copy();
+            for (int r = 0; r < roomCount; r++) {
+                while (schedule.length(r) > 0) {
+                    schedule.removeLast(r);
+                }
+            }
+            for (int i = 0; i < bestAssignment.length; i++) {
+                schedule.append(bestAssignment[i], i);
+            }
+            return schedule;
+        }
+
+        // 分配順序第 depth 檯手術；回傳前會復原 usage 與成本下界的各項總和
+        private void branch(int depth) {
+            if (stop || ++nodes % DEADLINE_CHECK_INTERVAL == 0 && stopRequested()) {
+                return;
+            }
+            if (depth == order.length) {
+                long cost = scaledCost();
+                if (cost < bestScaledCost) {
+                    bestScaledCost = cost;
+                    System.arraycopy(assignment, 0, bestAssignment, 0, assignment.length);
+                    bestFoundMillis = (System.nanoTime() - startNanos) / 1_000_000;
+                }
+                return;
+            }
+            if (lowerBound(depth) >= bestScaledCost || !markVisited(depth)) {
+                return;
+            }
+
+            int surgery = order[depth];
+            int duration = durations[surgery];
+            int[] rooms = candidates[depth];
+            int count = candidateRooms(special[surgery], rooms);
+            int savedBalanceRooms = balanceRooms;
+            long savedBalanceUsage = balanceUsage;
+            for (int i = 0; i < count; i++) {
+                int r = rooms[i];
+                int before = usage[r];
+                setUsage(r, before == 0 ? duration : before + transitionTime + duration);
+                // 排入非空房間時使用時間總和的上限不變，只需更新此房間；排入空房時上限下降，重新計算
+                long maxTotal = maxTotal(depth + 1);
+                if (before == 0) {
+                    rescanBalance(maxTotal);
+                } else if ((long) roomCount * before > maxTotal) {
+                    balanceUsage += (long) roomCount * (usage[r] - before);
+                } else if ((long) roomCount * usage[r] > maxTotal) {
+                    balanceRooms++;
+                    balanceUsage += (long) roomCount * usage[r];
+                }
+                assignment[surgery] = r;
+                branch(depth + 1);
+                setUsage(r, before);
+                balanceRooms = savedBalanceRooms;
+                balanceUsage = savedBalanceUsage;
+                if (stop) {
+                    return;
+                }
+            }
+        }
+
+        // 改變一間房的使用時間，並增量更新成本下界的各項總和
+        private void setUsage(int r, int value) {
+            addRoomTerms(r, -1);
+            usage[r] = value;
+            addRoomTerms(r, 1);
+        }
+
+        // 將房間 r 目前的使用時間對各項總和的貢獻加入 (sign = 1) 或移除 (sign = -1)
+        private void addRoomTerms(int r, int sign) {
+            int u = usage[r];
+            long regularFree = Math.max(0, maxRegularTime - u);
+            long overFree = Math.max(0, maxRegularTime + maxOvertime - u);
+            total += sign * u;
+            regular += sign * Math.max(0, u - maxRegularTime);
+            over += sign * Math.max(0, u - (maxRegularTime + maxOvertime));
+            regularSlack += sign * regularFree;
+            overSlack += sign * overFree;
+            if (u == 0) {
+                emptyRooms += sign;
+            }
+            if (specialRoom[r]) {
+                specialRegularSlack += sign * regularFree;
+                specialOverSlack += sign * overFree;
+                if (u == 0) {
+                    emptySpecialRooms += sign;
+                }
+            }
+        }
+
+        // 分配完前 depth 檯手術後，總使用時間的上限：目前總和加上所有剩餘手術與銜接時間
+        private long maxTotal(int depth) {
+            return total + remainingTime[depth] + (long) (order.length - depth) * transitionTime;
+        }
+
+        // 重新找出 R * usage 超過上限的房間 (只在上限改變時呼叫)
+        private void rescanBalance(long maxTotal) {
+            balanceRooms = 0;
+            balanceUsage = 0;
+            for (int r = 0; r < roomCount; r++) {
+                long scaled = (long) roomCount * usage[r];
+                if (scaled > maxTotal) {
+                    balanceRooms++;
+                    balanceUsage += scaled;
+                }
+            }
+        }
+
+        /**
+         * 可分配的房間，依使用時間由短到長排列 (相同時一般房在前)；同類型且使用時間相同的房間只保留一間
+         * * @param specialOnly 是否只能排入特殊手術房
+         *
+         * @param rooms 寫入房間編號的緩衝區 (此層專用)
+         * @return 房間數
+         */
+        private int candidateRooms(boolean specialOnly, int[] rooms) {
+            int kept = 0;
+            for (int r = 0; r < roomCount; r++) {
+                if (specialOnly && !specialRoom[r]) {
+                    continue;
+                }
+                // 插入排序 (房間數少)；遇到同類型且使用時間相同的房間則略過
+                int i = kept;
+                boolean duplicate = false;
+                while (i > 0 && !precedes(rooms[i - 1], r)) {
+                    if (usage[rooms[i - 1]] == usage[r] && specialRoom[rooms[i - 1]] == specialRoom[r]) {
+                        duplicate = true;
+                        break;
+                    }
+                    i--;
+                }
+                if (duplicate) {
+                    continue;
+                }
+                System.arraycopy(rooms, i, rooms, i + 1, kept - i);
+                rooms[i] = r;
+                kept++;
+            }
+            return kept;
+        }
+
+        // 房間 a 是否排在房間 b 之前 (使用時間較短，相同時一般房在前)
+        private boolean precedes(int a, int b) {
+            return usage[a] != usage[b] ? usage[a] < usage[b] : !specialRoom[a] && specialRoom[b];
+        }
+
+        /**
+         * 分配完前 depth 檯手術後任何完整分配的成本下界 (已乘以 R)
+         * 加班 (超時) 不少於目前已超出的部分，加上剩餘工作量超出所有房間剩餘容量的部分 (需要特殊房的手術另外只以特殊房計算)；
+         * 剩餘工作量至少為剩餘手術時間加上排入非空房間時的銜接時間。
+         * 平衡成本等於正偏差的兩倍，而總使用時間不會超過目前值加上所有剩餘手術與銜接時間，因此不小於目前各房間相對於此上限的正偏差的兩倍。
+         * 各項總和都在 {@link #branch} 中隨 usage 增量維護，此處為 O(1)。
+         * * @param depth 已分配的手術數
+         *
+         * @return 成本下界
+         */
+        private long lowerBound(int depth) {
+            int remainingCount = order.length - depth;
+            long work = remainingTime[depth] + (long) Math.max(0, remainingCount - emptyRooms) * transitionTime;
+            long regularBound = regular + Math.max(0, work - regularSlack);
+            long overBound = over + Math.max(0, work - overSlack);
+            int specialCount = remainingSpecialCount[depth];
+            if (specialCount > 0) {
+                long specialWork = remainingSpecialTime[depth]
+                        + (long) Math.max(0, specialCount - emptySpecialRooms) * transitionTime;
+                regularBound = Math.max(regularBound, regular + Math.max(0, specialWork - specialRegularSlack));
+                overBound = Math.max(overBound, over + Math.max(0, specialWork - specialOverSlack));
+            }
+
+            long balance = balanceUsage - balanceRooms * maxTotal(depth);
+            return (long) roomCount * (regularBound + 2 * overBound) + 2 * balance;
+        }
+
+        /**
+         * 記錄目前狀態 (深度與各類型房間使用時間的多重集合)
+         * * @param depth 已分配的手術數
+         *
+         * @return 此狀態先前未展開過時為 true；已記錄的狀態數達到上限後不再記錄，一律回傳 true
+         */
+        private boolean markVisited(int depth) {
+            if (memoLimit == 0) {
+                return true;
+            }
+            int[] key = probe.values;
+            int size = 0;
+            for (int r = 0; r < roomCount; r++) {
+                if (specialRoom[r]) {
+                    key[size++] = usage[r];
+                }
+            }
+            int specialSize = size;
+            for (int r = 0; r < roomCount; r++) {
+                if (!specialRoom[r]) {
+                    key[size++] = usage[r];
+                }
+            }
+            Arrays.sort(key, 0, specialSize);
+            Arrays.sort(key, specialSize, roomCount);
+            key[roomCount] = depth;
+            probe.rehash();
+            if (visited.contains(probe)) {
+                memoHits++;
+                return false;
+            }
+            if (visited.size() < memoLimit) {
+                visited.add(new StateKey(key.clone()));
+            }
+            return true;
+        }
+
+        private boolean stopRequested() {
+            return stop || Thread.currentThread().isInterrupted();
+        }
+
+        private long scaledCost() {
+            long total = 0;
+            long regular = 0;
+            long over = 0;
+            for (int u : usage) {
+                total += u;
+                regular += Math.max(0, u - maxRegularTime);
+                over += Math.max(0, u - (maxRegularTime + maxOvertime));
+            }
+            long balance = 0;
+            for (int u : usage) {
+                balance += Math.abs((long) roomCount * u - total);
+            }
+            return (long) roomCount * (regular + 2 * over) + balance;
+        }
+
+        // 以房間分配計算成本 (房間使用時間與分配順序無關)
+        private long scaledCostOf(int[] rooms) {
+            int[] saved = usage.clone();
+            Arrays.fill(usage, 0);
+            for (int i = 0; i < rooms.length; i++) {
+                int r = rooms[i];
+                usage[r] = usage[r] == 0 ? durations[i] : usage[r] + transitionTime + durations[i];
+            }
+            long cost = scaledCost();
+            System.arraycopy(saved, 0, usage, 0, roomCount);
+            return cost;
+        }
+    }
+
+    /** 已展開狀態的雜湊鍵 (排序後的使用時間與深度) */
+    private static final class StateKey {
+        private final int[] values;
+        private int hash;
+
+        StateKey(int[] values) {
+            this.values = values;
+            rehash();
+        }
+
+        // 內容被覆寫後重新計算雜湊值 (只用於查詢用的鍵；集合中的鍵不再修改)
+        void rehash() {
+            hash = Arrays.hashCode(values);
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof StateKey && Arrays.equals(values, ((StateKey) other).values);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
@@ -0,0 +1,271 @@
+import java.util.*;
+
+/**
+ * 模擬退火熱迴圈專用的緊湊排程表示法
+ * 手術房與手術都被轉換成 int 編號，手術時間存放在 int[] 中；
+ * 每個手術房的手術順序佔用 slots 陣列中一段固定容量的區段，並以 lengths 記錄實際長度。
+ * 每檯手術的開始時間 (由 startTime、手術時間與銜接時間依順序累加的前綴和) 存放在與 slots 對齊的 starts 中，
+ * 插入、移除或取代手術時只從變動的位置往後更新，不需重新計算整個房間。
+ * 只有在輸出結果 (OutTimeTable.csv、ScheduleMetrics) 時才透過 {@link #toSchedule()} 轉回 Schedule。
+ */
+public class CompactSchedule {
+    private final List<String> roomNames; // 房間編號 -> 房間名稱
+    private final List<SurgeryNode> surgeries; // 手術編號 -> 手術節點
+    private final int[] durations; // 手術編號 -> 手術時間 (各份排程共用，唯讀)
+    private final boolean[] specialRequired; // 手術編號 -> 是否需要特殊手術房 (各份排程共用，唯讀)
+    private final int startTime; // 每日開始排程時間 (分鐘)
+    private final int transitionTime; // 兩檯手術之間的銜接時間 (分鐘)
+    private final int capacity; // 每個房間區段的容量 (= 手術總數)
+    private final int[] slots;
+    private final int[] starts; // 與 slots 對齊：該位置手術的開始時間 (分鐘)
+    private final int[] lengths;
+    private double cost;
+
+    private CompactSchedule(List<String> roomNames, List<SurgeryNode> surgeries, int[] durations,
+            boolean[] specialRequired, int startTime, int transitionTime) {
+        this.roomNames = roomNames;
+        this.surgeries = surgeries;
+        this.durations = durations;
+        this.specialRequired = specialRequired;
+        this.startTime = startTime;
+        this.transitionTime = transitionTime;
+        this.capacity = Math.max(1, surgeries.size());
+        this.slots = new int[roomNames.size() * capacity];
+        this.starts = new int[roomNames.size() * capacity];
+        this.lengths = new int[roomNames.size()];
+    }
+
+    /**
+     * 將 Schedule 轉換為緊湊表示法
+     * * @param schedule 原始排程
+     *
+     * @param roomNames      手術房名稱，其順序即為房間編號
+     * @param nodes          所有手術節點，其順序即為手術編號
+     * @param startTime      每日開始排程時間 (分鐘)
+     * @param transitionTime 兩檯手術之間的銜接時間 (分鐘)
+     * @return 緊湊排程
+     */
+    public static CompactSchedule fromSchedule(Schedule schedule, List<String> roomNames, List<SurgeryNode> nodes,
+            int startTime, int transitionTime) {
+        List<SurgeryNode> surgeries = new ArrayList<>(nodes);
+        int[] durations = new int[surgeries.size()];
+        boolean[] specialRequired = new boolean[surgeries.size()];
+        Map<SurgeryNode, Integer> ids = new IdentityHashMap<>();
+        for (int i = 0; i < surgeries.size(); i++) {
+            SurgeryNode node = surgeries.get(i);
+            durations[i] = node.getSurgeryTime();
+            specialRequired[i] = "Y".equalsIgnoreCase(node.getSpecialRoomRequirement());
+            ids.put(node, i);
+        }
+
+        CompactSchedule compact = new CompactSchedule(Collections.unmodifiableList(new ArrayList<>(roomNames)),
+                Collections.unmodifiableList(surgeries), durations, specialRequired, startTime, transitionTime);
+        Map<String, LinkedList<SurgeryNode>> roomSchedules = schedule.getRoomSchedules();
+        for (int r = 0; r < roomNames.size(); r++) {
+            List<SurgeryNode> list = roomSchedules.get(roomNames.get(r));
+            if (list == null) {
+                continue;
+            }
+            for (SurgeryNode node : list) {
+                compact.append(r, ids.get(node));
+            }
+        }
+        compact.setCost(schedule.getCost());
+        return compact;
+    }
+
+    /**
+     * 轉換回以房間名稱為鍵的 Schedule (僅在輸出結果時使用)
+     * * @return 內容相同的 Schedule
+     */
+    public Schedule toSchedule() {
+        Map<String, LinkedList<SurgeryNode>> roomSchedules = new HashMap<>();
+        for (int r = 0; r < roomNames.size(); r++) {
+            LinkedList<SurgeryNode> list = new LinkedList<>();
+            int base = r * capacity;
+            for (int i = 0; i < lengths[r]; i++) {
+                list.add(surgeries.get(slots[base + i]));
+            }
+            roomSchedules.put(roomNames.get(r), list);
+        }
+        Schedule schedule = new Schedule(roomSchedules);
+        schedule.setCost(cost);
+        return schedule;
+    }
+
+    // 複製排程 (共用唯讀的手術資料)
+    public CompactSchedule copy() {
+        CompactSchedule newSchedule = new CompactSchedule(roomNames, surgeries, durations, specialRequired, startTime,
+                transitionTime);
+        newSchedule.copyFrom(this);
+        return newSchedule;
+    }
+
+    /**
+     * 以另一份排程的內容覆寫本排程，不配置新的陣列
+     * * @param other 來源排程 (需來自同一組房間與手術)
+     */
+    public void copyFrom(CompactSchedule other) {
+        System.arraycopy(other.slots, 0, slots, 0, slots.length);
+        System.arraycopy(other.starts, 0, starts, 0, starts.length);
+        System.arraycopy(other.lengths, 0, lengths, 0, lengths.length);
+        this.cost = other.cost;
+    }
+
+    public int getRoomCount() {
+        return lengths.length;
+    }
+
+    public int getSurgeryCount() {
+        return durations.length;
+    }
+
+    public String getRoomName(int room) {
+        return roomNames.get(room);
+    }
+
+    public SurgeryNode getSurgery(int surgery) {
+        return surgeries.get(surgery);
+    }
+
+    public int getDuration(int surgery) {
+        return durations[surgery];
+    }
+
+    public boolean isSpecialRequired(int surgery) {
+        return specialRequired[surgery];
+    }
+
+    public int length(int room) {
+        return lengths[room];
+    }
+
+    public int get(int room, int index) {
+        return slots[room * capacity + index];
+    }
+
+    /** 取代指定位置的手術，回傳被取代的手術編號 */
+    public int set(int room, int index, int surgery) {
+        int pos = room * capacity + index;
+        int old = slots[pos];
+        slots[pos] = surgery;
+        updateStarts(room, index + 1);
+        return old;
+    }
+
+    public void insert(int room, int index, int surgery) {
+        int base = room * capacity;
+        System.arraycopy(slots, base + index, slots, base + index + 1, lengths[room] - index);
+        slots[base + index] = surgery;
+        lengths[room]++;
+        updateStarts(room, index);
+    }
+
+    /** 移除指定位置的手術，回傳其手術編號 */
+    public int remove(int room, int index) {
+        int base = room * capacity;
+        int surgery = slots[base + index];
+        System.arraycopy(slots, base + index + 1, slots, base + index, lengths[room] - index - 1);
+        lengths[room]--;
+        updateStarts(room, index);
+        return surgery;
+    }
+
+    public void append(int room, int surgery) {
+        slots[room * capacity + lengths[room]] = surgery;
+        lengths[room]++;
+        updateStarts(room, lengths[room] - 1);
+    }
+
+    public int removeLast(int room) {
+        lengths[room]--;
+        return slots[room * capacity + lengths[room]];
+    }
+
+    /** 指定位置手術的開始時間 (分鐘，由 startTime 起算) */
+    public int startOf(int room, int index) {
+        return starts[room * capacity + index];
+    }
+
+    /** 指定位置手術的結束時間 (分鐘，不含之後的銜接時間) */
+    public int endOf(int room, int index) {
+        int pos = room * capacity + index;
+        return starts[pos] + durations[slots[pos]];
+    }
+
+    /** 房間最後一檯手術的結束時間；房間沒有手術時為 startTime */
+    public int roomEndTime(int room) {
+        return lengths[room] == 0 ? startTime : endOf(room, lengths[room] - 1);
+    }
+
+    // 從 index 起依序更新開始時間的前綴和 (之前的位置不受影響)
+    private void updateStarts(int room, int index) {
+        int base = room * capacity;
+        int end = base + lengths[room];
+        int pos = base + index;
+        if (pos >= end) {
+            return;
+        }
+        int time = index == 0 ? startTime : starts[pos - 1] + durations[slots[pos - 1]] + transitionTime;
+        for (; pos < end; pos++) {
+            starts[pos] = time;
+            time += durations[slots[pos]] + transitionTime;
+        }
+    }
+
+    /**
+     * 房間內手術時間最長的手術位置 (相同時取第一個)，房間不可為空
+     * 房間區段在 slots 中是連續的 int，直接線性掃描；實測以每房間索引堆積維護的成本
+     * (每次 apply 與 undo 都要更新) 高於掃描本身，即使每間房有數百檯手術亦然
+     * * @param room 房間編號
+     *
+     * @return 手術在房間中的位置
+     */
+    public int indexOfLongest(int room) {
+        int base = room * capacity;
+        int bestIndex = 0;
+        int bestTime = durations[slots[base]];
+        for (int i = 1; i < lengths[room]; i++) {
+            int time = durations[slots[base + i]];
+            if (time > bestTime) {
+                bestTime = time;
+                bestIndex = i;
+            }
+        }
+        return bestIndex;
+    }
+
+    /**
+     * 房間內手術時間最短的手術位置 (相同時取第一個)，房間不可為空
+     * * @param room 房間編號
+     *
+     * @return 手術在房間中的位置
+     */
+    public int indexOfShortest(int room) {
+        int base = room * capacity;
+        int bestIndex = 0;
+        int bestTime = durations[slots[base]];
+        for (int i = 1; i < lengths[room]; i++) {
+            int time = durations[slots[base + i]];
+            if (time < bestTime) {
+                bestTime = time;
+                bestIndex = i;
+            }
+        }
+        return bestIndex;
+    }
+
+    /** 房間內手術時間總和 (不含銜接時間)，由時間軸直接求得 */
+    public int roomSurgeryTime(int room) {
+        int count = lengths[room];
+        return count == 0 ? 0 : roomEndTime(room) - startTime - (count - 1) * transitionTime;
+    }
+
+    public double getCost() {
+        return cost;
+    }
+
+    public void setCost(double cost) {
+        this.cost = cost;
+    }
+}
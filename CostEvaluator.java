@@ -0,0 +1,401 @@
+import java.util.*;
+
+/**
+ * 增量成本評估器
+ * 以陣列保存每個手術房的手術總時間、手術數量與使用時間，並維護總使用時間、加班與超時總和。
+ * 一次移動只會影響兩個手術房，因此可在 O(1) 內由這兩個房間的變化算出新成本；
+ * 只有在總使用時間 (平均值) 改變時，平衡成本才需要透過 {@link UsageIndex} 以 O(log U) 重新查詢。
+ *
+ * 平衡成本 sum|usage - avg| 以整數形式 sum|R * usage - T| 保存 (R 為房間數、T 為總使用時間)，
+ * 避免浮點數在長時間累加下產生誤差。
+ *
+ * 同一主刀醫師的手術時間重疊 (分鐘) 以 surgeonConflictWeight (預設 0，即不檢查) 加權計入成本，
+ * 由 {@link SurgeonConflictIndex} 只針對移動後開始時間改變的手術增量計算；
+ * {@link #propose(CompactSchedule, Move)} 先回傳成本下界，實際成本在需要時才由 {@link #resolveProposal()} 算出。
+ */
+public class CostEvaluator {
+    private final int roomCount;
+    private final int maxRegularTime;
+    private final int maxOvertime;
+    private final int transitionTime;
+    /** 醫師衝突每分鐘的成本權重；0 表示不檢查醫師衝突 */
+    private final int surgeonConflictWeight;
+
+    /** 每個房間的手術時間總和 (不含銜接時間) */
+    private final int[] surgeryTime;
+    /** 每個房間的手術數量 */
+    private final int[] count;
+    /** 每個房間的使用時間 (含銜接時間) */
+    private final int[] usage;
+
+    private long totalUsage;
+    private long totalRegularOvertime;
+    private long totalOvertime;
+    /** sum|R * usage - T| */
+    private long scaledBalance;
+    private UsageIndex usageIndex;
+    /** 任何排程的總加班下界 (移動不會改變，於 reset 時計算) */
+    private long regularOvertimeLowerBound;
+    /** 任何排程的總超時下界 */
+    private long overtimeLowerBound;
+    /** 任何排程的 sum|R * usage - T| 下界 */
+    private long balanceLowerBound;
+    /** 特殊手術房的數量 (需要特殊手術房的手術只能排入這些房間)；0 表示不限制 */
+    private final int specialRoomCount;
+    /** 醫師衝突索引 (第一次 reset 時建立)；沒有醫師有兩檯以上手術或權重為 0 時為 null */
+    private SurgeonConflictIndex conflictIndex;
+    private boolean conflictIndexBuilt;
+
+    // --- 尚未提交的候選移動 ---
+    private boolean hasProposal;
+    private int proposedRoom1;
+    private int proposedRoom2;
+    private int proposedTime1;
+    private int proposedCount1;
+    private int proposedTime2;
+    private int proposedCount2;
+    /** 候選移動的成本，不含醫師衝突的變化 */
+    private double proposedBaseCost;
+
+    public CostEvaluator(DataManager dataManager) {
+        this.roomCount = dataManager.getAllRooms().size();
+        Map<String, Integer> args = dataManager.getArguments();
+        this.maxRegularTime = args.getOrDefault("maxRegularTime", 540);
+        this.maxOvertime = args.getOrDefault("maxOvertime", 120);
+        this.transitionTime = args.getOrDefault("transitionTime", 45);
+        this.surgeonConflictWeight = Math.max(0, args.getOrDefault("surgeonConflictWeight", 0));
+        int special = 0;
+        for (String room : dataManager.getSpecialRooms()) {
+            if (dataManager.getAllRooms().contains(room)) {
+                special++;
+            }
+        }
+        this.specialRoomCount = special;
+        this.surgeryTime = new int[roomCount];
+        this.count = new int[roomCount];
+        this.usage = new int[roomCount];
+    }
+
+    /**
+     * 以完整掃描的方式重建所有執行狀態，並將成本寫回排程
+     * * @param schedule 作為目前解的排程，房間編號需與 DataManager 的手術房順序一致
+     *
+     * @return 排程的總成本
+     */
+    public double reset(CompactSchedule schedule) {
+        long allSurgeryTime = 0;
+        int allCount = 0;
+        for (int r = 0; r < roomCount; r++) {
+            surgeryTime[r] = schedule.roomSurgeryTime(r);
+            count[r] = schedule.length(r);
+            allSurgeryTime += surgeryTime[r];
+            allCount += count[r];
+        }
+
+        // 任一房間的使用時間上限：所有手術都排進同一間房
+        int bound = (int) Math.min(Integer.MAX_VALUE - 1, allSurgeryTime + (long) allCount * transitionTime);
+        usageIndex = new UsageIndex(bound);
+
+        totalUsage = 0;
+        totalRegularOvertime = 0;
+        totalOvertime = 0;
+        for (int r = 0; r < roomCount; r++) {
+            usage[r] = usageOf(surgeryTime[r], count[r]);
+            totalUsage += usage[r];
+            totalRegularOvertime += regularOvertimeOf(usage[r]);
+            totalOvertime += overtimeOf(usage[r]);
+            usageIndex.add(usage[r], 1);
+        }
+        scaledBalance = usageIndex.sumAbsDeviation(totalUsage, roomCount);
+        hasProposal = false;
+
+        // 醫師分組只與手術本身有關，各份排程共用同一個索引，之後的 reset 只需重新載入開始時間
+        if (!conflictIndexBuilt) {
+            conflictIndex = surgeonConflictWeight > 0 ? SurgeonConflictIndex.build(schedule) : null;
+            conflictIndexBuilt = true;
+        }
+        if (conflictIndex != null) {
+            conflictIndex.reset(schedule);
+        }
+
+        computeLowerBounds(schedule, allSurgeryTime, allCount);
+
+        double cost = getCost();
+        schedule.setCost(cost);
+        return cost;
+    }
+
+    /**
+     * 評估一次移動後的成本，但不改變目前狀態；此移動會被記住，直到 {@link #commit()} 或下一次評估
+     * * @param room1 第一個受影響房間的索引
+     *
+     * @param timeDelta1  第一個房間手術時間的變化量
+     * @param countDelta1 第一個房間手術數量的變化量
+     * @param room2       第二個受影響房間的索引
+     * @param timeDelta2  第二個房間手術時間的變化量
+     * @param countDelta2 第二個房間手術數量的變化量
+     * @return 移動後的總成本
+     */
+    public double propose(int room1, int timeDelta1, int countDelta1, int room2, int timeDelta2, int countDelta2) {
+        proposedRoom1 = room1;
+        proposedRoom2 = room2;
+        proposedTime1 = surgeryTime[room1] + timeDelta1;
+        proposedCount1 = count[room1] + countDelta1;
+        proposedTime2 = surgeryTime[room2] + timeDelta2;
+        proposedCount2 = count[room2] + countDelta2;
+        hasProposal = true;
+
+        int old1 = usage[room1];
+        int old2 = usage[room2];
+        int new1 = usageOf(proposedTime1, proposedCount1);
+        int new2 = usageOf(proposedTime2, proposedCount2);
+
+        long newRegularOvertime = totalRegularOvertime
+                - regularOvertimeOf(old1) - regularOvertimeOf(old2)
+                + regularOvertimeOf(new1) + regularOvertimeOf(new2);
+        long newOvertime = totalOvertime
+                - overtimeOf(old1) - overtimeOf(old2)
+                + overtimeOf(new1) + overtimeOf(new2);
+        long newBalance = balanceAfter(old1, old2, new1, new2);
+        return costOf(newRegularOvertime, newOvertime, newBalance);
+    }
+
+    /**
+     * 評估已套用在排程上的移動，但不改變目前狀態；此移動會被記住，直到 {@link #commit()} 或下一次評估
+     * 醫師衝突的變化只以下界計入 (相關醫師目前的衝突全部消失)，實際成本需呼叫 {@link #resolveProposal()}
+     * * @param schedule 已套用移動的排程
+     *
+     * @param move 已套用的移動
+     * @return 移動後總成本的下界；{@link #isProposalExact()} 為 true 時即為實際成本
+     */
+    public double propose(CompactSchedule schedule, Move move) {
+        int timeDelta = move.getTimeDelta();
+        int countDelta = move.getCountDelta();
+        proposedBaseCost = propose(move.getSourceRoom(), -timeDelta, -countDelta,
+                move.getTargetRoom(), timeDelta, countDelta);
+        if (conflictIndex == null) {
+            return proposedBaseCost;
+        }
+        return proposedBaseCost + (double) surgeonConflictWeight * conflictIndex.propose(schedule,
+                move.getSourceRoom(), move.getSourceIndex(), move.getTargetRoom(), move.getTargetIndex());
+    }
+
+    /** 最近一次 {@link #propose(CompactSchedule, Move)} 回傳的是否已是實際成本 */
+    public boolean isProposalExact() {
+        return conflictIndex == null || conflictIndex.isResolved();
+    }
+
+    /**
+     * 計算最近一次 {@link #propose(CompactSchedule, Move)} 的移動的實際成本 (含醫師衝突的變化)
+     * * @return 移動後的總成本
+     */
+    public double resolveProposal() {
+        if (conflictIndex == null) {
+            return proposedBaseCost;
+        }
+        return proposedBaseCost + (double) surgeonConflictWeight * conflictIndex.resolve();
+    }
+
+    /** 放棄尚未提交的候選移動 */
+    public void clearProposal() {
+        hasProposal = false;
+        if (conflictIndex != null) {
+            conflictIndex.clearProposal();
+        }
+    }
+
+    /** 將最近一次 {@link #propose} 的移動套用到執行狀態 */
+    public void commit() {
+        if (!hasProposal) {
+            return;
+        }
+        int old1 = usage[proposedRoom1];
+        int old2 = usage[proposedRoom2];
+        int new1 = usageOf(proposedTime1, proposedCount1);
+        int new2 = usageOf(proposedTime2, proposedCount2);
+
+        scaledBalance = balanceAfter(old1, old2, new1, new2);
+        totalRegularOvertime += regularOvertimeOf(new1) + regularOvertimeOf(new2)
+                - regularOvertimeOf(old1) - regularOvertimeOf(old2);
+        totalOvertime += overtimeOf(new1) + overtimeOf(new2) - overtimeOf(old1) - overtimeOf(old2);
+        totalUsage += (long) new1 + new2 - old1 - old2;
+
+        usageIndex.add(old1, -1);
+        usageIndex.add(old2, -1);
+        usageIndex.add(new1, 1);
+        usageIndex.add(new2, 1);
+
+        surgeryTime[proposedRoom1] = proposedTime1;
+        count[proposedRoom1] = proposedCount1;
+        usage[proposedRoom1] = new1;
+        surgeryTime[proposedRoom2] = proposedTime2;
+        count[proposedRoom2] = proposedCount2;
+        usage[proposedRoom2] = new2;
+        hasProposal = false;
+        if (conflictIndex != null) {
+            conflictIndex.commit();
+        }
+    }
+
+    public double getCost() {
+        return costOf(totalRegularOvertime, totalOvertime, scaledBalance);
+    }
+
+    /** 目前排程中指定房間的使用時間 (含銜接時間) */
+    public int getUsage(int room) {
+        return usage[room];
+    }
+
+    public int getTransitionTime() {
+        return transitionTime;
+    }
+
+    public long getTotalRegularOvertime() {
+        return totalRegularOvertime;
+    }
+
+    public long getTotalOvertime() {
+        return totalOvertime;
+    }
+
+    public long getRegularOvertimeLowerBound() {
+        return regularOvertimeLowerBound;
+    }
+
+    public long getOvertimeLowerBound() {
+        return overtimeLowerBound;
+    }
+
+    /**
+     * 任何排程的成本下界：加班、超時與平衡成本各自的下界依成本函數加權 (醫師衝突的下界以 0 計)
+     * * @return 成本下界
+     */
+    public double getCostLowerBound() {
+        return regularOvertimeLowerBound + overtimeLowerBound * 2.0 + (double) balanceLowerBound / roomCount;
+    }
+
+    /** 目前排程中同一醫師手術重疊的總分鐘數 (不檢查醫師衝突時為 0) */
+    public long getTotalConflictMinutes() {
+        return conflictIndex != null ? conflictIndex.getTotalConflict() : 0;
+    }
+
+    /**
+     * 計算任何排程都無法低於的加班、超時與平衡成本 (只與手術本身及房間容量有關，移動不會改變)
+     * 加班 (超時) 取下列三者的最大值：
+     * 1. 使用時間總和 (手術時間加上至少 手術數 - 房間數 次銜接時間) 超出所有房間容量的部分；
+     * 2. 每檯手術本身超出容量的部分之和 (同一房間的多檯長手術只會更多)；
+     * 3. 需要特殊手術房的手術只能排入特殊房，其工作量超出特殊房容量的部分。
+     * 平衡成本 sum|R * usage - T| 等於正偏差的兩倍，因此不小於任一房間正偏差的兩倍：
+     * 最長的一檯手術所在的房間、以及所有特殊房合計的工作量，相對於總使用時間的上限 (所有手術排在同一間房) 計算。
+     * * @param schedule 排程 (只讀取手術)
+     *
+     * @param allSurgeryTime 手術時間總和
+     * @param allCount       手術數
+     */
+    private void computeLowerBounds(CompactSchedule schedule, long allSurgeryTime, int allCount) {
+        long perCaseRegular = 0;
+        long perCaseOvertime = 0;
+        long specialTime = 0;
+        int specialCount = 0;
+        int longest = 0;
+        for (int i = 0; i < schedule.getSurgeryCount(); i++) {
+            int duration = schedule.getDuration(i);
+            perCaseRegular += regularOvertimeOf(duration);
+            perCaseOvertime += overtimeOf(duration);
+            longest = Math.max(longest, duration);
+            if (schedule.isSpecialRequired(i)) {
+                specialTime += duration;
+                specialCount++;
+            }
+        }
+        long minTotalUsage = allSurgeryTime + (long) Math.max(0, allCount - roomCount) * transitionTime;
+        long maxTotalUsage = allSurgeryTime + (long) Math.max(0, allCount - 1) * transitionTime;
+        regularOvertimeLowerBound = Math.max(perCaseRegular,
+                Math.max(0, minTotalUsage - (long) roomCount * maxRegularTime));
+        overtimeLowerBound = Math.max(perCaseOvertime,
+                Math.max(0, minTotalUsage - (long) roomCount * (maxRegularTime + maxOvertime)));
+        balanceLowerBound = 2 * Math.max(0, (long) roomCount * longest - maxTotalUsage);
+
+        if (specialRoomCount > 0 && specialCount > 0) {
+            long k = specialRoomCount;
+            long minSpecialUsage = specialTime + Math.max(0, specialCount - k) * transitionTime;
+            regularOvertimeLowerBound = Math.max(regularOvertimeLowerBound,
+                    minSpecialUsage - k * maxRegularTime);
+            overtimeLowerBound = Math.max(overtimeLowerBound, minSpecialUsage - k * (maxRegularTime + maxOvertime));
+            balanceLowerBound = Math.max(balanceLowerBound,
+                    2 * Math.max(0, roomCount * minSpecialUsage - k * maxTotalUsage));
+        }
+    }
+
+    /**
+     * 計算兩個房間的使用時間改變後的 sum|R * usage - T|
+     * 若總使用時間不變 (平均值不變)，只需修正兩個房間的貢獻；否則以 UsageIndex 重新查詢
+     */
+    private long balanceAfter(int old1, int old2, int new1, int new2) {
+        long r = roomCount;
+        long newTotal = totalUsage - old1 - old2 + new1 + new2;
+        long base = newTotal == totalUsage ? scaledBalance : usageIndex.sumAbsDeviation(newTotal, roomCount);
+        return base
+                - Math.abs(r * old1 - newTotal) - Math.abs(r * old2 - newTotal)
+                + Math.abs(r * new1 - newTotal) + Math.abs(r * new2 - newTotal);
+    }
+
+    private double costOf(long regularOvertime, long overtime, long balance) {
+        // 成本 = 總加班 + 總超時 * 2 + 平衡成本 + 醫師衝突 * 權重 (候選移動的衝突變化由呼叫端另外加上)
+        return regularOvertime + overtime * 2.0 + (double) balance / roomCount
+                + (double) surgeonConflictWeight * getTotalConflictMinutes();
+    }
+
+    private int usageOf(int time, int surgeries) {
+        return surgeries == 0 ? 0 : time + (surgeries - 1) * transitionTime; // 最後一檯手術後不需銜接時間
+    }
+
+    private int regularOvertimeOf(int usageTime) {
+        return Math.max(0, usageTime - maxRegularTime);
+    }
+
+    private int overtimeOf(int usageTime) {
+        return Math.max(0, usageTime - (maxRegularTime + maxOvertime));
+    }
+
+    /**
+     * 以使用時間為索引的樹狀陣列 (Fenwick tree)，記錄各使用時間的房間數與時間總和，
+     * 用來在 O(log U) 內求出 sum|R * usage - T|
+     */
+    private static class UsageIndex {
+        private final long[] counts;
+        private final long[] sums;
+
+        UsageIndex(int maxUsage) {
+            this.counts = new long[maxUsage + 2];
+            this.sums = new long[maxUsage + 2];
+        }
+
+        void add(int usageTime, int delta) {
+            for (int i = usageTime + 1; i < counts.length; i += i & -i) {
+                counts[i] += delta;
+                sums[i] += (long) delta * usageTime;
+            }
+        }
+
+        /** 回傳 sum|R * usage - T|，其中 R 為房間數、T 為目標總使用時間 */
+        long sumAbsDeviation(long total, int roomCount) {
+            int pivot = (int) Math.min(counts.length - 2, total / roomCount);
+            long lowCount = 0;
+            long lowSum = 0;
+            for (int i = pivot + 1; i > 0; i -= i & -i) {
+                lowCount += counts[i];
+                lowSum += sums[i];
+            }
+            long allCount = 0;
+            long allSum = 0;
+            for (int i = counts.length - 1; i > 0; i -= i & -i) {
+                allCount += counts[i];
+                allSum += sums[i];
+            }
+            long below = total * lowCount - (long) roomCount * lowSum;
+            long above = (long) roomCount * (allSum - lowSum) - total * (allCount - lowCount);
+            return below + above;
+        }
+    }
+}
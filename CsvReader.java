@@ -0,0 +1,313 @@
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * 串流式、低配置的 CSV 讀取器
+ * 以可重複使用的字元緩衝區逐字元切割欄位，支援以雙引號包住的欄位 (欄位中可含逗號、換行，"" 表示一個雙引號)，
+ * 只在檔案開頭檢查一次 BOM，並略過空白記錄。欄位值只有在呼叫 {@link #field}、{@link #internedField}
+ * 或 {@link #record} 時才建立 String；{@link #intField} 直接由字元解析，不建立任何物件。
+ */
+public class CsvReader implements Closeable {
+    private static final int END_OF_STREAM = -1;
+    private static final int NO_PUSHBACK = -2;
+
+    private final Reader reader;
+    private final char[] buffer = new char[8192];
+    private int bufferPosition;
+    private int bufferLimit;
+    private int pushback = NO_PUSHBACK; // 預讀後退回的字元
+    private boolean started;
+
+    // --- 目前記錄 (每筆記錄重複使用) ---
+    private char[] raw = new char[256]; // 原始記錄內容 (含引號，不含換行)
+    private int rawLength;
+    private char[] values = new char[256]; // 去除引號後的欄位值
+    private int valuesLength;
+    private int[] valueStart = new int[16];
+    private int[] valueEnd = new int[16];
+    private int[] rawStart = new int[16];
+    private int[] rawEnd = new int[16];
+    private int fieldCount;
+
+    // --- 字串池：重複出現的欄位值 (例如手術房、科別、醫師) 只保留一份 String ---
+    private String[] pool = new String[64];
+    private int poolSize;
+
+    public CsvReader(Reader reader) {
+        this.reader = reader;
+    }
+
+    /**
+     * 以 UTF-8 開啟 CSV 檔案
+     * * @param filePath 檔案路徑
+     *
+     * @return CSV 讀取器
+     * @throws IOException 開啟檔案錯誤
+     */
+    public static CsvReader open(String filePath) throws IOException {
+        return new CsvReader(new InputStreamReader(new FileInputStream(filePath), StandardCharsets.UTF_8));
+    }
+
+    /**
+     * 讀取下一筆非空白的記錄
+     * * @return 是否讀到記錄；檔案結束時回傳 false
+     * @throws IOException 讀取錯誤
+     */
+    public boolean next() throws IOException {
+        if (!started) {
+            started = true;
+            int first = read();
+            if (first != '\uFEFF' && first != END_OF_STREAM) {
+                pushback = first; // 只在檔案開頭檢查一次 BOM
+            }
+        }
+        while (true) {
+            int c = readRecord();
+            if (!isBlank()) {
+                return true;
+            }
+            if (c == END_OF_STREAM) {
+                return false;
+            }
+        }
+    }
+
+    /** 目前記錄的欄位數 */
+    public int fieldCount() {
+        return fieldCount;
+    }
+
+    /** 目前記錄是否為註解 (第一個非空白字元為 #) */
+    public boolean isComment() {
+        for (int i = 0; i < rawLength; i++) {
+            if (!Character.isWhitespace(raw[i])) {
+                return raw[i] == '#';
+            }
+        }
+        return false;
+    }
+
+    /** 目前記錄的原始內容 (含引號，不含換行) */
+    public String record() {
+        return new String(raw, 0, rawLength);
+    }
+
+    /** 欄位在原始記錄中的起始位置 (含引號) */
+    public int rawFieldStart(int index) {
+        return rawStart[index];
+    }
+
+    /** 欄位在原始記錄中的結束位置 (不含，含引號) */
+    public int rawFieldEnd(int index) {
+        return rawEnd[index];
+    }
+
+    public String field(int index) {
+        return new String(values, valueStart[index], valueEnd[index] - valueStart[index]);
+    }
+
+    /**
+     * 回傳欄位值，相同內容的欄位共用同一個 String (查詢時不建立新字串)
+     * * @param index 欄位索引
+     *
+     * @return 共用的欄位值
+     */
+    public String internedField(int index) {
+        int start = valueStart[index];
+        int length = valueEnd[index] - start;
+        int hash = 0;
+        for (int i = 0; i < length; i++) {
+            hash = 31 * hash + values[start + i];
+        }
+        int mask = pool.length - 1;
+        for (int slot = hash & mask;; slot = (slot + 1) & mask) {
+            String candidate = pool[slot];
+            if (candidate == null) {
+                String value = new String(values, start, length);
+                pool[slot] = value;
+                if (++poolSize * 2 > pool.length) {
+                    growPool();
+                }
+                return value;
+            }
+            if (candidate.hashCode() == hash && matches(candidate, start, length)) {
+                return candidate;
+            }
+        }
+    }
+
+    /** 欄位是否為合法的整數 (可有正負號，不含空白) */
+    public boolean isInt(int index) {
+        int start = valueStart[index];
+        int end = valueEnd[index];
+        if (start < end && (values[start] == '-' || values[start] == '+')) {
+            start++;
+        }
+        if (start == end || end - start > 9) {
+            return false;
+        }
+        for (int i = start; i < end; i++) {
+            if (values[i] < '0' || values[i] > '9') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** 將欄位解析為整數，需先以 {@link #isInt} 確認格式 */
+    public int intField(int index) {
+        int i = valueStart[index];
+        int end = valueEnd[index];
+        boolean negative = values[i] == '-';
+        if (negative || values[i] == '+') {
+            i++;
+        }
+        int value = 0;
+        for (; i < end; i++) {
+            value = value * 10 + (values[i] - '0');
+        }
+        return negative ? -value : value;
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+
+    // 讀取一筆記錄 (到換行或檔案結尾)，回傳結束時讀到的字元
+    private int readRecord() throws IOException {
+        rawLength = 0;
+        valuesLength = 0;
+        fieldCount = 0;
+        startField();
+        boolean quoted = false;
+        while (true) {
+            int c = read();
+            if (quoted) {
+                if (c == END_OF_STREAM) {
+                    endField();
+                    return c; // 引號未結束即到檔尾：視為結束
+                }
+                appendRaw((char) c);
+                if (c == '"') {
+                    int following = read();
+                    if (following == '"') {
+                        appendRaw('"');
+                        appendValue('"');
+                    } else {
+                        quoted = false;
+                        pushback = following;
+                    }
+                } else {
+                    appendValue((char) c);
+                }
+            } else if (c == ',') {
+                endField();
+                appendRaw(',');
+                startField();
+            } else if (c == '\n' || c == '\r' || c == END_OF_STREAM) {
+                endField();
+                if (c == '\r') {
+                    int following = read();
+                    if (following != '\n') {
+                        pushback = following;
+                    }
+                }
+                return c;
+            } else {
+                appendRaw((char) c);
+                if (c == '"' && valuesLength == valueStart[fieldCount]) {
+                    quoted = true; // 欄位開頭的引號
+                } else {
+                    appendValue((char) c);
+                }
+            }
+        }
+    }
+
+    private boolean isBlank() {
+        for (int i = 0; i < rawLength; i++) {
+            if (!Character.isWhitespace(raw[i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void startField() {
+        if (fieldCount == valueStart.length) {
+            int capacity = fieldCount * 2;
+            valueStart = Arrays.copyOf(valueStart, capacity);
+            valueEnd = Arrays.copyOf(valueEnd, capacity);
+            rawStart = Arrays.copyOf(rawStart, capacity);
+            rawEnd = Arrays.copyOf(rawEnd, capacity);
+        }
+        valueStart[fieldCount] = valuesLength;
+        rawStart[fieldCount] = rawLength;
+    }
+
+    private void endField() {
+        valueEnd[fieldCount] = valuesLength;
+        rawEnd[fieldCount] = rawLength;
+        fieldCount++;
+    }
+
+    private void appendRaw(char c) {
+        if (rawLength == raw.length) {
+            raw = Arrays.copyOf(raw, rawLength * 2);
+        }
+        raw[rawLength++] = c;
+    }
+
+    private void appendValue(char c) {
+        if (valuesLength == values.length) {
+            values = Arrays.copyOf(values, valuesLength * 2);
+        }
+        values[valuesLength++] = c;
+    }
+
+    private int read() throws IOException {
+        if (pushback != NO_PUSHBACK) {
+            int c = pushback;
+            pushback = NO_PUSHBACK;
+            return c;
+        }
+        if (bufferPosition == bufferLimit) {
+            bufferLimit = reader.read(buffer, 0, buffer.length);
+            bufferPosition = 0;
+            if (bufferLimit <= 0) {
+                bufferLimit = 0;
+                return END_OF_STREAM;
+            }
+        }
+        return buffer[bufferPosition++];
+    }
+
+    private boolean matches(String candidate, int start, int length) {
+        if (candidate.length() != length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (candidate.charAt(i) != values[start + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void growPool() {
+        String[] old = pool;
+        pool = new String[old.length * 2];
+        int mask = pool.length - 1;
+        for (String value : old) {
+            if (value != null) {
+                int slot = value.hashCode() & mask;
+                while (pool[slot] != null) {
+                    slot = (slot + 1) & mask;
+                }
+                pool[slot] = value;
+            }
+        }
+    }
+}
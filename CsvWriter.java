@@ -0,0 +1,119 @@
+import java.io.*;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 逐欄位寫出 CSV 記錄的緩衝寫入器 (CsvReader 的對應類別)
+ * 數值直接寫入緩衝區，不需要為每筆記錄建立格式字串；小數欄位的進位方式與 String.format("%.2f") 相同。
+ * 含逗號、雙引號或換行的字串欄位加上雙引號 (其中的雙引號寫成 "")，可由 CsvReader 還原。
+ */
+public class CsvWriter implements Closeable, Flushable {
+    private final Writer writer;
+    private boolean firstField = true;
+
+    public CsvWriter(Writer writer) {
+        this.writer = writer;
+    }
+
+    /**
+     * 以 UTF-8 建立 CSV 檔案並寫入 BOM (讓 Excel 正確辨識編碼)
+     * * @param filePath 檔案路徑
+     *
+     * @return CSV 寫入器
+     * @throws IOException 開啟檔案錯誤
+     */
+    public static CsvWriter create(String filePath) throws IOException {
+        CsvWriter csv = new CsvWriter(new BufferedWriter(
+                new OutputStreamWriter(new FileOutputStream(filePath), StandardCharsets.UTF_8), 65536));
+        csv.writer.write('\uFEFF');
+        return csv;
+    }
+
+    public CsvWriter field(String value) throws IOException {
+        separate();
+        writer.write(escape(value));
+        return this;
+    }
+
+    /**
+     * 將欄位值轉為 CSV 欄位文字：含逗號、雙引號或換行時加上雙引號，並將其中的雙引號寫成 ""
+     * * @param value 欄位值
+     *
+     * @return 欄位文字 (不需要引號時即為原字串)
+     */
+    public static String escape(String value) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == ',' || c == '"' || c == '\n' || c == '\r') {
+                return '"' + value.replace("\"", "\"\"") + '"';
+            }
+        }
+        return value;
+    }
+
+    public CsvWriter field(long value) throws IOException {
+        separate();
+        writer.write(Long.toString(value));
+        return this;
+    }
+
+    /**
+     * 寫出固定小數位數的欄位 (四捨五入)
+     * * @param value    數值
+     *
+     * @param decimals 小數位數
+     * @return 此寫入器
+     * @throws IOException 寫入錯誤
+     */
+    public CsvWriter field(double value, int decimals) throws IOException {
+        separate();
+        writeFixed(value, decimals);
+        return this;
+    }
+
+    /** 寫出兩位小數的百分比欄位，例如 12.34% */
+    public CsvWriter percent(double value) throws IOException {
+        separate();
+        writeFixed(value, 2);
+        writer.write('%');
+        return this;
+    }
+
+    /** 結束目前記錄 (沒有任何欄位時即寫出空白行) */
+    public CsvWriter endRecord() throws IOException {
+        writer.write('\n');
+        firstField = true;
+        return this;
+    }
+
+    @Override
+    public void flush() throws IOException {
+        writer.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        writer.close();
+    }
+
+    private void separate() throws IOException {
+        if (!firstField) {
+            writer.write(',');
+        }
+        firstField = false;
+    }
+
+    // 與 Formatter 相同：以最短的十進位表示四捨五入，負數進位為零時保留負號
+    private void writeFixed(double value, int decimals) throws IOException {
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            writer.write(Double.isNaN(value) ? "NaN" : value > 0 ? "Infinity" : "-Infinity");
+            return;
+        }
+        if (value < 0 || (value == 0 && 1 / value < 0)) {
+            writer.write('-');
+            value = -value;
+        }
+        writer.write(BigDecimal.valueOf(value).setScale(decimals, RoundingMode.HALF_UP).toPlainString());
+    }
+}
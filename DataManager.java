@@ -1,106 +1,613 @@
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
 import java.text.SimpleDateFormat;
 import java.util.*;
+import java.util.zip.CRC32;
 
 public class DataManager {
-    private final Set<String> allRooms = new TreeSet<>();
-    private final Set<String> specialRooms = new TreeSet<>();
-    private final List<String[]> timetableData = new ArrayList<>(); // 原始 TimeTable 資料
+    private final Set<String> allRooms;
+    private final Set<String> specialRooms;
+    /** 原始 TimeTable 記錄 (第一筆可能是表頭，見 hasHeader)，只保留輸出時需要的原始文字與手術房欄位位置 */
+    private final List<String> timetableRows = new ArrayList<>();
+    private int[] roomFieldStart = new int[64];
+    private int[] roomFieldEnd = new int[64];
+    /** 第一筆記錄是否為表頭 (手術時間欄位不是整數、無法成為手術的記錄)；TimeTable 檔案通常沒有表頭 */
+    private boolean hasHeader;
+    /** 以 mappedLoader=1 讀取時的映射檔案 (記錄保留為位元組範圍)；串流讀取時為 null */
+    private MappedTimeTable mappedTable;
+    /** 手術申請單號 -> 記錄索引 */
+    private final Map<String, Integer> rowByApplicationId = new HashMap<>();
+    /** 排程後輸出的記錄順序與各記錄的手術房、開始與結束時間；尚未排程時為 null (依原樣輸出) */
+    private int[] outputRows;
+    private String[] outputRooms;
+    private int[] outputStarts;
+    private int[] outputEnds;
     private final List<SurgeryNode> surgeryNodes = new ArrayList<>();
-    private final Map<String, Integer> arguments = new HashMap<>();
+    private final Map<String, Integer> arguments;
+    /** Arguments4Exec.csv 中的原始設定 (不含命令列覆寫)，快照只保存這些值 */
+    private final Map<String, Integer> fileArguments;
+    /** 手術房與參數是否與其他 DataManager 共用 (批次排程的每一天)；共用時載入快照不覆寫這兩部分 */
+    private final boolean sharesRoomData;
+    /** 讀入的 room.csv 與 Arguments4Exec.csv 路徑 (計算快照檢查碼用) */
+    private String roomSource;
+    private String argumentsSource;
+
+    /** 快照格式的識別碼與版本 (格式變更時遞增版本，舊快照會自動重建) */
+    private static final int SNAPSHOT_MAGIC = 0x53555247; // "SURG"
+    private static final int SNAPSHOT_VERSION = 6;
+    /** 排程後表頭附加的開始與結束時間欄名 (與記錄附加的兩欄對齊) */
+    private static final String TIME_HEADER = ",開始時間,結束時間";
+    private static final byte[] TIME_HEADER_BYTES = TIME_HEADER.getBytes(StandardCharsets.UTF_8);
+
+    public DataManager() {
+        this.allRooms = new TreeSet<>();
+        this.specialRooms = new TreeSet<>();
+        this.arguments = new HashMap<>();
+        this.fileArguments = new HashMap<>();
+        this.sharesRoomData = false;
+    }
+
+    /**
+     * 建立一個與既有 DataManager 共用手術房資料的新實例 (批次排程時每一天各自一份手術資料)
+     * 手術房清單直接共用同一份 (唯讀)，參數則複製一份以便個別覆寫
+     * * @param shared 已讀取 room.csv 與 Arguments4Exec.csv 的 DataManager
+     */
+    public DataManager(DataManager shared) {
+        this.allRooms = Collections.unmodifiableSet(shared.allRooms);
+        this.specialRooms = Collections.unmodifiableSet(shared.specialRooms);
+        this.arguments = new HashMap<>(shared.arguments);
+        this.fileArguments = shared.fileArguments;
+        this.sharesRoomData = true;
+        this.roomSource = shared.roomSource;
+        this.argumentsSource = shared.argumentsSource;
+    }
 
     public void readRoomData(String filePath) throws IOException {
-        // 使用 InputStreamReader 並指定 UTF-8 編碼
-        try (BufferedReader reader = new BufferedReader(
-                new InputStreamReader(new FileInputStream(filePath), StandardCharsets.UTF_8))) {
-            String line;
+        roomSource = filePath;
+        try (CsvReader csv = CsvReader.open(filePath)) {
             boolean isAllRoomsLine = false;
             boolean isSpecialRoomsLine = false;
 
-            while ((line = reader.readLine()) != null) {
-                // 檢查並移除 BOM
-                if (line.startsWith("\uFEFF")) {
-                    line = line.substring(1);
-                }
-                if (line.trim().isEmpty())
-                    continue;
-
-                if (line.startsWith("#")) {
+            while (csv.next()) {
+                if (csv.isComment()) {
+                    String line = csv.record();
                     isAllRoomsLine = line.contains("roomNamesOfAll");
                     isSpecialRoomsLine = line.contains("roomNames4Orth");
                     continue;
                 }
 
-                String[] rooms = line.replace("\"", "").split(",");
-                if (isAllRoomsLine) {
-                    Collections.addAll(allRooms, rooms);
-                    isAllRoomsLine = false;
-                } else if (isSpecialRoomsLine) {
-                    Collections.addAll(specialRooms, rooms);
-                    isSpecialRoomsLine = false;
+                Set<String> target = isAllRoomsLine ? allRooms : isSpecialRoomsLine ? specialRooms : null;
+                isAllRoomsLine = false;
+                isSpecialRoomsLine = false;
+                if (target == null) {
+                    continue;
+                }
+                // 手術房清單可寫成一個以引號包住、逗號分隔的欄位，或多個欄位
+                for (int i = 0; i < csv.fieldCount(); i++) {
+                    Collections.addAll(target, csv.field(i).split(","));
                 }
             }
         }
     }
 
+    /**
+     * 讀取 TimeTable；參數 mappedLoader=1 時改用記憶體映射的讀取器 {@link #readTimeTableDataMapped}
+     * * @param filePath TimeTable 檔案路徑
+     *
+     * @throws IOException 讀取錯誤
+     */
     public void readTimeTableData(String filePath) throws IOException {
-        // 使用 InputStreamReader 並指定 UTF-8 編碼
-        try (BufferedReader reader = new BufferedReader(
-                new InputStreamReader(new FileInputStream(filePath), StandardCharsets.UTF_8))) {
-            String line;
-            boolean isHeader = true;
-            while ((line = reader.readLine()) != null) {
-                // 檢查並移除 BOM
-                if (line.startsWith("\uFEFF")) {
-                    line = line.substring(1);
-                }
-                if (line.trim().isEmpty())
-                    continue;
+        if (arguments.getOrDefault("mappedLoader", 0) != 0) {
+            readTimeTableDataMapped(filePath);
+        } else {
+            readTimeTableDataStreamed(filePath);
+        }
+    }
 
-                String[] data = line.split(",");
-                // 將表頭和資料分開處理
+    /**
+     * 以單次串流讀取 TimeTable：每筆記錄直接轉成 SurgeryNode，並只保留輸出時需要的原始文字
+     * 第一筆記錄無法成為手術時視為表頭，否則與其他記錄一樣是一檯手術；手術房與特殊房需求等重複出現的字串共用同一個實例
+     * * @param filePath TimeTable 檔案路徑
+     *
+     * @throws IOException 讀取錯誤
+     */
+    public void readTimeTableDataStreamed(String filePath) throws IOException {
+        try (CsvReader csv = CsvReader.open(filePath)) {
+            boolean isHeader = true;
+            while (csv.next()) {
+                boolean hasRoom = csv.fieldCount() > 5;
+                int row = addTimetableRow(csv.record(), hasRoom ? csv.rawFieldStart(5) : -1,
+                        hasRoom ? csv.rawFieldEnd(5) : -1);
+                // 將表頭和資料分開處理 (第一筆記錄無法成為手術時視為表頭，TimeTable 檔案通常沒有表頭)
                 if (isHeader) {
-                    timetableData.add(data);
                     isHeader = false;
-                } else {
-                    timetableData.add(data);
-                    if (data.length >= 9) {
-                        try {
-                            SurgeryNode node = new SurgeryNode(data[1], data[5], Integer.parseInt(data[7]), data[8]);
-                            surgeryNodes.add(node);
-                        } catch (NumberFormatException e) {
-                            System.err.println("警告：在 TimeTable.csv 中發現無效的數字格式，已跳過此行：" + line);
-                        }
+                    hasHeader = !(csv.fieldCount() >= 9 && csv.isInt(7));
+                    if (hasHeader) {
+                        continue;
+                    }
+                }
+                if (csv.fieldCount() >= 9) {
+                    if (!csv.isInt(7)) {
+                        System.err.println("警告：在 TimeTable.csv 中發現無效的數字格式，已跳過此行：" + csv.record());
+                        continue;
                     }
+                    SurgeryNode node = new SurgeryNode(csv.field(1), csv.internedField(5), csv.intField(7),
+                            csv.internedField(8), csv.internedField(3), csv.internedField(4));
+                    surgeryNodes.add(node);
+                    rowByApplicationId.put(node.getApplicationId(), row);
                 }
             }
         }
     }
 
+    /**
+     * 以 FileChannel.map 映射 TimeTable，直接由 UTF-8 位元組取出 SurgeryNode 需要的欄位
+     * 其餘欄位不解碼，輸出時直接寫出原始位元組 (適合一次處理大量歷史檔案)
+     * * @param filePath TimeTable 檔案路徑
+     *
+     * @throws IOException 讀取錯誤
+     */
+    public void readTimeTableDataMapped(String filePath) throws IOException {
+        mappedTable = MappedTimeTable.map(filePath);
+        // 第一筆記錄無法成為手術時視為表頭
+        if (mappedTable.rowCount() > 0) {
+            try {
+                hasHeader = mappedTable.toSurgeryNode(0) == null;
+            } catch (NumberFormatException e) {
+                hasHeader = true;
+            }
+        }
+        for (int row = hasHeader ? 1 : 0; row < mappedTable.rowCount(); row++) {
+            SurgeryNode node;
+            try {
+                node = mappedTable.toSurgeryNode(row);
+            } catch (NumberFormatException e) {
+                System.err.println("警告：在 TimeTable.csv 中發現無效的數字格式，已跳過此行：" + mappedTable.text(row));
+                continue;
+            }
+            if (node != null) {
+                surgeryNodes.add(node);
+                rowByApplicationId.put(node.getApplicationId(), row);
+            }
+        }
+    }
+
+    // 保存一筆記錄的原始文字與手術房欄位 (data[5]) 的位置 (沒有此欄位時為 -1)，回傳記錄索引
+    private int addTimetableRow(String text, int roomStart, int roomEnd) {
+        int row = timetableRows.size();
+        if (row == roomFieldStart.length) {
+            roomFieldStart = Arrays.copyOf(roomFieldStart, row * 2);
+            roomFieldEnd = Arrays.copyOf(roomFieldEnd, row * 2);
+        }
+        timetableRows.add(text);
+        roomFieldStart[row] = roomStart;
+        roomFieldEnd[row] = roomEnd;
+        return row;
+    }
+
+    /**
+     * 依當天的手術異動更新輸出用的 TimeTable 記錄 (見 {@link Scheduler#reoptimize})：
+     * 取消的手術不再對應任何記錄，異動的手術改寫原記錄的手術時間欄位 (data[7])，
+     * 新增的手術附加一筆與 TimeTable 欄位相同的記錄 (只填入申請單號、科別、主刀醫師、手術房、手術時間與特殊房需求)。
+     * 以映射方式讀入的記錄會先轉為一般記錄。
+     * * @param added 新增的手術
+     *
+     * @param removedIds 取消的手術申請單號
+     * @param changed    異動的手術 (以申請單號對應既有的記錄)
+     */
+    public void updateTimetableRows(List<SurgeryNode> added, Collection<String> removedIds,
+            List<SurgeryNode> changed) {
+        if (mappedTable != null) {
+            for (int row = 0; row < mappedTable.rowCount(); row++) {
+                addTimetableRow(mappedTable.text(row), mappedTable.roomFieldStart(row), mappedTable.roomFieldEnd(row));
+            }
+            mappedTable = null;
+        }
+        for (String id : removedIds) {
+            rowByApplicationId.remove(id);
+        }
+        for (SurgeryNode node : changed) {
+            Integer row = rowByApplicationId.get(node.getApplicationId());
+            if (row == null) {
+                addSurgeryRow(node);
+            } else {
+                replaceDuration(row, node.getSurgeryTime());
+            }
+        }
+        for (SurgeryNode node : added) {
+            addSurgeryRow(node);
+        }
+        outputRows = null;
+        outputRooms = null;
+        outputStarts = null;
+        outputEnds = null;
+    }
+
+    /** 排程後輸出的記錄數 (不含表頭)；尚未排程時為 -1 */
+    public int getOutputRowCount() {
+        return outputRows != null ? outputRows.length : -1;
+    }
+
+    // 為沒有原始記錄的手術建立一筆記錄 (欄位順序同 TimeTable；日期、病歷號、麻醉方式與序號留空)
+    // 欄位以 CsvWriter 的規則加上引號，含逗號或雙引號的科別、醫師不會使之後的手術房與手術時間欄位錯位
+    private void addSurgeryRow(SurgeryNode node) {
+        String prefix = "," + CsvWriter.escape(node.getApplicationId()) + ",,"
+                + CsvWriter.escape(nullToEmpty(node.getDepartment())) + ","
+                + CsvWriter.escape(nullToEmpty(node.getSurgeon())) + ",";
+        String room = CsvWriter.escape(nullToEmpty(node.getInitialRoom()));
+        String text = prefix + room + ",," + node.getSurgeryTime() + ","
+                + CsvWriter.escape(node.getSpecialRoomRequirement()) + ",";
+        int row = addTimetableRow(text, prefix.length(), prefix.length() + room.length());
+        rowByApplicationId.put(node.getApplicationId(), row);
+    }
+
+    // 改寫一筆記錄的手術時間欄位 (data[7])；其前的手術房欄位位置不變
+    private void replaceDuration(int row, int duration) {
+        String text = timetableRows.get(row);
+        try (CsvReader csv = new CsvReader(new StringReader(text))) {
+            if (!csv.next() || csv.fieldCount() < 8) {
+                throw new IllegalStateException("記錄沒有手術時間欄位：" + text);
+            }
+            timetableRows.set(row, text.substring(0, csv.rawFieldStart(7)) + duration
+                    + text.substring(csv.rawFieldEnd(7)));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static String nullToEmpty(String value) {
+        return value != null ? value : "";
+    }
+
     public void readArgumentsData(String filePath) throws IOException {
-        // 使用 InputStreamReader 並指定 UTF-8 編碼
-        try (BufferedReader reader = new BufferedReader(
-                new InputStreamReader(new FileInputStream(filePath), StandardCharsets.UTF_8))) {
+        argumentsSource = filePath;
+        try (CsvReader csv = CsvReader.open(filePath)) {
             List<String> lines = new ArrayList<>();
-            String line;
-            while ((line = reader.readLine()) != null) {
-                // 檢查並移除 BOM
-                if (line.startsWith("\uFEFF")) {
-                    line = line.substring(1);
-                }
+            while (csv.next()) {
                 // 忽略註解行與空行
-                if (!line.startsWith("#") && !line.trim().isEmpty()) {
-                    lines.add(line);
+                if (!csv.isComment()) {
+                    lines.add(csv.record());
                 }
             }
             if (lines.size() >= 4) {
-                arguments.put("startTime", Integer.parseInt(lines.get(0).trim()));
-                arguments.put("maxRegularTime", Integer.parseInt(lines.get(1).trim()));
-                arguments.put("maxOvertime", Integer.parseInt(lines.get(2).trim()));
-                arguments.put("transitionTime", Integer.parseInt(lines.get(3).trim()));
+                fileArguments.put("startTime", Integer.parseInt(lines.get(0).trim()));
+                fileArguments.put("maxRegularTime", Integer.parseInt(lines.get(1).trim()));
+                fileArguments.put("maxOvertime", Integer.parseInt(lines.get(2).trim()));
+                fileArguments.put("transitionTime", Integer.parseInt(lines.get(3).trim()));
+            }
+            // 選填：平行執行的退火鏈數量
+            if (lines.size() >= 5) {
+                fileArguments.put("chains", Integer.parseInt(lines.get(4).trim()));
+            }
+            // 選填：亂數種子 (固定種子可完全重現排程結果)
+            if (lines.size() >= 6) {
+                fileArguments.put("seed", Integer.parseInt(lines.get(5).trim()));
+            }
+            arguments.putAll(fileArguments);
+        }
+    }
+
+    /**
+     * 快照檔的預設位置：snapshot 資料夾下以 TimeTable 檔名加上其絕對路徑的雜湊命名
+     * (不同資料夾中同名的 TimeTable 各自使用不同的快照)
+     * * @param timetablePath TimeTable 檔案路徑
+     *
+     * @return 快照檔路徑，例如 snapshot/_2024-07-01_TimeTable_1a2b3c4d.snap
+     */
+    public static String snapshotPathFor(String timetablePath) {
+        String name = Paths.get(timetablePath).getFileName().toString();
+        if (name.endsWith(".csv")) {
+            name = name.substring(0, name.length() - ".csv".length());
+        }
+        CRC32 crc = new CRC32();
+        crc.update(sourceKey(timetablePath).getBytes(StandardCharsets.UTF_8));
+        return "snapshot/" + name + "_" + String.format("%08x", crc.getValue()) + ".snap";
+    }
+
+    // 來源檔案的識別：正規化的絕對路徑 (記錄在快照中，載入時比對，避免採用其他同名檔案的快照)
+    private static String sourceKey(String sourcePath) {
+        return Paths.get(sourcePath).toAbsolutePath().normalize().toString();
+    }
+
+    /**
+     * 計算來源 CSV 檔案的檢查碼 (CRC32，含各檔案長度)，用來判斷快照是否過期
+     * * @param sourcePaths 來源檔案路徑
+     *
+     * @return 檢查碼
+     * @throws IOException 讀取錯誤
+     */
+    public static long sourceChecksum(String... sourcePaths) throws IOException {
+        CRC32 crc = new CRC32();
+        byte[] buffer = new byte[65536];
+        for (String sourcePath : sourcePaths) {
+            long length = 0;
+            try (InputStream in = new FileInputStream(sourcePath)) {
+                for (int n; (n = in.read(buffer)) > 0; length += n) {
+                    crc.update(buffer, 0, n);
+                }
+            }
+            for (int shift = 0; shift < 64; shift += 8) {
+                crc.update((int) (length >>> shift));
             }
         }
+        return crc.getValue();
+    }
+
+    /**
+     * 載入預先處理好的二進位快照，完全略過 CSV 解析
+     * 快照記錄的來源路徑必須與這次的來源相同；來源檔案的大小與修改時間都與建立快照時相同時直接採用，否則重新計算來源的檢查碼比對 (只是修改時間改變也不會重建，並更新快照記錄的大小與修改時間，之後的執行又可直接採用)。
+     * 版本或檢查碼不符、或快照不存在或損毀時回傳 false (呼叫端應改為讀取 CSV 後重建快照)；
+     * 與其他 DataManager 共用手術房與參數時只載入 TimeTable 部分
+     * * @param snapshotPath  快照檔路徑
+     *
+     * @param roomPath      room.csv 路徑
+     * @param argumentsPath Arguments4Exec.csv 路徑
+     * @param timetablePath TimeTable 路徑
+     * @return 是否成功載入
+     * @throws IOException 讀取來源檔案錯誤
+     */
+    public boolean loadSnapshot(String snapshotPath, String roomPath, String argumentsPath, String timetablePath)
+            throws IOException {
+        Path path = Paths.get(snapshotPath);
+        if (!Files.isRegularFile(path)) {
+            return false;
+        }
+        String[] sources = {roomPath, argumentsPath, timetablePath};
+        try {
+            ByteBuffer in = ByteBuffer.wrap(Files.readAllBytes(path));
+            if (in.getInt() != SNAPSHOT_MAGIC || in.getInt() != SNAPSHOT_VERSION) {
+                return false;
+            }
+            long checksum = in.getLong();
+            boolean unchanged = in.getInt() == sources.length;
+            int statsOffset = in.position();
+            long[] stats = new long[sources.length * 2];
+            for (int i = 0; i < sources.length; i++) {
+                File file = new File(sources[i]);
+                stats[2 * i] = file.length();
+                stats[2 * i + 1] = file.lastModified();
+                long length = in.getLong();
+                long modified = in.getLong();
+                unchanged &= length == stats[2 * i] && modified == stats[2 * i + 1];
+            }
+            for (String source : sources) {
+                if (!readString(in).equals(sourceKey(source))) {
+                    return false; // 由其他路徑的來源建立的快照
+                }
+            }
+            if (!unchanged && sourceChecksum(sources) != checksum) {
+                return false;
+            }
+            readSnapshotBody(in);
+            if (!unchanged) {
+                updateSnapshotStats(path, statsOffset, stats);
+            }
+            if (!sharesRoomData) {
+                roomSource = roomPath;
+                argumentsSource = argumentsPath;
+            }
+            return true;
+        } catch (RuntimeException e) {
+            // 損毀或截斷的快照：清除已載入的部分，改為重新讀取 CSV
+            System.err.println("警告：快照無法讀取，將重新建立：" + snapshotPath + "，原因：" + e);
+            clearTimetable();
+            return false;
+        }
+    }
+
+    // 來源內容未變但大小或修改時間改變 (例如 touch、git checkout) 時，改寫快照表頭記錄的大小與修改時間，
+    // 讓之後的執行不必再計算檢查碼；檢查碼與內容不變，改寫失敗時只是下次仍需計算檢查碼
+    private static void updateSnapshotStats(Path snapshotPath, int offset, long[] stats) {
+        ByteBuffer header = ByteBuffer.allocate(stats.length * Long.BYTES);
+        for (long stat : stats) {
+            header.putLong(stat);
+        }
+        header.flip();
+        try (FileChannel channel = FileChannel.open(snapshotPath, StandardOpenOption.WRITE)) {
+            while (header.hasRemaining()) {
+                channel.write(header, offset + header.position());
+            }
+        } catch (IOException e) {
+            System.err.println("警告：無法更新快照的來源檔案資訊：" + snapshotPath + "，原因：" + e.getMessage());
+        }
+    }
+
+    /**
+     * 將目前的手術房、參數檔設定與 TimeTable 寫成二進位快照 (先寫入暫存檔再取代，避免留下不完整的快照)
+     * * @param snapshotPath  快照檔路徑
+     *
+     * @param roomPath      room.csv 路徑
+     * @param argumentsPath Arguments4Exec.csv 路徑
+     * @param timetablePath TimeTable 路徑
+     * @throws IOException 寫入錯誤
+     */
+    public void saveSnapshot(String snapshotPath, String roomPath, String argumentsPath, String timetablePath)
+            throws IOException {
+        String[] sources = {roomPath, argumentsPath, timetablePath};
+        Path target = Paths.get(snapshotPath).toAbsolutePath();
+        Files.createDirectories(target.getParent());
+        Path temporary = Files.createTempFile(target.getParent(), target.getFileName().toString(), ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(new FileOutputStream(temporary.toFile()), 65536))) {
+                out.writeInt(SNAPSHOT_MAGIC);
+                out.writeInt(SNAPSHOT_VERSION);
+                out.writeLong(sourceChecksum(sources));
+                out.writeInt(sources.length);
+                for (String source : sources) {
+                    File file = new File(source);
+                    out.writeLong(file.length());
+                    out.writeLong(file.lastModified());
+                }
+                for (String source : sources) {
+                    writeString(out, sourceKey(source));
+                }
+                writeSnapshotBody(out);
+            }
+            Files.move(temporary, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    // 快照內容：字串表、手術房、參數、原始記錄、手術 (以基本型別陣列保存，字串以字串表索引表示，沒有醫師時為 -1)
+    private void writeSnapshotBody(DataOutputStream out) throws IOException {
+        Map<String, Integer> strings = new LinkedHashMap<>();
+        for (String room : allRooms) {
+            strings.putIfAbsent(room, strings.size());
+        }
+        for (String room : specialRooms) {
+            strings.putIfAbsent(room, strings.size());
+        }
+        for (SurgeryNode node : surgeryNodes) {
+            strings.putIfAbsent(node.getInitialRoom(), strings.size());
+            strings.putIfAbsent(node.getSpecialRoomRequirement(), strings.size());
+            if (node.getDepartment() != null) {
+                strings.putIfAbsent(node.getDepartment(), strings.size());
+            }
+            if (node.getSurgeon() != null) {
+                strings.putIfAbsent(node.getSurgeon(), strings.size());
+            }
+        }
+        out.writeInt(strings.size());
+        for (String value : strings.keySet()) {
+            writeString(out, value);
+        }
+        writeIndices(out, allRooms, strings);
+        writeIndices(out, specialRooms, strings);
+
+        out.writeInt(fileArguments.size());
+        for (Map.Entry<String, Integer> entry : fileArguments.entrySet()) {
+            writeString(out, entry.getKey());
+            out.writeInt(entry.getValue());
+        }
+
+        int rowCount = getTimetableRowCount();
+        out.writeInt(rowCount);
+        for (int row = 0; row < rowCount; row++) {
+            if (mappedTable != null) {
+                writeString(out, mappedTable.text(row));
+                out.writeInt(mappedTable.roomFieldStart(row));
+                out.writeInt(mappedTable.roomFieldEnd(row));
+            } else {
+                writeString(out, timetableRows.get(row));
+                out.writeInt(roomFieldStart[row]);
+                out.writeInt(roomFieldEnd[row]);
+            }
+        }
+        out.writeBoolean(hasHeader);
+
+        out.writeInt(surgeryNodes.size());
+        for (SurgeryNode node : surgeryNodes) {
+            out.writeInt(rowByApplicationId.get(node.getApplicationId()));
+        }
+        for (SurgeryNode node : surgeryNodes) {
+            out.writeInt(node.getSurgeryTime());
+        }
+        for (SurgeryNode node : surgeryNodes) {
+            out.writeInt(strings.get(node.getInitialRoom()));
+        }
+        for (SurgeryNode node : surgeryNodes) {
+            out.writeInt(strings.get(node.getSpecialRoomRequirement()));
+        }
+        for (SurgeryNode node : surgeryNodes) {
+            out.writeInt(node.getDepartment() != null ? strings.get(node.getDepartment()) : -1);
+        }
+        for (SurgeryNode node : surgeryNodes) {
+            out.writeInt(node.getSurgeon() != null ? strings.get(node.getSurgeon()) : -1);
+        }
+        for (SurgeryNode node : surgeryNodes) {
+            writeString(out, node.getApplicationId());
+        }
+    }
+
+    private void readSnapshotBody(ByteBuffer in) {
+        String[] strings = new String[in.getInt()];
+        for (int i = 0; i < strings.length; i++) {
+            strings[i] = readString(in);
+        }
+        int[] allRoomIndices = readInts(in, in.getInt());
+        int[] specialRoomIndices = readInts(in, in.getInt());
+        Map<String, Integer> snapshotArguments = new HashMap<>();
+        for (int i = in.getInt(); i > 0; i--) {
+            snapshotArguments.put(readString(in), in.getInt());
+        }
+        if (!sharesRoomData) {
+            for (int index : allRoomIndices) {
+                allRooms.add(strings[index]);
+            }
+            for (int index : specialRoomIndices) {
+                specialRooms.add(strings[index]);
+            }
+            fileArguments.putAll(snapshotArguments);
+            arguments.putAll(snapshotArguments);
+        }
+
+        clearTimetable();
+        for (int row = in.getInt(); row > 0; row--) {
+            addTimetableRow(readString(in), in.getInt(), in.getInt());
+        }
+        hasHeader = in.get() != 0;
+
+        int count = in.getInt();
+        int[] rows = readInts(in, count);
+        int[] durations = readInts(in, count);
+        int[] rooms = readInts(in, count);
+        int[] specials = readInts(in, count);
+        int[] departments = readInts(in, count);
+        int[] surgeons = readInts(in, count);
+        for (int i = 0; i < count; i++) {
+            SurgeryNode node = new SurgeryNode(readString(in), strings[rooms[i]], durations[i], strings[specials[i]],
+                    departments[i] >= 0 ? strings[departments[i]] : null,
+                    surgeons[i] >= 0 ? strings[surgeons[i]] : null);
+            surgeryNodes.add(node);
+            rowByApplicationId.put(node.getApplicationId(), rows[i]);
+        }
+    }
+
+    // 字串以 UTF-8 位元組長度加內容保存 (讀取時直接由整塊位元組解碼)
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(ByteBuffer in) {
+        int length = in.getInt();
+        String value = new String(in.array(), in.position(), length, StandardCharsets.UTF_8);
+        in.position(in.position() + length);
+        return value;
+    }
+
+    private static void writeIndices(DataOutputStream out, Set<String> values, Map<String, Integer> strings)
+            throws IOException {
+        out.writeInt(values.size());
+        for (String value : values) {
+            out.writeInt(strings.get(value));
+        }
+    }
+
+    private static int[] readInts(ByteBuffer in, int count) {
+        int[] values = new int[count];
+        in.asIntBuffer().get(values);
+        in.position(in.position() + 4 * count);
+        return values;
+    }
+
+    // 清除已讀入的 TimeTable 資料 (手術房與參數不變)
+    private void clearTimetable() {
+        timetableRows.clear();
+        rowByApplicationId.clear();
+        surgeryNodes.clear();
+        mappedTable = null;
+        hasHeader = false;
+        outputRows = null;
+        outputRooms = null;
+        outputStarts = null;
+        outputEnds = null;
     }
 
     public List<SurgeryNode> getSurgeryNodes() {
@@ -119,26 +626,181 @@ public class DataManager {
         return arguments;
     }
 
-    public List<String[]> getTimetableData() {
-        return timetableData;
+    /** 讀入的 room.csv 路徑；尚未讀取時為 null */
+    public String getRoomSource() {
+        return roomSource;
+    }
+
+    /** 讀入的 Arguments4Exec.csv 路徑；尚未讀取時為 null */
+    public String getArgumentsSource() {
+        return argumentsSource;
+    }
+
+    /** 第一筆記錄是否為表頭 (見 {@link #writeTo(OutputStream, boolean)}) */
+    public boolean hasHeader() {
+        return hasHeader;
+    }
+
+    /** 讀入的 TimeTable 記錄數 (含表頭) */
+    public int getTimetableRowCount() {
+        return mappedTable != null ? mappedTable.rowCount() : timetableRows.size();
     }
 
-    public void updateTimetableData(List<String[]> newTimetable) {
-        this.timetableData.clear();
-        this.timetableData.addAll(newTimetable);
+    /**
+     * 以排程結果決定輸出的記錄順序與手術房：依房間輸出每檯手術的記錄，並將手術房欄位 (data[5]) 改為排入的房間
+     * 每檯手術的開始與結束時間直接取自緊湊排程增量維護的時間軸，附加在輸出記錄的最後兩欄
+     * * @param finalSchedule 最終的最佳排程
+     */
+    public void applySchedule(CompactSchedule finalSchedule) {
+        int[] rows = new int[surgeryNodes.size()];
+        String[] rooms = new String[surgeryNodes.size()];
+        int[] starts = new int[surgeryNodes.size()];
+        int[] ends = new int[surgeryNodes.size()];
+        int count = 0;
+        for (int r = 0; r < finalSchedule.getRoomCount(); r++) {
+            for (int i = 0; i < finalSchedule.length(r); i++) {
+                SurgeryNode surgery = finalSchedule.getSurgery(finalSchedule.get(r, i));
+                Integer row = rowByApplicationId.get(surgery.getApplicationId());
+                if (row != null && count < rows.length) {
+                    rows[count] = row;
+                    rooms[count] = finalSchedule.getRoomName(r);
+                    starts[count] = finalSchedule.startOf(r, i);
+                    ends[count] = finalSchedule.endOf(r, i);
+                    count++;
+                }
+            }
+        }
+        outputRows = Arrays.copyOf(rows, count);
+        outputRooms = Arrays.copyOf(rooms, count);
+        outputStarts = Arrays.copyOf(starts, count);
+        outputEnds = Arrays.copyOf(ends, count);
     }
 
-    public void writeOutput(String baseFileName) throws IOException {
+    /**
+     * 將排程後的 Timetable 資料寫入帶有時間戳記的 CSV 檔案
+     * * @param baseFileName 基本檔名 (會在副檔名前加上時間戳記)
+     *
+     * @return 實際寫入的檔案名稱
+     * @throws IOException 檔案寫入錯誤
+     */
+    public String writeOutput(String baseFileName) throws IOException {
         String timestamp = new SimpleDateFormat("yyyyMMdd_HHmmss").format(new Date());
         String outputFileName = baseFileName.replace(".csv", "_" + timestamp + ".csv");
 
-        // 寫入檔案時也明確指定 UTF-8 編碼，避免輸出亂碼
-        try (BufferedWriter writer = new BufferedWriter(
-                new OutputStreamWriter(new FileOutputStream(outputFileName), StandardCharsets.UTF_8))) {
-            for (String[] row : timetableData) {
-                writer.write(String.join(",", row) + "\n");
-            }
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(outputFileName), 65536)) {
+            writeTo(out);
         }
         System.out.println("輸出完成：" + outputFileName);
+        return outputFileName;
+    }
+
+    /**
+     * 將排程後的 Timetable 記錄以 UTF-8 寫入指定的串流 (不關閉串流)
+     * 有表頭時保留表頭 (附加開始與結束時間兩個欄名)，其餘記錄依排程順序輸出並只替換手術房欄位，最後附加開始與結束時間兩欄；尚未排程時依原樣輸出。
+     * 批次模式可將多天依序寫入同一個串流或通道。
+     * * @param out 輸出串流 (建議已緩衝)
+     *
+     * @throws IOException 寫入錯誤
+     */
+    public void writeTo(OutputStream out) throws IOException {
+        writeTo(out, true);
+    }
+
+    /**
+     * 將排程後的 Timetable 記錄以 UTF-8 寫入指定的串流 (不關閉串流)
+     * 批次模式合併輸出多天時，只有第一天寫出表頭
+     * * @param out 輸出串流 (建議已緩衝)
+     *
+     * @param includeHeader 是否寫出表頭 (尚未排程時依原樣輸出，不受此參數影響)
+     * @throws IOException 寫入錯誤
+     */
+    public void writeTo(OutputStream out, boolean includeHeader) throws IOException {
+        if (mappedTable != null) {
+            // 映射讀取時直接寫出原始 UTF-8 位元組，只有替換的手術房與附加的時間需要編碼
+            if (outputRows == null) {
+                for (int row = 0; row < mappedTable.rowCount(); row++) {
+                    mappedTable.writeRow(out, row, null);
+                    out.write('\n');
+                }
+            } else {
+                if (includeHeader && hasHeader) {
+                    mappedTable.writeRow(out, 0, null);
+                    out.write(TIME_HEADER_BYTES);
+                    out.write('\n');
+                }
+                byte[] times = new byte[32];
+                for (int i = 0; i < outputRows.length; i++) {
+                    mappedTable.writeRow(out, outputRows[i], outputRooms[i]);
+                    int length = formatTimes(times, outputStarts[i], outputEnds[i]);
+                    out.write(times, 0, length);
+                }
+            }
+            return;
+        }
+
+        // 寫入時明確指定 UTF-8 編碼，避免輸出亂碼
+        Writer writer = new OutputStreamWriter(out, StandardCharsets.UTF_8);
+        if (outputRows == null) {
+            for (int row = 0; row < timetableRows.size(); row++) {
+                writeWithRoom(writer, row, null);
+                writer.write('\n');
+            }
+        } else {
+            if (includeHeader && hasHeader) {
+                writeWithRoom(writer, 0, null);
+                writer.write(TIME_HEADER);
+                writer.write('\n');
+            }
+            for (int i = 0; i < outputRows.length; i++) {
+                writeWithRoom(writer, outputRows[i], outputRooms[i]);
+                writer.write(',');
+                writer.write(Integer.toString(outputStarts[i]));
+                writer.write(',');
+                writer.write(Integer.toString(outputEnds[i]));
+                writer.write('\n');
+            }
+        }
+        writer.flush();
+    }
+
+    // 將 ",開始,結束\n" 以 ASCII 寫入緩衝區，回傳寫入的位元組數
+    private static int formatTimes(byte[] buffer, int start, int end) {
+        int length = 0;
+        buffer[length++] = ',';
+        length = formatInt(buffer, length, start);
+        buffer[length++] = ',';
+        length = formatInt(buffer, length, end);
+        buffer[length++] = '\n';
+        return length;
+    }
+
+    private static int formatInt(byte[] buffer, int position, int value) {
+        if (value < 0) {
+            buffer[position++] = '-';
+            value = -value;
+        }
+        int digits = 1;
+        for (int v = value; v >= 10; v /= 10) {
+            digits++;
+        }
+        for (int i = position + digits - 1; i >= position; i--) {
+            buffer[i] = (byte) ('0' + value % 10);
+            value /= 10;
+        }
+        return position + digits;
+    }
+
+    // 寫出一筆記錄 (不含換行)，手術房欄位替換為指定的房間 (不建立新的字串；room 為 null 時原樣輸出)
+    private void writeWithRoom(Writer writer, int row, String room) throws IOException {
+        String text = timetableRows.get(row);
+        int start = roomFieldStart[row];
+        if (start < 0 || room == null) {
+            writer.write(text);
+        } else {
+            int end = roomFieldEnd[row];
+            writer.write(text, 0, start);
+            writer.write(room);
+            writer.write(text, end, text.length() - end);
+        }
     }
-}
\ No newline at end of file
+}
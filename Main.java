@@ -1,25 +1,62 @@
-import java.io.BufferedWriter;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.OutputStreamWriter;
-import java.nio.charset.StandardCharsets;
+import java.io.PrintStream;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.text.SimpleDateFormat;
+import java.util.Arrays;
 import java.util.Date;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 public class Main {
+        /** 值為文字而非整數的命令列參數 */
+        private static final Set<String> TEXT_OPTIONS = new HashSet<>(Arrays.asList("engine", "batch"));
+        private static final String ROOM_FILE = "in/room.csv";
+        private static final String ARGUMENTS_FILE = "in/Arguments4Exec.csv";
+        private static final String TIMETABLE_FILE = "in/TimeTable.csv";
+
         public static void main(String[] args) {
                 try {
-                        // 1. 初始化並讀取所有資料
+                        // 1. 初始化並讀取所有資料 (來源 CSV 未變更時直接載入二進位快照，略過 CSV 解析)
+                        Map<String, String> options = parseCommandLine(args);
+                        boolean useSnapshot = !"0".equals(options.get("snapshot"));
+                        String snapshotPath = DataManager.snapshotPathFor(TIMETABLE_FILE);
                         DataManager dataManager = new DataManager();
-                        dataManager.readRoomData("in/room.csv");
-                        dataManager.readTimeTableData("in/TimeTable.csv");
-                        dataManager.readArgumentsData("in/Arguments4Exec.csv");
+                        boolean serve = !"0".equals(options.getOrDefault("serve", "0"));
+                        boolean fromSnapshot = useSnapshot && !options.containsKey("batch") && !serve
+                                        && dataManager.loadSnapshot(snapshotPath, ROOM_FILE, ARGUMENTS_FILE,
+                                                        TIMETABLE_FILE);
+                        if (!fromSnapshot) {
+                                dataManager.readRoomData(ROOM_FILE);
+                                dataManager.readArgumentsData(ARGUMENTS_FILE);
+                        }
+                        applyCommandLineOptions(options, dataManager);
+                        String engineName = options.getOrDefault("engine", "sa");
+
+                        // 服務模式：常駐於同一個 JVM，由 stdin 逐行接收排程請求並將結果寫到 stdout
+                        if (serve) {
+                                runServer(engineName, dataManager);
+                                return;
+                        }
+                        // 批次模式：共用手術房與參數資料，同時排程資料夾 (或 glob) 中的每一天
+                        if (options.containsKey("batch")) {
+                                runBatch(options.get("batch"), engineName, dataManager);
+                                return;
+                        }
+                        if (!fromSnapshot) {
+                                dataManager.readTimeTableData(TIMETABLE_FILE);
+                                if (useSnapshot) {
+                                        dataManager.saveSnapshot(snapshotPath, ROOM_FILE, ARGUMENTS_FILE,
+                                                        TIMETABLE_FILE);
+                                }
+                        }
 
                         // 2. 建立排程器並執行
-                        Scheduler scheduler = new Scheduler(dataManager);
+                        Scheduler scheduler = new Scheduler(dataManager, engineName);
                         Map<String, Schedule> results = scheduler.schedule();
 
                         // 如果排程失敗或沒有資料，則提前結束
@@ -36,10 +73,13 @@ public class Main {
                         ScheduleMetrics bestMetrics = new ScheduleMetrics(bestSchedule, dataManager);
 
                         // 5. 在 Main 中印出詳細的比較報告
-                        printComparisonReport(initialMetrics, bestMetrics, dataManager);
+                        printComparisonReport(initialMetrics, bestMetrics, dataManager, scheduler.getSeed());
+                        printLowerBound(bestMetrics, scheduler.getCostLowerBound());
+                        printChainReport(scheduler.getChainStats());
 
                         // --- 修改功能：將比較報告寫入 log 資料夾 ---
-                        writeComparisonReportToCsv(initialMetrics, bestMetrics, dataManager);
+                        writeComparisonReportToCsv(initialMetrics, bestMetrics, dataManager, scheduler.getSeed(),
+                                        scheduler.getCostLowerBound());
 
                         // 6. 寫入最終排程結果檔案
                         dataManager.writeOutput("out/OutTimeTable.csv");
@@ -50,16 +90,159 @@ public class Main {
                 }
         }
 
+        /**
+         * 批次排程多天的 TimeTable 檔案
+         * 
+         * @param pattern     資料夾路徑或 glob 樣式，例如 TimeTable 或 TimeTable/_2024-07-*.csv
+         * @param engineName  搜尋引擎名稱
+         * @param dataManager 已讀取手術房與參數的資料管理器
+         * @throws IOException 檔案讀寫錯誤
+         */
+        public static void runBatch(String pattern, String engineName, DataManager dataManager) throws IOException {
+                List<Path> files = BatchRunner.resolveInputs(pattern);
+                if (files.isEmpty()) {
+                        System.out.println("找不到符合的 TimeTable 檔案：" + pattern);
+                        return;
+                }
+                int workers = dataManager.getArguments().getOrDefault("workers",
+                                Runtime.getRuntime().availableProcessors());
+                System.out.printf("批次排程 %d 天，同時排程 %d 天...\n", files.size(), workers);
+                new BatchRunner(dataManager, engineName, workers).run(files);
+        }
+
+        /**
+         * 以 JSON lines 服務模式處理 stdin 的排程請求，直到輸入結束
+         * stdout 只保留給回應，其餘訊息一律改寫到 stderr
+         * 
+         * @param engineName  請求未指定引擎時使用的搜尋引擎名稱
+         * @param dataManager 已讀取手術房與參數的資料管理器 (所有請求共用)
+         * @throws IOException 讀寫錯誤
+         */
+        public static void runServer(String engineName, DataManager dataManager) throws IOException {
+                Map<String, Integer> arguments = dataManager.getArguments();
+                int workers = arguments.getOrDefault("serverWorkers", Runtime.getRuntime().availableProcessors());
+                int queueCapacity = arguments.getOrDefault("queueCapacity", 16);
+                PrintStream responses = System.out;
+                System.setOut(System.err);
+                System.err.printf("排程服務已啟動：同時處理 %d 個請求，最多 %d 個請求等待\n", workers, queueCapacity);
+                new ScheduleServer(dataManager, engineName, workers, queueCapacity, responses).serve(System.in);
+        }
+
+        /**
+         * 解析命令列參數，格式為 --名稱=值
+         * 
+         * @param args 命令列參數
+         * @return 名稱 -> 值
+         */
+        public static Map<String, String> parseCommandLine(String[] args) {
+                Map<String, String> options = new LinkedHashMap<>();
+                for (String arg : args) {
+                        int separator = arg.indexOf('=');
+                        if (arg.startsWith("--") && separator > 2) {
+                                options.put(arg.substring(2, separator), arg.substring(separator + 1).trim());
+                        } else {
+                                System.err.println("警告：無法辨識的參數，已忽略：" + arg);
+                        }
+                }
+                return options;
+        }
+
+        /**
+         * 以命令列參數覆寫 Arguments4Exec.csv 中的數值設定
+         * 例如：--chains=K (平行執行的退火鏈數量)、--replicas=R (平行回火的副本數量)、
+         * --workers=N (批次模式同時排程的天數)、--seed=S (亂數種子)、--timeLimit=毫秒 (時間上限)、
+         * --stallLevels=N (最佳解連續 N 個溫度層級未改善即結束)、--stopAtLowerBound=1 (加班與超時達到下界且沒有醫師衝突即結束)、
+         * --telemetry=1 (寫出 JSONL 遙測)、--jmx=1 (註冊遙測 MBean)、--mappedLoader=1 (以記憶體映射讀取 TimeTable)、
+         * --snapshot=0 (不使用二進位快照，每次重新解析 CSV)、--combinedOutput=1 (批次模式將所有天寫入同一個檔案)、
+         * --surgeonConflictWeight=W (同一醫師手術重疊每分鐘的成本權重，預設 0 表示不檢查，設為 3 即不低於超時的每分鐘成本)、
+         * --initialAcceptance=P (校準初始溫度的初始接受率 %，預設 95)、
+         * --rollingHorizon=W (批次模式依序排程，並以最近 W 天的科別與手術房親和度暖啟動)、
+         * --warmAcceptance=P (採用暖啟動初始解時的初始接受率 %)、--serve=1 (以 stdin/stdout 的 JSON lines 常駐服務)、
+         * --serverWorkers=N (服務模式同時處理的請求數)、--queueCapacity=Q (服務模式等待中的請求數上限，預設 16)、
+         * --greedyInitial=1 (以 LPT 貪婪建構加上區域改善產生初始解)、--greedyAcceptance=P (採用貪婪初始解時的初始接受率 %)、
+         * --bbTimeLimit=毫秒 (分支定界引擎的時間上限)、--bbMemoLimit=N (分支定界記錄的狀態數上限)、
+         * --bbAcceptance=P (由分支定界的解接續退火時的初始接受率 %)、
+         * --adaptiveOperators=1 (依各移動運算子的近期成效調整選擇機率)；--engine=sa|pt|bb 與 --batch=資料夾或 glob 不屬於數值設定
+         * 
+         * @param options     解析後的命令列參數
+         * @param dataManager 資料管理器
+         */
+        public static void applyCommandLineOptions(Map<String, String> options, DataManager dataManager) {
+                for (Map.Entry<String, String> option : options.entrySet()) {
+                        if (TEXT_OPTIONS.contains(option.getKey())) {
+                                continue;
+                        }
+                        try {
+                                dataManager.getArguments().put(option.getKey(), Integer.parseInt(option.getValue()));
+                        } catch (NumberFormatException e) {
+                                System.err.println("警告：參數值必須為整數，已忽略：--" + option.getKey() + "="
+                                                + option.getValue());
+                        }
+                }
+        }
+
+        /**
+         * 印出各退火鏈的執行統計 (含 Metropolis 準則的接受與拒絕次數)
+         * 
+         * @param chainStats 各退火鏈的統計資料
+         */
+        public static void printChainReport(List<AnnealingChain.Stats> chainStats) {
+                if (chainStats.isEmpty()) {
+                        return;
+                }
+                System.out.println("\n各退火鏈 (副本) 執行統計:");
+                System.out.println("-------------------------------------------------------------------------");
+                for (AnnealingChain.Stats stats : chainStats) {
+                        if (stats.nodesExplored > 0) {
+                                System.out.printf("分支定界 | 最佳成本: %9.2f | 節點: %9d | 耗時: %6d ms | 最佳解於: %6d ms | %s\n",
+                                                stats.bestCost, stats.nodesExplored, stats.elapsedMillis,
+                                                stats.bestFoundMillis, stats.stopReason.getLabel());
+                                continue;
+                        }
+                        System.out.printf(
+                                        "鏈 %-3d | 溫度: %9.2f | 最佳成本: %9.2f | 迭代: %9d | 接受: %9d | 拒絕: %9d | 耗時: %6d ms | 最佳解於: %6d ms | %s\n",
+                                        stats.chainId, stats.temperature, stats.bestCost, stats.iterations,
+                                        stats.accepted, stats.rejected, stats.elapsedMillis, stats.bestFoundMillis,
+                                        stats.stopReason.getLabel());
+                }
+                System.out.println("-------------------------------------------------------------------------");
+                for (AnnealingChain.Stats stats : chainStats) {
+                        printOperatorReport(stats);
+                }
+        }
+
+        /**
+         * 印出一條退火鏈中各移動運算子的統計 (未啟用自適應運算子選擇時不輸出)
+         *
+         * @param stats 退火鏈的統計資料
+         */
+        private static void printOperatorReport(AnnealingChain.Stats stats) {
+                if (stats.operatorStats.isEmpty()) {
+                        return;
+                }
+                System.out.println("\n鏈 " + stats.chainId + " 移動運算子統計:");
+                System.out.println("-------------------------------------------------------------------------");
+                for (OperatorSelector.OperatorStats op : stats.operatorStats) {
+                        System.out.printf(
+                                        "%-6s | 選中: %9d | 失敗: %7d | 接受: %9d | 改善: %8d | 改善量: %11.2f | 每次: %5.0f ns | 最終機率: %5.1f%%\n",
+                                        op.operator.getLabel(), op.selections, op.failures, op.accepted, op.improved,
+                                        op.improvement, op.nanosPerCall, op.probability * 100);
+                }
+                System.out.println("-------------------------------------------------------------------------");
+        }
+
         /**
          * 將初始與最佳排程的比較報告寫入一個帶有時間戳記的 CSV 檔案
          * 
          * @param initial     初始排程的統計指標
-         * @param best        最佳排程的統計指標
-         * @param dataManager 資料管理器
+         * @param best           最佳排程的統計指標
+         * @param dataManager    資料管理器
+         * @param seed           此次排程的亂數種子
+         * @param costLowerBound 成本下界 (任何排程的加班、超時與平衡成本都不會低於此值)
          * @throws IOException 檔案寫入錯誤
          */
         public static void writeComparisonReportToCsv(ScheduleMetrics initial, ScheduleMetrics best,
-                        DataManager dataManager) throws IOException {
+                        DataManager dataManager, int seed, double costLowerBound) throws IOException {
                 // --- 主要修改處：將輸出路徑從 "out/" 改為 "log/" ---
                 String outputDir = "log";
                 Files.createDirectories(Paths.get(outputDir)); // 如果 log 資料夾不存在，則自動建立
@@ -67,60 +250,80 @@ public class Main {
                 String timestamp = new SimpleDateFormat("yyyyMMdd_HHmmss").format(new Date());
                 String outputFileName = outputDir + "/Comparison_Report_" + timestamp + ".csv";
 
-                try (BufferedWriter writer = new BufferedWriter(
-                                new OutputStreamWriter(new FileOutputStream(outputFileName), StandardCharsets.UTF_8))) {
-                        writer.write('\uFEFF'); // 寫入 UTF-8 BOM
+                try (CsvWriter csv = CsvWriter.create(outputFileName)) {
+                        // 亂數種子：以相同種子與輸入重新執行可得到完全相同的結果
+                        csv.field("亂數種子 (Seed)").field(seed).endRecord().endRecord();
 
-                        // CSV 標頭
-                        writer.write("指標,初始排程 (Initial),最佳排程 (Best),改善率 (%)\n");
+                        // CSV 標頭 (成本下界只適用於總成本，獨立成一欄)
+                        csv.field("指標").field("初始排程 (Initial)").field("最佳排程 (Best)").field("改善率 (%)")
+                                        .field("成本下界 (Lower Bound)").endRecord();
 
-                        // 總成本
+                        // 總成本：初始排程為實際採用的初始解 (貪婪或暖啟動時即為其成本)
                         double costReduction = initial.cost > 0 ? (1 - best.cost / initial.cost) * 100 : 0;
-                        writer.write(String.format("總成本 (Cost),%.2f,%.2f,%.2f%%\n", initial.cost, best.cost,
-                                        costReduction));
+                        csv.field("總成本 (Cost)").field(initial.cost, 2).field(best.cost, 2).percent(costReduction)
+                                        .field(costLowerBound, 2).endRecord();
 
                         // 總手術時間
-                        writer.write(String.format("總手術時間 (分鐘),%d,%d,N/A\n", initial.totalSurgeryTime,
-                                        best.totalSurgeryTime));
+                        csv.field("總手術時間 (分鐘)").field(initial.totalSurgeryTime).field(best.totalSurgeryTime)
+                                        .field("N/A").endRecord();
 
                         // 總使用時間
                         double usageReduction = initial.totalUsageTime > 0
                                         ? (1 - (double) best.totalUsageTime / initial.totalUsageTime) * 100
                                         : 0;
-                        writer.write(String.format("總使用時間 (分鐘),%d,%d,%.2f%%\n", initial.totalUsageTime,
-                                        best.totalUsageTime, usageReduction));
+                        csv.field("總使用時間 (分鐘)").field(initial.totalUsageTime).field(best.totalUsageTime)
+                                        .percent(usageReduction).endRecord();
 
                         // 總加班時間
                         double regularOvertimeReduction = initial.totalRegularOvertime > 0
                                         ? (1 - (double) best.totalRegularOvertime / initial.totalRegularOvertime) * 100
                                         : 0;
-                        writer.write(String.format("總加班時間 (分鐘),%d,%d,%.2f%%\n", initial.totalRegularOvertime,
-                                        best.totalRegularOvertime, regularOvertimeReduction));
+                        csv.field("總加班時間 (分鐘)").field(initial.totalRegularOvertime).field(best.totalRegularOvertime)
+                                        .percent(regularOvertimeReduction).endRecord();
 
                         // 總超時時間
                         double overtimeReduction = initial.totalOvertime > 0
                                         ? (1 - (double) best.totalOvertime / initial.totalOvertime) * 100
                                         : 0;
-                        writer.write(String.format("總超時時間 (分鐘),%d,%d,%.2f%%\n", initial.totalOvertime,
-                                        best.totalOvertime, overtimeReduction));
+                        csv.field("總超時時間 (分鐘)").field(initial.totalOvertime).field(best.totalOvertime)
+                                        .percent(overtimeReduction).endRecord();
+
+                        // 醫師時間衝突
+                        double conflictReduction = initial.totalSurgeonConflict > 0
+                                        ? (1 - (double) best.totalSurgeonConflict / initial.totalSurgeonConflict) * 100
+                                        : 0;
+                        csv.field("醫師衝突時間 (分鐘)").field(initial.totalSurgeonConflict)
+                                        .field(best.totalSurgeonConflict).percent(conflictReduction).endRecord();
 
-                        writer.write("\n");
+                        csv.endRecord();
 
                         // 寫入最佳排程後各手術房的詳細數據
-                        writer.write("最佳排程後各手術房詳細情況\n");
-                        writer.write("手術房,總使用時間 (分),加班時間 (分),超時時間 (分)\n");
+                        csv.field("最佳排程後各手術房詳細情況").endRecord();
+                        csv.field("手術房").field("總使用時間 (分)").field("加班時間 (分)").field("超時時間 (分)").endRecord();
                         for (Map.Entry<String, ScheduleMetrics.RoomMetrics> entry : best.roomMetrics.entrySet()) {
                                 ScheduleMetrics.RoomMetrics metrics = entry.getValue();
-                                writer.write(String.format("%s,%d,%d,%d\n", entry.getKey(), metrics.usageTime,
-                                                metrics.regularOvertime, metrics.overtime));
+                                csv.field(entry.getKey()).field(metrics.usageTime).field(metrics.regularOvertime)
+                                                .field(metrics.overtime).endRecord();
                         }
                 }
                 System.out.println("比較報告已成功匯出至：" + outputFileName);
         }
 
+        /**
+         * 印出成本下界與最佳解的差距 (差距為 0 表示最佳解的加班、超時與平衡成本已無法再改善)
+         * 
+         * @param best           最佳排程的統計指標
+         * @param costLowerBound 成本下界
+         */
+        public static void printLowerBound(ScheduleMetrics best, double costLowerBound) {
+                double gap = best.cost > 0 ? (best.cost - costLowerBound) / best.cost * 100 : 0;
+                System.out.printf("成本下界 (Lower Bound): %.2f，最佳解與下界的差距: %.2f%%\n", costLowerBound, gap);
+                System.out.println("-------------------------------------------------------------------------");
+        }
+
         // (printComparisonReport 方法維持不變)
         public static void printComparisonReport(ScheduleMetrics initial, ScheduleMetrics best,
-                        DataManager dataManager) {
+                        DataManager dataManager, int seed) {
                 int roomCount = dataManager.getAllRooms().size();
                 int maxRegularTime = dataManager.getArguments().getOrDefault("maxRegularTime", 540);
                 long totalPossibleRegularTime = (long) roomCount * maxRegularTime;
@@ -132,6 +335,7 @@ public class Main {
                 System.out.println("=========================================================================");
                 System.out.println("                          手術排程最佳化結果報告");
                 System.out.println("=========================================================================");
+                System.out.println("亂數種子 (Seed): " + seed);
                 System.out.printf(format, "指標", "初始排程 (Initial)", "最佳排程 (Best)", "改善率 (Reduction)");
                 System.out.println("-------------------------------------------------------------------------");
 
@@ -167,6 +371,13 @@ public class Main {
                                 String.format(overtimeReduction >= 0 ? improvementPercentage : increasePercentage,
                                                 Math.abs(overtimeReduction)));
 
+                double conflictReduction = initial.totalSurgeonConflict > 0
+                                ? (1 - (double) best.totalSurgeonConflict / initial.totalSurgeonConflict) * 100
+                                : 0;
+                System.out.printf(format, "醫師衝突時間 (分鐘)", initial.totalSurgeonConflict, best.totalSurgeonConflict,
+                                String.format(conflictReduction >= 0 ? improvementPercentage : increasePercentage,
+                                                Math.abs(conflictReduction)));
+
                 System.out.println("-------------------------------------------------------------------------");
 
                 double initialRegularRate = totalPossibleRegularTime > 0
@@ -0,0 +1,362 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+
+/**
+ * 以 FileChannel.map 映射的 TimeTable 檔案
+ * 直接在 UTF-8 位元組上切割記錄與欄位，只取出 SurgeryNode 需要的欄位 (申請單號、科別、主刀醫師、手術房、手術時間、特殊房需求)，
+ * 其餘欄位不解碼；每筆記錄只記下位元組範圍，輸出時才把原始位元組連同替換後的手術房直接寫出。
+ * 適用於一次回測大量歷史 TimeTable 的情境，由 DataManager 以 mappedLoader=1 參數啟用。
+ */
+public class MappedTimeTable {
+    private static final int APPLICATION_ID_COLUMN = 1;
+    private static final int DEPARTMENT_COLUMN = 3;
+    private static final int SURGEON_COLUMN = 4;
+    private static final int ROOM_COLUMN = 5;
+    private static final int TIME_COLUMN = 7;
+    private static final int SPECIAL_COLUMN = 8;
+    private static final int REQUIRED_COLUMNS = 9;
+
+    private final MappedByteBuffer data;
+    private int rowCount;
+    private int[] rowStart = new int[64];
+    private int[] rowEnd = new int[64];
+    private int[] roomStart = new int[64];
+    private int[] roomEnd = new int[64];
+    /** 重複出現的短欄位 (手術房、特殊房需求、科別、醫師) 以位元組內容共用同一個 String */
+    private final Map<ByteKey, String> pool = new HashMap<>();
+    private final ByteKey probe = new ByteKey();
+    // 切割欄位與輸出時重複使用的暫存區
+    private final int[] fieldStarts = new int[REQUIRED_COLUMNS];
+    private final int[] fieldEnds = new int[REQUIRED_COLUMNS];
+    private final byte[] copyBuffer = new byte[8192];
+    /** 含引號欄位去除引號後的位元組 (見 {@link #unquote}) */
+    private byte[] unquoted = new byte[64];
+    private int unquotedLength;
+
+    private MappedTimeTable(MappedByteBuffer data) {
+        this.data = data;
+    }
+
+    /**
+     * 映射檔案並切割所有記錄 (映射在通道關閉後仍然有效)
+     * * @param filePath 檔案路徑
+     *
+     * @return 映射後的 TimeTable
+     * @throws IOException 讀取錯誤或檔案超過 2 GB
+     */
+    public static MappedTimeTable map(String filePath) throws IOException {
+        try (FileChannel channel = FileChannel.open(Paths.get(filePath), StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("檔案過大，無法映射：" + filePath);
+            }
+            MappedTimeTable table = new MappedTimeTable(channel.map(FileChannel.MapMode.READ_ONLY, 0, size));
+            table.splitRows();
+            return table;
+        }
+    }
+
+    /** 記錄數 (含表頭) */
+    public int rowCount() {
+        return rowCount;
+    }
+
+    /**
+     * 將一筆記錄轉換為 SurgeryNode
+     * * @param row 記錄索引
+     *
+     * @return 手術節點；欄位不足時回傳 null
+     * @throws NumberFormatException 手術時間欄位不是整數
+     */
+    public SurgeryNode toSurgeryNode(int row) {
+        int[] starts = fieldStarts;
+        int[] ends = fieldEnds;
+        if (splitFields(rowStart[row], rowEnd[row], starts, ends) < REQUIRED_COLUMNS) {
+            return null;
+        }
+        int surgeryTime = unquote(starts[TIME_COLUMN], ends[TIME_COLUMN])
+                ? parseInt(ByteBuffer.wrap(unquoted), 0, unquotedLength, row)
+                : parseInt(data, starts[TIME_COLUMN], ends[TIME_COLUMN], row);
+        String applicationId = value(starts[APPLICATION_ID_COLUMN], ends[APPLICATION_ID_COLUMN]);
+        return new SurgeryNode(applicationId, pooled(starts[ROOM_COLUMN], ends[ROOM_COLUMN]), surgeryTime,
+                pooled(starts[SPECIAL_COLUMN], ends[SPECIAL_COLUMN]),
+                pooled(starts[DEPARTMENT_COLUMN], ends[DEPARTMENT_COLUMN]),
+                pooled(starts[SURGEON_COLUMN], ends[SURGEON_COLUMN]));
+    }
+
+    /** 記錄的原始文字 (需要時才解碼，例如錯誤訊息) */
+    public String text(int row) {
+        return decode(rowStart[row], rowEnd[row]);
+    }
+
+    /** 手術房欄位在記錄文字 {@link #text} 中的起始字元位置；沒有此欄位時為 -1 */
+    public int roomFieldStart(int row) {
+        return roomStart[row] < 0 ? -1 : decode(rowStart[row], roomStart[row]).length();
+    }
+
+    /** 手術房欄位在記錄文字 {@link #text} 中的結束字元位置 (不含)；沒有此欄位時為 -1 */
+    public int roomFieldEnd(int row) {
+        return roomEnd[row] < 0 ? -1 : decode(rowStart[row], roomEnd[row]).length();
+    }
+
+    /**
+     * 寫出一筆記錄的原始位元組 (不含換行)，手術房欄位替換為指定房間
+     * * @param out 輸出串流 (UTF-8)
+     *
+     * @param row  記錄索引
+     * @param room 手術房；null 表示原樣輸出
+     * @throws IOException 寫入錯誤
+     */
+    public void writeRow(OutputStream out, int row, String room) throws IOException {
+        if (room == null || roomStart[row] < 0) {
+            writeBytes(out, rowStart[row], rowEnd[row]);
+        } else {
+            writeBytes(out, rowStart[row], roomStart[row]);
+            out.write(room.getBytes(StandardCharsets.UTF_8));
+            writeBytes(out, roomEnd[row], rowEnd[row]);
+        }
+    }
+
+    // 依換行切割記錄 (略過開頭的 BOM 與空白記錄)，並記下每筆記錄手術房欄位的位元組範圍
+    private void splitRows() {
+        int limit = data.limit();
+        int position = 0;
+        if (limit >= 3 && (data.get(0) & 0xFF) == 0xEF && (data.get(1) & 0xFF) == 0xBB
+                && (data.get(2) & 0xFF) == 0xBF) {
+            position = 3;
+        }
+        while (position < limit) {
+            int start = position;
+            boolean quoted = false;
+            boolean hasValue = false; // 目前欄位是否已有值 (只有欄位值開頭的引號開始引號區段，與 CsvReader 相同)
+            while (position < limit) {
+                byte b = data.get(position);
+                if (quoted) {
+                    if (b != '"') {
+                        hasValue = true;
+                    } else if (position + 1 < limit && data.get(position + 1) == '"') {
+                        hasValue = true;
+                        position++;
+                    } else {
+                        quoted = false;
+                    }
+                } else if (b == '\n') {
+                    break;
+                } else if (b == ',') {
+                    hasValue = false;
+                } else if (b == '"' && !hasValue) {
+                    quoted = true;
+                } else {
+                    hasValue = true;
+                }
+                position++;
+            }
+            int end = position;
+            if (end > start && data.get(end - 1) == '\r') {
+                end--;
+            }
+            position++; // 略過換行
+            if (!isBlank(start, end)) {
+                addRow(start, end);
+            }
+        }
+    }
+
+    private void addRow(int start, int end) {
+        if (rowCount == rowStart.length) {
+            int capacity = rowCount * 2;
+            rowStart = Arrays.copyOf(rowStart, capacity);
+            rowEnd = Arrays.copyOf(rowEnd, capacity);
+            roomStart = Arrays.copyOf(roomStart, capacity);
+            roomEnd = Arrays.copyOf(roomEnd, capacity);
+        }
+        rowStart[rowCount] = start;
+        rowEnd[rowCount] = end;
+        boolean hasRoom = splitFields(start, end, fieldStarts, fieldEnds) > ROOM_COLUMN;
+        roomStart[rowCount] = hasRoom ? fieldStarts[ROOM_COLUMN] : -1;
+        roomEnd[rowCount] = hasRoom ? fieldEnds[ROOM_COLUMN] : -1;
+        rowCount++;
+    }
+
+    /**
+     * 切割記錄中前 starts.length 個欄位的位元組範圍 (引號區段內的逗號不視為分隔，引號規則與 CsvReader 相同)
+     * @return 記錄的欄位總數 (最多計到 starts.length + 1)
+     */
+    private int splitFields(int start, int end, int[] starts, int[] ends) {
+        int field = 0;
+        int fieldStart = start;
+        boolean quoted = false;
+        boolean hasValue = false;
+        for (int i = start; i < end && field < starts.length; i++) {
+            byte b = data.get(i);
+            if (quoted) {
+                if (b != '"') {
+                    hasValue = true;
+                } else if (i + 1 < end && data.get(i + 1) == '"') {
+                    hasValue = true;
+                    i++;
+                } else {
+                    quoted = false;
+                }
+            } else if (b == ',') {
+                starts[field] = fieldStart;
+                ends[field] = i;
+                field++;
+                fieldStart = i + 1;
+                hasValue = false;
+            } else if (b == '"' && !hasValue) {
+                quoted = true;
+            } else {
+                hasValue = true;
+            }
+        }
+        if (field < starts.length) {
+            starts[field] = fieldStart;
+            ends[field] = end;
+        }
+        return field + 1;
+    }
+
+    private int parseInt(ByteBuffer source, int start, int end, int row) {
+        boolean negative = start < end && source.get(start) == '-';
+        int i = start < end && (negative || source.get(start) == '+') ? start + 1 : start;
+        if (i == end || end - i > 9) {
+            throw new NumberFormatException(text(row));
+        }
+        int value = 0;
+        for (; i < end; i++) {
+            int digit = source.get(i) - '0';
+            if (digit < 0 || digit > 9) {
+                throw new NumberFormatException(text(row));
+            }
+            value = value * 10 + digit;
+        }
+        return negative ? -value : value;
+    }
+
+    private String pooled(int start, int end) {
+        probe.set(data, start, end);
+        String value = pool.get(probe);
+        if (value == null) {
+            value = value(start, end);
+            pool.put(new ByteKey().set(data, start, end), value);
+        }
+        return value;
+    }
+
+    // 欄位值：去除引號並將 "" 還原為 " (與 CsvReader 相同)，不含引號的欄位直接解碼
+    private String value(int start, int end) {
+        return unquote(start, end) ? new String(unquoted, 0, unquotedLength, StandardCharsets.UTF_8)
+                : decode(start, end);
+    }
+
+    /**
+     * 依 CsvReader 的規則去除欄位的引號：欄位值開頭的引號開始引號區段，區段內的 "" 為一個 "，
+     * 其他位置的引號視為一般字元；結果放在 unquoted 的前 unquotedLength 個位元組
+     * @return 欄位是否含有引號 (不含時不處理，直接使用原始位元組)
+     */
+    private boolean unquote(int start, int end) {
+        int i = start;
+        while (i < end && data.get(i) != '"') {
+            i++;
+        }
+        if (i == end) {
+            return false;
+        }
+        if (unquoted.length < end - start) {
+            unquoted = new byte[Math.max(end - start, unquoted.length * 2)];
+        }
+        int length = 0;
+        boolean quoted = false;
+        for (i = start; i < end; i++) {
+            byte b = data.get(i);
+            if (quoted) {
+                if (b != '"') {
+                    unquoted[length++] = b;
+                } else if (i + 1 < end && data.get(i + 1) == '"') {
+                    unquoted[length++] = '"';
+                    i++;
+                } else {
+                    quoted = false;
+                }
+            } else if (b == '"' && length == 0) {
+                quoted = true; // 欄位開頭的引號
+            } else {
+                unquoted[length++] = b;
+            }
+        }
+        unquotedLength = length;
+        return true;
+    }
+
+    private String decode(int start, int end) {
+        byte[] bytes = new byte[end - start];
+        data.get(start, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private void writeBytes(OutputStream out, int start, int end) throws IOException {
+        for (int i = start; i < end; i += copyBuffer.length) {
+            int length = Math.min(copyBuffer.length, end - i);
+            data.get(i, copyBuffer, 0, length);
+            out.write(copyBuffer, 0, length);
+        }
+    }
+
+    private boolean isBlank(int start, int end) {
+        for (int i = start; i < end; i++) {
+            byte b = data.get(i);
+            if (b != ' ' && b != '\t' && b != '\r') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** 以映射區段中的位元組範圍作為雜湊表的鍵 (查詢用的實例可重複使用) */
+    private static final class ByteKey {
+        private MappedByteBuffer data;
+        private int start;
+        private int end;
+        private int hash;
+
+        ByteKey set(MappedByteBuffer data, int start, int end) {
+            this.data = data;
+            this.start = start;
+            this.end = end;
+            int h = 1;
+            for (int i = start; i < end; i++) {
+                h = 31 * h + data.get(i);
+            }
+            this.hash = h;
+            return this;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof ByteKey)) {
+                return false;
+            }
+            ByteKey key = (ByteKey) other;
+            if (key.hash != hash || key.end - key.start != end - start) {
+                return false;
+            }
+            for (int i = 0; i < end - start; i++) {
+                if (key.data.get(key.start + i) != data.get(start + i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
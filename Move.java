@@ -0,0 +1,115 @@
+/**
+ * 鄰近解的移動 (插入或交換)
+ * 直接在目前排程上套用 (apply)，若 Metropolis 準則拒絕則以 undo 還原，
+ * 避免每產生一個鄰近解就複製整份排程。房間與手術皆以 {@link CompactSchedule} 的 int 編號表示，
+ * 物件本身可重複使用，熱迴圈中不需配置新的 Move。
+ */
+public class Move {
+    public enum Type {
+        /** 將來源房間的手術插入目標房間的指定位置 */
+        INSERT,
+        /** 將來源房間的手術與目標房間指定位置的手術交換，換出的手術接在來源房間最後 */
+        SWAP
+    }
+
+    private Type type;
+    private int sourceRoom;
+    private int targetRoom;
+    private int sourceIndex;
+    private int targetIndex;
+    private int movedSurgery = -1;
+    private int swappedSurgery = -1;
+    private int movedTime;
+    private int swappedTime;
+
+    /**
+     * 設定移動內容 (尚未套用)
+     * * @param type 移動類型
+     *
+     * @param sourceRoom  來源房間編號
+     * @param sourceIndex 被移動的手術在來源房間中的位置
+     * @param targetRoom  目標房間編號
+     * @param targetIndex 目標房間中的插入或交換位置
+     * @return 此物件本身
+     */
+    public Move set(Type type, int sourceRoom, int sourceIndex, int targetRoom, int targetIndex) {
+        this.type = type;
+        this.sourceRoom = sourceRoom;
+        this.sourceIndex = sourceIndex;
+        this.targetRoom = targetRoom;
+        this.targetIndex = targetIndex;
+        return this;
+    }
+
+    /**
+     * 在排程上直接套用此移動
+     * * @param schedule 目前的排程 (會被修改)
+     */
+    public void apply(CompactSchedule schedule) {
+        movedSurgery = schedule.remove(sourceRoom, sourceIndex);
+        movedTime = schedule.getDuration(movedSurgery);
+        if (type == Type.SWAP) {
+            swappedSurgery = schedule.set(targetRoom, targetIndex, movedSurgery);
+            swappedTime = schedule.getDuration(swappedSurgery);
+            schedule.append(sourceRoom, swappedSurgery);
+        } else {
+            swappedSurgery = -1;
+            swappedTime = 0;
+            schedule.insert(targetRoom, targetIndex, movedSurgery);
+        }
+    }
+
+    /**
+     * 還原 {@link #apply} 對排程造成的修改
+     * * @param schedule 已套用此移動的排程
+     */
+    public void undo(CompactSchedule schedule) {
+        if (type == Type.SWAP) {
+            schedule.removeLast(sourceRoom);
+            schedule.set(targetRoom, targetIndex, swappedSurgery);
+        } else {
+            schedule.remove(targetRoom, targetIndex);
+        }
+        schedule.insert(sourceRoom, sourceIndex, movedSurgery);
+    }
+
+    /** 目標房間增加 (來源房間減少) 的手術時間，需在 apply 之後呼叫 */
+    public int getTimeDelta() {
+        return movedTime - swappedTime;
+    }
+
+    /** 目標房間增加 (來源房間減少) 的手術數量 */
+    public int getCountDelta() {
+        return type == Type.SWAP ? 0 : 1;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public int getSourceRoom() {
+        return sourceRoom;
+    }
+
+    public int getTargetRoom() {
+        return targetRoom;
+    }
+
+    public int getSourceIndex() {
+        return sourceIndex;
+    }
+
+    public int getTargetIndex() {
+        return targetIndex;
+    }
+
+    /** 被移動的手術編號，需在 apply 之後呼叫 */
+    public int getMovedSurgery() {
+        return movedSurgery;
+    }
+
+    /** 交換時換出的手術編號；插入時為 -1 */
+    public int getSwappedSurgery() {
+        return swappedSurgery;
+    }
+}
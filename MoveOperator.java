@@ -0,0 +1,25 @@
+/**
+ * 產生鄰近解的移動運算子
+ * 每個運算子決定來源房間、被移動的手術與目標房間，產生的都是 {@link Move} 的插入或交換，
+ * 因此共用同一套套用/還原與兩個房間的增量成本評估。各運算子的選擇機率由 {@link OperatorSelector} 依近期成效調整。
+ */
+public enum MoveOperator {
+    /** 隨機來源房間，依溫度階段取最長 (高溫) 或最短的手術，插入隨機目標房間的隨機位置 */
+    INSERT("插入"),
+    /** 隨機來源房間，依溫度階段取最長或最短的手術，與隨機目標房間的隨機手術交換 */
+    SWAP("交換"),
+    /** 隨機兩間房由使用時間較長者移出一檯手術到較短者，手術時間取最接近拉平兩房差距所需者 */
+    REBALANCE("兩房平衡"),
+    /** 由使用時間最長的房間隨機移出一檯手術，目標為隨機兩間可進入房間中使用時間較短者 */
+    RELIEVE_OVERLOADED("紓解最滿房");
+
+    private final String label;
+
+    MoveOperator(String label) {
+        this.label = label;
+    }
+
+    public String getLabel() {
+        return label;
+    }
+}
@@ -0,0 +1,139 @@
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * 多起點平行模擬退火引擎
+ * 在固定大小的執行緒池上同時執行多條獨立的退火鏈，每條鏈擁有自己的 SplittableRandom 與排程狀態，
+ * 最後取成本最低者 (相同時取編號較小的鏈)。只有一條鏈時直接在呼叫端執行緒執行。
+ */
+public class MultiStartAnnealingEngine implements SchedulingEngine {
+    private final DataManager dataManager;
+    private final boolean[] specialRoomFlags;
+    private final int chainCount;
+    private final boolean verbose;
+    /** 主亂數產生器的種子 */
+    private final long seed;
+    /** 搜尋遙測，null 表示不記錄 */
+    private final SearchTelemetry telemetry;
+    private final List<AnnealingChain.Stats> stats = new ArrayList<>();
+    /** 已證明的最佳成本，負數表示未知 */
+    private double provenOptimum = -1;
+    /** 初始接受率 (%)，0 表示依 initialAcceptance 參數 */
+    private int initialAcceptance;
+    /** 搜尋進行中的退火鏈，供 {@link #getCurrentBest()} 讀取 */
+    private volatile List<AnnealingChain> activeChains = Collections.emptyList();
+
+    /**
+     * 建構子
+     * * @param dataManager 資料管理器
+     *
+     * @param specialRoomFlags 房間編號 -> 是否為特殊手術房
+     * @param seed             主亂數產生器的種子，各退火鏈的亂數流依序由其分裂而來
+     * @param telemetry        搜尋遙測，null 表示不記錄
+     */
+    public MultiStartAnnealingEngine(DataManager dataManager, boolean[] specialRoomFlags, long seed,
+            SearchTelemetry telemetry) {
+        this.dataManager = dataManager;
+        this.seed = seed;
+        this.telemetry = telemetry;
+        this.specialRoomFlags = specialRoomFlags;
+        this.chainCount = Math.max(1, dataManager.getArguments().getOrDefault("chains", 1));
+        this.verbose = dataManager.getArguments().getOrDefault("verbose", 1) != 0;
+    }
+
+    @Override
+    public CompactSchedule search(CompactSchedule initialSchedule) {
+        // 每條鏈使用由主亂數產生器依序分裂出的獨立亂數流，相同種子下各鏈的亂數序列完全相同
+        SplittableRandom masterRandom = new SplittableRandom(seed);
+        long deadlineNanos = AnnealingChain.deadlineAfter(dataManager.getArguments().getOrDefault("timeLimit", 0));
+        List<AnnealingChain> chains = new ArrayList<>();
+        for (int k = 0; k < chainCount; k++) {
+            AnnealingChain chain = new AnnealingChain(k, dataManager, specialRoomFlags, masterRandom.split(),
+                    verbose && k == 0);
+            chain.setDeadline(deadlineNanos);
+            chain.setTelemetry(telemetry);
+            chain.setProvenOptimum(provenOptimum);
+            if (initialAcceptance > 0) {
+                chain.setInitialAcceptance(initialAcceptance);
+            }
+            chains.add(chain);
+        }
+        activeChains = chains;
+
+        List<CompactSchedule> chainResults = runChains(chains, initialSchedule);
+        CompactSchedule bestSchedule = chainResults.get(0);
+        for (CompactSchedule candidate : chainResults) {
+            if (candidate.getCost() < bestSchedule.getCost()) {
+                bestSchedule = candidate;
+            }
+        }
+
+        stats.clear();
+        for (AnnealingChain chain : chains) {
+            stats.add(chain.getStats());
+        }
+        return bestSchedule;
+    }
+
+    /**
+     * 設定已證明的最佳成本 (例如分支定界證明的最佳值)，之後的搜尋中任一條鏈達到此值即結束
+     * * @param cost 已證明的最佳成本，負數表示未知
+     */
+    public void setProvenOptimum(double cost) {
+        this.provenOptimum = cost;
+    }
+
+    @Override
+    public void setInitialAcceptance(int percent) {
+        this.initialAcceptance = percent;
+    }
+
+    @Override
+    public List<AnnealingChain.Stats> getStats() {
+        return Collections.unmodifiableList(stats);
+    }
+
+    @Override
+    public CompactSchedule getCurrentBest() {
+        return AnnealingChain.bestPublished(activeChains);
+    }
+
+    @Override
+    public String getName() {
+        return "sa";
+    }
+
+    /**
+     * 執行所有退火鏈；只有一條鏈時直接在目前執行緒執行，否則使用固定大小的執行緒池
+     * * @param chains 待執行的退火鏈
+     *
+     * @param initialSchedule 共同的初始解 (各鏈自行複製)
+     * @return 依鏈編號排序的各鏈最佳解
+     */
+    private List<CompactSchedule> runChains(List<AnnealingChain> chains, CompactSchedule initialSchedule) {
+        if (chains.size() == 1) {
+            return Collections.singletonList(chains.get(0).run(initialSchedule));
+        }
+
+        int threads = Math.min(chains.size(), Runtime.getRuntime().availableProcessors());
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<CompactSchedule>> futures = new ArrayList<>();
+            for (AnnealingChain chain : chains) {
+                futures.add(executor.submit(() -> chain.run(initialSchedule)));
+            }
+            List<CompactSchedule> results = new ArrayList<>();
+            for (Future<CompactSchedule> future : futures) {
+                results.add(future.get());
+            }
+            return results;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("排程執行被中斷", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("退火鏈執行失敗", e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,196 @@
+import java.util.*;
+
+/**
+ * 移動運算子的自適應選擇 (多臂吃角子老虎機的機率匹配)
+ * 每個溫度層級結束時，以各運算子在此層級中每次呼叫帶來的成本改善、除以抽樣量測的每次呼叫耗時，
+ * 得到「每奈秒改善量」，並以指數移動平均保留近期成效；下一個層級依此比例分配選擇機率，
+ * 每個運算子至少保留 {@link #MIN_PROBABILITY} 的機率，避免成效暫時不佳的運算子再也不被選到。
+ * 改善量只計入被接受且使目前成本下降的移動。每條退火鏈各自擁有一個選擇器 (不需同步)。
+ */
+public class OperatorSelector {
+    /** 每個運算子的最低選擇機率 */
+    private static final double MIN_PROBABILITY = 0.05;
+    /** 指數移動平均中最近一個層級的權重 */
+    private static final double RECENT_WEIGHT = 0.3;
+
+    private final MoveOperator[] operators = MoveOperator.values();
+    private final double[] probability;
+    /** 累積機率，供 {@link #select} 以一次亂數抽選 */
+    private final double[] cumulative;
+    /** 每奈秒改善量的指數移動平均 */
+    private final double[] score;
+
+    // --- 整次搜尋的統計 ---
+    private final long[] selections;
+    private final long[] failures;
+    private final long[] accepted;
+    private final long[] improved;
+    private final double[] improvement;
+    private final long[] timedNanos;
+    private final long[] timedCalls;
+
+    // --- 目前層級的統計 ---
+    private final long[] levelSelections;
+    private final double[] levelImprovement;
+
+    /** 單一運算子的統計 (報告用) */
+    public static class OperatorStats {
+        public final MoveOperator operator;
+        /** 被選中的次數 */
+        public final long selections;
+        /** 找不到有效移動的次數 */
+        public final long failures;
+        public final long accepted;
+        /** 被接受且使目前成本下降的次數 */
+        public final long improved;
+        /** 累計的成本改善量 */
+        public final double improvement;
+        /** 抽樣量測的每次呼叫平均耗時 (奈秒，含成本評估與接受判斷；找不到有效移動的呼叫也計入) */
+        public final double nanosPerCall;
+        /** 搜尋結束時的選擇機率 */
+        public final double probability;
+
+        public OperatorStats(MoveOperator operator, long selections, long failures, long accepted, long improved,
+                double improvement, double nanosPerCall, double probability) {
+            this.operator = operator;
+            this.selections = selections;
+            this.failures = failures;
+            this.accepted = accepted;
+            this.improved = improved;
+            this.improvement = improvement;
+            this.nanosPerCall = nanosPerCall;
+            this.probability = probability;
+        }
+    }
+
+    public OperatorSelector() {
+        int k = operators.length;
+        probability = new double[k];
+        cumulative = new double[k];
+        score = new double[k];
+        selections = new long[k];
+        failures = new long[k];
+        accepted = new long[k];
+        improved = new long[k];
+        improvement = new double[k];
+        timedNanos = new long[k];
+        timedCalls = new long[k];
+        levelSelections = new long[k];
+        levelImprovement = new double[k];
+        Arrays.fill(probability, 1.0 / k);
+        updateCumulative();
+    }
+
+    /**
+     * 依目前的機率抽選一個運算子
+     * * @param random 亂數產生器
+     *
+     * @return 運算子
+     */
+    public MoveOperator select(SplittableRandom random) {
+        double u = random.nextDouble();
+        int last = operators.length - 1;
+        for (int k = 0; k < last; k++) {
+            if (u < cumulative[k]) {
+                return record(k);
+            }
+        }
+        return record(last);
+    }
+
+    /** 記錄運算子找不到有效移動 */
+    public void recordFailure(MoveOperator operator) {
+        failures[operator.ordinal()]++;
+    }
+
+    /**
+     * 記錄移動被接受
+     * * @param operator 產生移動的運算子
+     *
+     * @param costDelta 目前成本的變化 (負數表示改善)
+     */
+    public void recordAccepted(MoveOperator operator, double costDelta) {
+        int k = operator.ordinal();
+        accepted[k]++;
+        if (costDelta < 0) {
+            improved[k]++;
+            improvement[k] -= costDelta;
+            levelImprovement[k] -= costDelta;
+        }
+    }
+
+    /**
+     * 記錄一次抽樣量測的呼叫耗時
+     * * @param operator 運算子
+     *
+     * @param nanos 產生移動、評估成本與接受判斷的耗時 (找不到有效移動時為嘗試產生移動的耗時)
+     */
+    public void recordTime(MoveOperator operator, long nanos) {
+        timedNanos[operator.ordinal()] += nanos;
+        timedCalls[operator.ordinal()]++;
+    }
+
+    /** 溫度層級結束：依此層級的每奈秒改善量更新各運算子的選擇機率 */
+    public void endLevel() {
+        int k = operators.length;
+        double total = 0;
+        for (int i = 0; i < k; i++) {
+            if (levelSelections[i] > 0) {
+                double rate = levelImprovement[i] / levelSelections[i] / nanosPerCall(i);
+                score[i] = (1 - RECENT_WEIGHT) * score[i] + RECENT_WEIGHT * rate;
+            }
+            total += score[i];
+            levelSelections[i] = 0;
+            levelImprovement[i] = 0;
+        }
+        if (total <= 0) {
+            return; // 尚無任何改善 (或剛開始)：維持原本的機率
+        }
+        for (int i = 0; i < k; i++) {
+            probability[i] = MIN_PROBABILITY + (1 - k * MIN_PROBABILITY) * score[i] / total;
+        }
+        updateCumulative();
+    }
+
+    /**
+     * 取得各運算子的統計
+     * * @return 依運算子順序排列的統計
+     */
+    public List<OperatorStats> snapshot() {
+        List<OperatorStats> list = new ArrayList<>();
+        for (int i = 0; i < operators.length; i++) {
+            list.add(new OperatorStats(operators[i], selections[i], failures[i], accepted[i], improved[i],
+                    improvement[i], timedCalls[i] > 0 ? (double) timedNanos[i] / timedCalls[i] : 0,
+                    probability[i]));
+        }
+        return list;
+    }
+
+    private MoveOperator record(int k) {
+        selections[k]++;
+        levelSelections[k]++;
+        return operators[k];
+    }
+
+    // 尚未量測到耗時的運算子以已量測者的平均估計 (都沒有時以 1 奈秒計，只比較改善量)
+    private double nanosPerCall(int k) {
+        if (timedCalls[k] > 0) {
+            return Math.max(1.0, (double) timedNanos[k] / timedCalls[k]);
+        }
+        long nanos = 0;
+        long calls = 0;
+        for (int i = 0; i < operators.length; i++) {
+            nanos += timedNanos[i];
+            calls += timedCalls[i];
+        }
+        return calls > 0 ? Math.max(1.0, (double) nanos / calls) : 1.0;
+    }
+
+    private void updateCumulative() {
+        double sum = 0;
+        for (int i = 0; i < operators.length; i++) {
+            sum += probability[i];
+            cumulative[i] = sum;
+        }
+    }
+}
@@ -0,0 +1,196 @@
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * 平行回火 (replica exchange) 引擎
+ * 在一組固定溫度的梯度上同時執行多個副本 (每個副本一個執行緒)，每回合各副本先在自己的溫度下執行
+ * 一段 Metropolis 迭代，之後相鄰溫度的副本依標準交換準則 min(1, exp((1/T_i - 1/T_j)(E_i - E_j)))
+ * 交換目前解。與 MultiStartAnnealingEngine 使用相同的成本函數與移動集合 (AnnealingChain)。
+ */
+public class ParallelTemperingEngine implements SchedulingEngine {
+    /** 溫度梯度中的最低溫度 */
+    private static final double MIN_TEMPERATURE = 0.1;
+
+    private final DataManager dataManager;
+    private final boolean[] specialRoomFlags;
+    private final int replicaCount;
+    private final boolean verbose;
+    /** 主亂數產生器的種子 */
+    private final long seed;
+    /** 搜尋遙測，null 表示不記錄 */
+    private final SearchTelemetry telemetry;
+    private final List<AnnealingChain.Stats> stats = new ArrayList<>();
+    /** 搜尋進行中的副本，供 {@link #getCurrentBest()} 讀取 */
+    private volatile List<AnnealingChain> activeReplicas = Collections.emptyList();
+    /** 初始接受率 (%)，0 表示依 initialAcceptance 參數 */
+    private int initialAcceptance;
+    private long exchangeAttempts;
+    private long exchangeAccepted;
+
+    /**
+     * 建構子
+     * * @param dataManager 資料管理器
+     *
+     * @param specialRoomFlags 房間編號 -> 是否為特殊手術房
+     * @param seed             主亂數產生器的種子，各副本的亂數流依序由其分裂而來
+     * @param telemetry        搜尋遙測，null 表示不記錄
+     */
+    public ParallelTemperingEngine(DataManager dataManager, boolean[] specialRoomFlags, long seed,
+            SearchTelemetry telemetry) {
+        this.dataManager = dataManager;
+        this.seed = seed;
+        this.telemetry = telemetry;
+        this.specialRoomFlags = specialRoomFlags;
+        this.replicaCount = Math.max(2, dataManager.getArguments().getOrDefault("replicas", 8));
+        this.verbose = dataManager.getArguments().getOrDefault("verbose", 1) != 0;
+    }
+
+    @Override
+    public CompactSchedule search(CompactSchedule initialSchedule) {
+        // 交換判斷與各副本的亂數流依序由主亂數產生器分裂而來，相同種子下結果可完全重現
+        SplittableRandom masterRandom = new SplittableRandom(seed);
+        SplittableRandom exchangeRandom = masterRandom.split();
+        long deadlineNanos = AnnealingChain.deadlineAfter(dataManager.getArguments().getOrDefault("timeLimit", 0));
+        List<AnnealingChain> replicas = new ArrayList<>();
+        for (int i = 0; i < replicaCount; i++) {
+            AnnealingChain replica = new AnnealingChain(i, dataManager, specialRoomFlags, masterRandom.split(), false);
+            replica.setDeadline(deadlineNanos);
+            replica.setTelemetry(telemetry);
+            if (initialAcceptance > 0) {
+                replica.setInitialAcceptance(initialAcceptance);
+            }
+            replica.start(initialSchedule);
+            replicas.add(replica);
+        }
+        activeReplicas = replicas;
+
+        // 1. 以初始接受率決定最高溫度，並建立由高到低的等比溫度梯度
+        double maxTemperature = replicas.get(0).calibrateTemperature();
+        double[] ladder = buildLadder(maxTemperature, Math.min(MIN_TEMPERATURE, maxTemperature), replicaCount);
+
+        // 2. 每回合的迭代次數與回合數，與單一退火鏈在每個溫度層級及總層級數相同
+        int sweepLength = AnnealingChain.iterationsPerLevel(initialSchedule);
+        int rounds = AnnealingChain.levelCount(maxTemperature, initialSchedule);
+        if (verbose) {
+            System.out.printf("平行回火：%d 個副本，溫度 %.2f ~ %.2f，共 %d 回合\n", replicaCount, ladder[0],
+                    ladder[replicaCount - 1], rounds);
+        }
+
+        List<Callable<Void>> sweeps = new ArrayList<>();
+        for (int i = 0; i < replicaCount; i++) {
+            AnnealingChain replica = replicas.get(i);
+            double temperature = ladder[i];
+            sweeps.add(() -> {
+                replica.sweep(temperature, maxTemperature, sweepLength);
+                return null;
+            });
+        }
+
+        exchangeAttempts = 0;
+        exchangeAccepted = 0;
+        AnnealingChain.StopReason reason = AnnealingChain.StopReason.TEMPERATURE;
+        double bestCost = initialSchedule.getCost();
+        int stalledRounds = 0;
+        ExecutorService executor = Executors.newFixedThreadPool(replicaCount);
+        try {
+            for (int round = 0; round < rounds && reason == AnnealingChain.StopReason.TEMPERATURE; round++) {
+                for (Future<Void> future : executor.invokeAll(sweeps)) {
+                    future.get();
+                }
+                // 3. 交替嘗試 (0,1)(2,3)... 與 (1,2)(3,4)... 的相鄰副本交換
+                for (int i = round % 2; i + 1 < replicaCount; i += 2) {
+                    exchangeAttempts++;
+                    double delta = (1.0 / ladder[i] - 1.0 / ladder[i + 1])
+                            * (replicas.get(i).getCurrentCost() - replicas.get(i + 1).getCurrentCost());
+                    if (delta >= 0 || exchangeRandom.nextDouble() < Math.exp(delta)) {
+                        replicas.get(i).exchangeWith(replicas.get(i + 1));
+                        exchangeAccepted++;
+                    }
+                }
+
+                // 4. 公開各副本的最佳解，並檢查是否符合提前結束的條件
+                double roundBest = bestCost;
+                for (int i = 0; i < replicaCount; i++) {
+                    AnnealingChain replica = replicas.get(i);
+                    replica.publishBest();
+                    replica.reportLevel(ladder[i]);
+                    roundBest = Math.min(roundBest, replica.getBestSchedule().getCost());
+                }
+                stalledRounds = roundBest < bestCost ? 0 : stalledRounds + 1;
+                bestCost = roundBest;
+                for (AnnealingChain replica : replicas) {
+                    AnnealingChain.StopReason earlyStop = replica.checkEarlyStop(stalledRounds);
+                    if (earlyStop != null) {
+                        reason = earlyStop;
+                        if (verbose) {
+                            System.out.printf("提前結束於第 %d 回合：%s\n", round + 1, earlyStop.getLabel());
+                        }
+                        break;
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("排程執行被中斷", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("平行回火副本執行失敗", e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+
+        // 5. 取所有副本中的最佳解
+        stats.clear();
+        CompactSchedule bestSchedule = null;
+        for (int i = 0; i < replicaCount; i++) {
+            AnnealingChain replica = replicas.get(i);
+            replica.finish(ladder[i], reason);
+            stats.add(replica.getStats());
+            if (bestSchedule == null || replica.getBestSchedule().getCost() < bestSchedule.getCost()) {
+                bestSchedule = replica.getBestSchedule();
+            }
+        }
+        if (verbose) {
+            System.out.printf("副本交換接受率: %.2f%% (%d / %d)\n",
+                    exchangeAttempts > 0 ? (double) exchangeAccepted / exchangeAttempts * 100 : 0,
+                    exchangeAccepted, exchangeAttempts);
+        }
+        return bestSchedule;
+    }
+
+    @Override
+    public void setInitialAcceptance(int percent) {
+        this.initialAcceptance = percent;
+    }
+
+    @Override
+    public List<AnnealingChain.Stats> getStats() {
+        return Collections.unmodifiableList(stats);
+    }
+
+    @Override
+    public CompactSchedule getCurrentBest() {
+        return AnnealingChain.bestPublished(activeReplicas);
+    }
+
+    @Override
+    public String getName() {
+        return "pt";
+    }
+
+    /**
+     * 建立由高到低的等比溫度梯度
+     * * @param high 最高溫度
+     *
+     * @param low   最低溫度
+     * @param count 副本數
+     * @return 溫度梯度
+     */
+    private static double[] buildLadder(double high, double low, int count) {
+        double[] ladder = new double[count];
+        double ratio = Math.pow(low / high, 1.0 / (count - 1));
+        for (int i = 0; i < count; i++) {
+            ladder[i] = high * Math.pow(ratio, i);
+        }
+        return ladder;
+    }
+}
@@ -0,0 +1,155 @@
+import java.util.*;
+
+/**
+ * 滾動式多日排程的暖啟動模型
+ * 記錄最近 horizon 天最佳排程中，各科別分配到各手術房的手術時間 (分鐘)，作為科別與手術房的親和度；
+ * 下一天的初始解依此親和度把手術分配到該科別常用的手術房，而不是從輪流分配開始。
+ * 超出視窗的舊資料會從累計值中扣除，因此親和度只反映最近幾天的分配模式。
+ */
+public class RoomAffinity {
+    private final int horizon;
+    /** 視窗內每一天的 科別 -> 手術房 -> 手術時間 (依時間先後) */
+    private final Deque<Map<String, Map<String, Long>>> days = new ArrayDeque<>();
+    /** 視窗內所有天的累計值 */
+    private final Map<String, Map<String, Long>> totals = new HashMap<>();
+
+    /**
+     * 建構子
+     * * @param horizon 納入親和度的最近天數 (至少 1)
+     */
+    public RoomAffinity(int horizon) {
+        this.horizon = Math.max(1, horizon);
+    }
+
+    public boolean isEmpty() {
+        return days.isEmpty();
+    }
+
+    /**
+     * 將一天的最佳排程加入視窗，超出 horizon 天時移除最舊的一天
+     * * @param schedule 當天的最佳排程
+     */
+    public void record(Schedule schedule) {
+        Map<String, Map<String, Long>> day = new HashMap<>();
+        for (Map.Entry<String, LinkedList<SurgeryNode>> entry : schedule.getRoomSchedules().entrySet()) {
+            for (SurgeryNode node : entry.getValue()) {
+                if (node.getDepartment() != null) {
+                    day.computeIfAbsent(node.getDepartment(), k -> new HashMap<>())
+                            .merge(entry.getKey(), (long) node.getSurgeryTime(), Long::sum);
+                }
+            }
+        }
+        days.addLast(day);
+        add(day, 1);
+        if (days.size() > horizon) {
+            add(days.removeFirst(), -1);
+        }
+    }
+
+    /**
+     * 依親和度建立初始排程
+     * 每檯手術 (需要特殊手術房者只考慮特殊房) 分配到增加成本最少的手術房：成本與 {@link CostEvaluator} 相同計入加班、超時與醫師衝突，
+     * 並以超出平均負載的分鐘數近似平衡成本；增加的成本相同時 (通常是都在平均負載以內且沒有衝突) 選擇科別親和度最高、再來是使用時間最短的房間。
+     * * @param nodes 待排程的手術節點
+     *
+     * @param dataManager 資料管理器 (手術房與參數)
+     * @return 初始排程
+     */
+    public Schedule initialSchedule(List<SurgeryNode> nodes, DataManager dataManager) {
+        Map<String, Integer> args = dataManager.getArguments();
+        int maxRegularTime = args.getOrDefault("maxRegularTime", 540);
+        int maxOvertime = args.getOrDefault("maxOvertime", 120);
+        int transitionTime = args.getOrDefault("transitionTime", 45);
+        int conflictWeight = Math.max(0, args.getOrDefault("surgeonConflictWeight", 0));
+
+        List<String> allRooms = new ArrayList<>(dataManager.getAllRooms());
+        List<String> specialRooms = new ArrayList<>(dataManager.getSpecialRooms());
+        specialRooms.retainAll(dataManager.getAllRooms());
+        Map<String, LinkedList<SurgeryNode>> roomSchedules = new HashMap<>();
+        Map<String, Integer> usage = new HashMap<>();
+        for (String room : allRooms) {
+            roomSchedules.put(room, new LinkedList<>());
+            usage.put(room, 0);
+        }
+
+        // 平均負載：所有手術時間與銜接時間平均分配到每個房間時的使用時間
+        long totalTime = 0;
+        for (SurgeryNode node : nodes) {
+            totalTime += node.getSurgeryTime() + transitionTime;
+        }
+        int capacity = (int) (Math.max(0, totalTime - (long) allRooms.size() * transitionTime)
+                / Math.max(1, allRooms.size()));
+        // 主刀醫師 -> 已分配手術的時間區間 (自排程開始起算，開始與結束時間交錯存放)
+        Map<String, List<Integer>> surgeonIntervals = new HashMap<>();
+
+        for (SurgeryNode node : nodes) {
+            boolean special = "Y".equalsIgnoreCase(node.getSpecialRoomRequirement()) && !specialRooms.isEmpty();
+            List<String> candidates = special ? specialRooms : allRooms;
+            Map<String, Long> affinity = node.getDepartment() != null
+                    ? totals.getOrDefault(node.getDepartment(), Collections.emptyMap())
+                    : Collections.<String, Long>emptyMap();
+            List<Integer> intervals = node.getSurgeon() != null && conflictWeight > 0
+                    ? surgeonIntervals.computeIfAbsent(node.getSurgeon(), k -> new ArrayList<>())
+                    : new ArrayList<>();
+
+            String chosen = null;
+            long chosenCost = 0;
+            long chosenAffinity = 0;
+            int chosenUsage = 0;
+            for (String room : candidates) {
+                int current = usage.get(room);
+                int start = current == 0 ? 0 : current + transitionTime;
+                int after = start + node.getSurgeryTime();
+                long cost = excess(current, after, capacity) + excess(current, after, maxRegularTime)
+                        + 2L * excess(current, after, maxRegularTime + maxOvertime)
+                        + (long) conflictWeight * overlapWith(intervals, start, after);
+                long weight = affinity.getOrDefault(room, 0L);
+                if (chosen == null || cost < chosenCost || cost == chosenCost
+                        && (weight > chosenAffinity || weight == chosenAffinity && current < chosenUsage)) {
+                    chosen = room;
+                    chosenCost = cost;
+                    chosenAffinity = weight;
+                    chosenUsage = current;
+                }
+            }
+            int start = chosenUsage == 0 ? 0 : chosenUsage + transitionTime;
+            usage.put(chosen, start + node.getSurgeryTime());
+            roomSchedules.get(chosen).add(node);
+            intervals.add(start);
+            intervals.add(start + node.getSurgeryTime());
+        }
+        return new Schedule(roomSchedules);
+    }
+
+    // 使用時間由 before 增加到 after 時，超出 limit 的分鐘數增加量
+    private static int excess(int before, int after, int limit) {
+        return Math.max(0, after - limit) - Math.max(0, before - limit);
+    }
+
+    // 時間區間與同一醫師已分配手術的重疊分鐘數
+    private static int overlapWith(List<Integer> intervals, int start, int end) {
+        int overlap = 0;
+        for (int i = 0; i < intervals.size(); i += 2) {
+            overlap += Math.max(0, Math.min(end, intervals.get(i + 1)) - Math.max(start, intervals.get(i)));
+        }
+        return overlap;
+    }
+
+    // 將一天的資料加入 (sign = 1) 或移出 (sign = -1) 累計值
+    private void add(Map<String, Map<String, Long>> day, int sign) {
+        for (Map.Entry<String, Map<String, Long>> department : day.entrySet()) {
+            Map<String, Long> rooms = totals.computeIfAbsent(department.getKey(), k -> new HashMap<>());
+            for (Map.Entry<String, Long> room : department.getValue().entrySet()) {
+                long value = rooms.getOrDefault(room.getKey(), 0L) + sign * room.getValue();
+                if (value == 0) {
+                    rooms.remove(room.getKey());
+                } else {
+                    rooms.put(room.getKey(), value);
+                }
+            }
+            if (rooms.isEmpty()) {
+                totals.remove(department.getKey());
+            }
+        }
+    }
+}
@@ -11,18 +11,43 @@ public class ScheduleMetrics {
     public final long totalRegularOvertime;
     public final long totalOvertime;
     public final boolean isSpecialRoomRequirementMet;
+    /** 同一主刀醫師的手術時間重疊的總分鐘數 (每一對重疊的手術計算一次) */
+    public final long totalSurgeonConflict;
     public final Map<String, RoomMetrics> roomMetrics;
+    /** 手術申請單號 -> 實際開始與結束時間 (讀取自 CompactSchedule 的增量時間軸) */
+    public final Map<String, SurgeryTiming> surgeryTimings;
 
     // 內部類別，儲存單一手術房的指標
     public static class RoomMetrics {
         public final int usageTime;
         public final int regularOvertime;
         public final int overtime;
+        /** 最後一檯手術的結束時間 (分鐘)；沒有手術時為 startTime */
+        public final int endTime;
 
-        public RoomMetrics(int usageTime, int regularOvertime, int overtime) {
+        public RoomMetrics(int usageTime, int regularOvertime, int overtime, int endTime) {
             this.usageTime = usageTime;
             this.regularOvertime = regularOvertime;
             this.overtime = overtime;
+            this.endTime = endTime;
+        }
+    }
+
+    // 內部類別，儲存單一手術的時間軸
+    public static class SurgeryTiming {
+        public final String room;
+        /** 在房間中的順序 (由 0 開始) */
+        public final int order;
+        /** 開始時間 (自午夜起算的分鐘) */
+        public final int startTime;
+        /** 結束時間 (自午夜起算的分鐘，不含之後的銜接時間) */
+        public final int endTime;
+
+        public SurgeryTiming(String room, int order, int startTime, int endTime) {
+            this.room = room;
+            this.order = order;
+            this.startTime = startTime;
+            this.endTime = endTime;
         }
     }
 
@@ -31,10 +56,22 @@ public class ScheduleMetrics {
         Set<String> specialRooms = dataManager.getSpecialRooms();
         Map<String, Integer> args = dataManager.getArguments();
 
+        int startTime = args.getOrDefault("startTime", 510);
         int maxRegularTime = args.getOrDefault("maxRegularTime", 540);
         int maxOvertime = args.getOrDefault("maxOvertime", 120);
         int transitionTime = args.getOrDefault("transitionTime", 45);
 
+        // 開始與結束時間直接讀取 CompactSchedule 增量維護的時間軸，與輸出檔及成本評估使用同一份計算
+        List<String> rooms = new ArrayList<>(dataManager.getAllRooms());
+        List<SurgeryNode> nodes = new ArrayList<>();
+        for (String room : rooms) {
+            List<SurgeryNode> surgeries = roomSchedules.get(room);
+            if (surgeries != null) {
+                nodes.addAll(surgeries);
+            }
+        }
+        CompactSchedule compact = CompactSchedule.fromSchedule(schedule, rooms, nodes, startTime, transitionTime);
+
         long tempTotalSurgeryTime = 0;
         long tempTotalTransitionTime = 0;
         long tempTotalRegularOvertime = 0;
@@ -42,24 +79,25 @@ public class ScheduleMetrics {
         boolean specialMet = true;
 
         this.roomMetrics = new TreeMap<>(); // 使用 TreeMap 自動排序手術房名稱
+        this.surgeryTimings = new LinkedHashMap<>();
 
-        for (String room : dataManager.getAllRooms()) {
-            int roomSurgeryTime = 0;
-            int roomTransitionTime = 0;
-
-            List<SurgeryNode> surgeries = roomSchedules.get(room);
-            if (surgeries != null && !surgeries.isEmpty()) {
-                for (SurgeryNode surgery : surgeries) {
-                    roomSurgeryTime += surgery.getSurgeryTime();
-                    // 檢查特殊手術房需求
-                    if ("Y".equalsIgnoreCase(surgery.getSpecialRoomRequirement()) && !specialRooms.contains(room)) {
-                        specialMet = false;
-                    }
+        for (int r = 0; r < rooms.size(); r++) {
+            String room = rooms.get(r);
+            int count = compact.length(r);
+            for (int i = 0; i < count; i++) {
+                SurgeryNode surgery = compact.getSurgery(compact.get(r, i));
+                surgeryTimings.put(surgery.getApplicationId(),
+                        new SurgeryTiming(room, i, compact.startOf(r, i), compact.endOf(r, i)));
+                // 檢查特殊手術房需求
+                if ("Y".equalsIgnoreCase(surgery.getSpecialRoomRequirement()) && !specialRooms.contains(room)) {
+                    specialMet = false;
                 }
-                roomTransitionTime = (surgeries.size() - 1) * transitionTime;
             }
 
-            int roomUsageTime = roomSurgeryTime + roomTransitionTime;
+            int roomEndTime = compact.roomEndTime(r);
+            int roomUsageTime = roomEndTime - startTime;
+            int roomSurgeryTime = compact.roomSurgeryTime(r);
+            int roomTransitionTime = roomUsageTime - roomSurgeryTime;
             int regularOvertime = Math.max(0, roomUsageTime - maxRegularTime);
             int overtime = Math.max(0, roomUsageTime - (maxRegularTime + maxOvertime));
 
@@ -68,7 +106,7 @@ public class ScheduleMetrics {
             tempTotalRegularOvertime += regularOvertime;
             tempTotalOvertime += overtime;
 
-            this.roomMetrics.put(room, new RoomMetrics(roomUsageTime, regularOvertime, overtime));
+            this.roomMetrics.put(room, new RoomMetrics(roomUsageTime, regularOvertime, overtime, roomEndTime));
         }
 
         this.totalSurgeryTime = tempTotalSurgeryTime;
@@ -77,6 +115,10 @@ public class ScheduleMetrics {
         this.totalRegularOvertime = tempTotalRegularOvertime;
         this.totalOvertime = tempTotalOvertime;
         this.isSpecialRoomRequirementMet = specialMet;
+
+        // 醫師衝突沿用成本評估的衝突索引，由同一份時間軸載入
+        SurgeonConflictIndex conflictIndex = SurgeonConflictIndex.build(compact);
+        this.totalSurgeonConflict = conflictIndex == null ? 0 : conflictIndex.reset(compact);
         this.cost = schedule.getCost();
     }
 }
\ No newline at end of file
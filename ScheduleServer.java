@@ -0,0 +1,287 @@
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * 常駐的排程服務：以 stdin/stdout 的 JSON lines 接收排程請求並回傳結果
+ * 同一個 JVM 處理所有請求，退火熱迴圈在前幾個請求後即完成 JIT 編譯，之後的請求不需重新啟動 JVM、讀取檔案或寫出 out/ 與 log/；
+ * 未指定手術房的請求共用啟動時讀入的 room.csv (唯讀)，參數以 Arguments4Exec.csv 為基礎並可逐請求覆寫。
+ *
+ * 請求在固定大小的執行緒池上執行，等待中的請求數有上限；佇列已滿時讀取端暫停讀取 stdin，
+ * 由管線本身對送出請求的一方形成背壓，不會無限制地累積請求。回應依完成順序輸出，以請求的 id 對應。
+ *
+ * 請求 (一行一個 JSON 物件)：
+ * <pre>
+ * {"id": "r1", "engine": "sa", "arguments": {"seed": 7, "chains": 1},
+ *  "rooms": ["A1", "A2"], "specialRooms": ["A2"],
+ *  "surgeries": [{"id": "38440091", "room": "A11", "time": 60, "special": "N", "department": "ORTH", "surgeon": "林"}]}
+ * </pre>
+ * 回應：{"id", "status": "ok", "seed", "queuedMillis", "elapsedMillis", "initial", "best", "schedule"}，
+ * 失敗時為 {"id", "status": "error", "message"}。
+ */
+public class ScheduleServer {
+    private final DataManager sharedData;
+    private final String defaultEngine;
+    private final int workers;
+    private final int queueCapacity;
+    private final Writer out;
+
+    /**
+     * 建構子
+     * * @param sharedData 已讀取 room.csv 與 Arguments4Exec.csv 的 DataManager (所有請求共用)
+     *
+     * @param defaultEngine 請求未指定 engine 時使用的搜尋引擎
+     * @param workers       同時執行的請求數
+     * @param queueCapacity 等待執行的請求數上限
+     * @param out           回應的輸出串流
+     */
+    public ScheduleServer(DataManager sharedData, String defaultEngine, int workers, int queueCapacity,
+            OutputStream out) {
+        this.sharedData = sharedData;
+        this.defaultEngine = defaultEngine;
+        this.workers = Math.max(1, workers);
+        this.queueCapacity = Math.max(0, queueCapacity);
+        this.out = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), 65536);
+    }
+
+    /**
+     * 逐行讀取請求直到輸入結束，並等待所有已接受的請求完成
+     * * @param in 請求的輸入串流
+     *
+     * @throws IOException 讀取或寫出錯誤
+     */
+    public void serve(InputStream in) throws IOException {
+        // 執行中與等待中的請求合計不超過 workers + queueCapacity，超過時 acquire 會暫停讀取
+        Semaphore slots = new Semaphore(workers + queueCapacity);
+        ExecutorService executor = Executors.newFixedThreadPool(workers);
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.trim().isEmpty()) {
+                    continue;
+                }
+                slots.acquire();
+                long receivedNanos = System.nanoTime();
+                String request = line;
+                executor.execute(() -> {
+                    try {
+                        // handle 已將錯誤轉為回應；此處是最後的保護，確保每個已接受的請求都恰好有一行回應
+                        String response;
+                        try {
+                            response = handle(request, receivedNanos);
+                        } catch (Throwable e) {
+                            System.err.println("警告：處理請求時發生錯誤：" + e);
+                            response = errorResponse(null, e);
+                        }
+                        respond(response);
+                    } finally {
+                        slots.release();
+                    }
+                });
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("排程服務被中斷", e);
+        } finally {
+            executor.shutdown();
+            try {
+                executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            synchronized (out) {
+                out.flush();
+            }
+        }
+    }
+
+    /**
+     * 處理單一請求 (任何錯誤都轉換為錯誤回應，不影響其他請求)
+     * * @param line         請求的 JSON 文字
+     *
+     * @param receivedNanos 讀入請求的時間 (計算排隊時間用)
+     * @return 回應的 JSON 文字 (單行)
+     */
+    String handle(String line, long receivedNanos) {
+        Object id = null;
+        try {
+            Object parsed = Json.parse(line);
+            if (!(parsed instanceof Map)) {
+                throw new IllegalArgumentException("請求必須是 JSON 物件");
+            }
+            Map<?, ?> request = (Map<?, ?>) parsed;
+            id = request.get("id");
+            long startNanos = System.nanoTime();
+            DataManager dataManager = prepare(request);
+            String engineName = request.containsKey("engine") ? text(request.get("engine"), "engine") : defaultEngine;
+            Scheduler scheduler = new Scheduler(dataManager, engineName);
+            Map<String, Schedule> results = scheduler.schedule();
+
+            ScheduleMetrics initial = new ScheduleMetrics(results.get("initial"), dataManager);
+            ScheduleMetrics best = new ScheduleMetrics(results.get("best"), dataManager);
+            long endNanos = System.nanoTime();
+
+            StringBuilder response = new StringBuilder(256 + 96 * dataManager.getSurgeryNodes().size());
+            appendId(response.append("{\"id\":"), id);
+            response.append(",\"status\":\"ok\",\"seed\":").append(scheduler.getSeed())
+                    .append(",\"queuedMillis\":").append((startNanos - receivedNanos) / 1_000_000)
+                    .append(",\"elapsedMillis\":").append((endNanos - startNanos) / 1_000_000);
+            appendMetrics(response.append(",\"initial\":"), initial);
+            appendMetrics(response.append(",\"best\":"), best);
+            response.append(",\"schedule\":[");
+            boolean first = true;
+            for (SurgeryNode node : dataManager.getSurgeryNodes()) {
+                ScheduleMetrics.SurgeryTiming timing = best.surgeryTimings.get(node.getApplicationId());
+                if (timing == null) {
+                    throw new IllegalStateException("手術未排入任何手術房：" + node.getApplicationId());
+                }
+                if (!first) {
+                    response.append(',');
+                }
+                first = false;
+                Json.quote(response.append("{\"id\":"), node.getApplicationId());
+                Json.quote(response.append(",\"room\":"), timing.room);
+                response.append(",\"order\":").append(timing.order)
+                        .append(",\"start\":").append(timing.startTime)
+                        .append(",\"end\":").append(timing.endTime).append('}');
+            }
+            return response.append("]}").toString();
+        } catch (RuntimeException | Error e) {
+            return errorResponse(id, e);
+        }
+    }
+
+    // 錯誤回應：{"id":…,"status":"error","message":…}
+    private static String errorResponse(Object id, Throwable e) {
+        StringBuilder response = new StringBuilder(128);
+        appendId(response.append("{\"id\":"), id);
+        response.append(",\"status\":\"error\",\"message\":");
+        return Json.quote(response, e.getMessage() != null ? e.getMessage() : e.toString()).append('}').toString();
+    }
+
+    /**
+     * 依請求建立此次排程專用的 DataManager
+     * 未指定 rooms 時共用啟動時讀入的手術房 (唯讀)；arguments 中的數值覆寫 Arguments4Exec.csv 的設定
+     * * @param request 解析後的請求
+     *
+     * @return 已載入手術資料的 DataManager
+     */
+    private DataManager prepare(Map<?, ?> request) {
+        DataManager dataManager;
+        if (request.containsKey("rooms")) {
+            dataManager = new DataManager();
+            dataManager.getArguments().putAll(sharedData.getArguments());
+            dataManager.getAllRooms().addAll(textList(request.get("rooms"), "rooms"));
+            if (request.containsKey("specialRooms")) {
+                dataManager.getSpecialRooms().addAll(textList(request.get("specialRooms"), "specialRooms"));
+            }
+        } else {
+            dataManager = new DataManager(sharedData);
+        }
+        if (dataManager.getAllRooms().isEmpty()) {
+            throw new IllegalArgumentException("沒有可用的手術房");
+        }
+        if (!dataManager.getAllRooms().stream().anyMatch(room -> !dataManager.getSpecialRooms().contains(room))) {
+            throw new IllegalArgumentException("至少需要一間一般手術房");
+        }
+
+        Map<String, Integer> args = dataManager.getArguments();
+        if (request.get("arguments") instanceof Map) {
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) request.get("arguments")).entrySet()) {
+                if (!(entry.getValue() instanceof Long)) {
+                    throw new IllegalArgumentException("參數必須是整數：" + entry.getKey());
+                }
+                args.put(String.valueOf(entry.getKey()), Math.toIntExact((Long) entry.getValue()));
+            }
+        } else if (request.containsKey("arguments")) {
+            throw new IllegalArgumentException("arguments 必須是 JSON 物件");
+        }
+        // 進度輸出會混入 stdout 的回應，服務模式一律關閉；遙測檔案與 MBean 也不適用於逐請求的排程
+        args.put("verbose", 0);
+        args.put("telemetry", 0);
+        args.put("jmx", 0);
+
+        if (!(request.get("surgeries") instanceof List) || ((List<?>) request.get("surgeries")).isEmpty()) {
+            throw new IllegalArgumentException("surgeries 必須是非空的陣列");
+        }
+        // 沒有可用的特殊手術房時，初始解無法安排需要特殊手術房的手術
+        boolean hasSpecialRoom = dataManager.getAllRooms().stream()
+                .anyMatch(room -> dataManager.getSpecialRooms().contains(room));
+        Set<String> ids = new HashSet<>();
+        for (Object item : (List<?>) request.get("surgeries")) {
+            if (!(item instanceof Map)) {
+                throw new IllegalArgumentException("surgeries 的元素必須是 JSON 物件");
+            }
+            Map<?, ?> surgery = (Map<?, ?>) item;
+            String applicationId = text(surgery.get("id"), "id");
+            if (!ids.add(applicationId)) {
+                throw new IllegalArgumentException("重複的手術 id：" + applicationId);
+            }
+            Object time = surgery.get("time");
+            if (!(time instanceof Long) || (Long) time <= 0 || (Long) time > Integer.MAX_VALUE) {
+                throw new IllegalArgumentException("手術時間必須是正整數：" + applicationId);
+            }
+            String special = surgery.containsKey("special") ? text(surgery.get("special"), "special") : "N";
+            if ("Y".equalsIgnoreCase(special) && !hasSpecialRoom) {
+                throw new IllegalArgumentException("手術需要特殊手術房 (special=Y)，但 rooms 中沒有 specialRooms 指定的特殊手術房：" + applicationId);
+            }
+            dataManager.getSurgeryNodes().add(new SurgeryNode(applicationId,
+                    optionalText(surgery.get("room")), (int) (long) (Long) time, special,
+                    optionalText(surgery.get("department")), optionalText(surgery.get("surgeon"))));
+        }
+        return dataManager;
+    }
+
+    // 以單行輸出一個回應 (多個執行緒共用同一個輸出，逐行寫出並立即送出)
+    private void respond(String response) {
+        synchronized (out) {
+            try {
+                out.write(response);
+                out.write('\n');
+                out.flush();
+            } catch (IOException e) {
+                System.err.println("警告：無法寫出回應：" + e.getMessage());
+            }
+        }
+    }
+
+    private static void appendMetrics(StringBuilder out, ScheduleMetrics metrics) {
+        out.append("{\"cost\":").append(String.format(Locale.ROOT, "%.2f", metrics.cost))
+                .append(",\"regularOvertime\":").append(metrics.totalRegularOvertime)
+                .append(",\"overtime\":").append(metrics.totalOvertime)
+                .append(",\"surgeonConflict\":").append(metrics.totalSurgeonConflict)
+                .append(",\"specialRoomsMet\":").append(metrics.isSpecialRoomRequirementMet).append('}');
+    }
+
+    // 原樣回傳請求的 id (字串或數字)，沒有 id 時為 null
+    private static void appendId(StringBuilder out, Object id) {
+        if (id instanceof Number || id instanceof Boolean) {
+            out.append(id);
+        } else {
+            Json.quote(out, id != null ? id.toString() : null);
+        }
+    }
+
+    private static String text(Object value, String name) {
+        if (!(value instanceof String) || ((String) value).isEmpty()) {
+            throw new IllegalArgumentException(name + " 必須是非空字串");
+        }
+        return (String) value;
+    }
+
+    private static String optionalText(Object value) {
+        return value == null ? null : value.toString();
+    }
+
+    private static List<String> textList(Object value, String name) {
+        if (!(value instanceof List)) {
+            throw new IllegalArgumentException(name + " 必須是字串陣列");
+        }
+        List<String> list = new ArrayList<>();
+        for (Object item : (List<?>) value) {
+            list.add(text(item, name));
+        }
+        return list;
+    }
+}
@@ -1,8 +1,29 @@
+import java.io.IOException;
+import java.nio.file.*;
+import java.text.SimpleDateFormat;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class Scheduler {
     private final DataManager dataManager;
-    private final Random random = new Random();
+    /** 所有手術房名稱，其順序即為 CompactSchedule 的房間編號 */
+    private final List<String> roomNames;
+    /** 房間編號 -> 是否為特殊手術房 */
+    private final boolean[] specialRoomFlags;
+    /** 實際執行搜尋的引擎 (多起點模擬退火、平行回火或分支定界) */
+    private final SchedulingEngine engine;
+    /** 是否印出排程進度 (批次模式下關閉) */
+    private final boolean verbose;
+    /** 本次排程的亂數種子，所有退火鏈的亂數流皆由此種子分裂而來 */
+    private final int seed;
+    /** 搜尋遙測 (以 telemetry=1 寫出 JSONL、jmx=1 註冊 MBean)，兩者皆未啟用時為 null */
+    private final SearchTelemetry telemetry;
+    /** 滾動式多日排程的暖啟動模型 (前幾天的科別與手術房親和度)，未設定時為 null */
+    private RoomAffinity warmStart;
+    /** 最近一次排程是否採用了暖啟動的初始解 */
+    private boolean warmStarted;
+    /** 最近一次排程的成本下界 (加班、超時與平衡成本)；尚未排程時為 0 */
+    private double costLowerBound;
 
     // --- 演算法參數定義 ---
     /** 排程開始時間 (分鐘) */
@@ -13,34 +34,75 @@ public class Scheduler {
     private final int maxOvertime;
     /** 手術之間的銜接時間 (分鐘) */
     private final int transitionTime;
-    /** 模擬退火: 初始接受率，用於動態計算初始溫度 */
-    private static final double INITIAL_ACCEPTANCE_RATE = 0.95;
-    /** 模擬退火: 終止溫度，當溫度降至此值時演算法結束 */
-    private static final double FINAL_TEMPERATURE = 0.01;
-    /** 模擬退火: 高溫階段的溫度門檻值 (正規化後) */
-    private static final double TH = 0.6;
-    /** 模擬退火: 低溫階段的溫度門檻值 (正規化後) */
-    private static final double TL = 0.2;
-    /** 模擬退火: 冷卻係數的調整因子 alpha */
-    private static final double ALPHA = 1.2;
-    /** 模擬退火: 迭代次數的調整因子 beta */
-    private static final double BETA = 1.5;
+    /** 採用暖啟動初始解時的預設初始接受率 (%)，可用 warmAcceptance 參數設定 */
+    private static final int DEFAULT_WARM_ACCEPTANCE = 50;
+    /** 局部修復的預設初始接受率 (%) 與總迭代數，可用 repairAcceptance、repairIterations 參數設定 */
+    private static final int DEFAULT_REPAIR_ACCEPTANCE = 1;
+    private static final int DEFAULT_REPAIR_ITERATIONS = 50000;
+    /** 貪婪初始解的區域改善最多掃描幾輪 */
+    private static final int MAX_IMPROVEMENT_PASSES = 20;
+    /** 採用貪婪初始解時的預設初始接受率 (%)，可用 greedyAcceptance 參數設定 */
+    private static final int DEFAULT_GREEDY_ACCEPTANCE = 20;
+    /** 本程序中已開始的遙測次數，用來區分同一秒、同一種子的多次排程 (例如批次模式的多個工作執行緒) */
+    private static final AtomicInteger TELEMETRY_RUNS = new AtomicInteger();
 
     /**
-     * 建構子，初始化排程器並從 DataManager 讀取所需參數
+     * 建構子，初始化排程器並從 DataManager 讀取所需參數 (使用多起點模擬退火引擎)
      * * @param dataManager 資料管理器實例
      */
     public Scheduler(DataManager dataManager) {
+        this(dataManager, "sa");
+    }
+
+    /**
+     * 建構子，初始化排程器並指定搜尋引擎
+     * * @param dataManager 資料管理器實例
+     * 
+     * @param engineName 搜尋引擎名稱："sa" (多起點模擬退火)、"pt" (平行回火) 或 "bb" (分支定界，證明不了最佳解時接續模擬退火)
+     */
+    public Scheduler(DataManager dataManager, String engineName) {
         this.dataManager = dataManager;
         Map<String, Integer> args = dataManager.getArguments();
         this.startTime = args.getOrDefault("startTime", 510);
         this.maxRegularTime = args.getOrDefault("maxRegularTime", 540);
         this.maxOvertime = args.getOrDefault("maxOvertime", 120);
         this.transitionTime = args.getOrDefault("transitionTime", 45);
+        this.roomNames = new ArrayList<>(dataManager.getAllRooms());
+        this.specialRoomFlags = new boolean[roomNames.size()];
+        for (int r = 0; r < roomNames.size(); r++) {
+            specialRoomFlags[r] = dataManager.getSpecialRooms().contains(roomNames.get(r));
+        }
+        this.verbose = args.getOrDefault("verbose", 1) != 0;
+        // 未指定種子時隨機產生一個 (不寫回共用的參數，以免之後的排程沿用)，由 getSeed() 記錄於報告、之後可用 --seed 重現
+        Integer configuredSeed = args.get("seed");
+        this.seed = configuredSeed != null ? configuredSeed : new SplittableRandom().nextInt();
+        boolean telemetryEnabled = args.getOrDefault("telemetry", 0) != 0 || args.getOrDefault("jmx", 0) != 0;
+        this.telemetry = telemetryEnabled ? new SearchTelemetry() : null;
+        this.engine = createEngine(engineName);
     }
 
     /**
-     * 執行模擬退火演算法進行手術排程
+     * 依名稱建立搜尋引擎
+     * * @param engineName 引擎名稱
+     * 
+     * @return 搜尋引擎
+     */
+    private SchedulingEngine createEngine(String engineName) {
+        switch (engineName) {
+            case "sa":
+                return new MultiStartAnnealingEngine(dataManager, specialRoomFlags, seed, telemetry);
+            case "pt":
+                return new ParallelTemperingEngine(dataManager, specialRoomFlags, seed, telemetry);
+            case "bb":
+                return new BranchAndBoundEngine(dataManager, specialRoomFlags, seed, telemetry);
+            default:
+                throw new IllegalArgumentException("未知的排程引擎：" + engineName);
+        }
+    }
+
+    /**
+     * 執行排程搜尋 (預設為模擬退火)
+     * 搜尋本身交由 {@link SchedulingEngine} 執行，此處負責建立初始解並將最佳解寫回 DataManager
      * * @return 一個包含 "initial" (初始解) 和 "best" (最佳解) 的 Map
      */
     public Map<String, Schedule> schedule() {
@@ -50,91 +112,315 @@ public class Scheduler {
             return Collections.emptyMap();
         }
 
-        System.out.println("開始執行模擬退火排程演算法...");
-
-        // 1. 產生初始排程解
-        Schedule initialSchedule = createInitialSchedule(surgeryNodes);
-        calculateCost(initialSchedule); // 計算初始解的成本
+        if (verbose) {
+            System.out.println("開始執行模擬退火排程演算法... (引擎: " + engine.getName() + "，亂數種子: " + seed + ")");
+        }
 
-        // 2. 初始化目前解與最佳解
-        Schedule bestSchedule = initialSchedule.copy();
-        Schedule currentSchedule = initialSchedule.copy();
+        // 1. 產生初始排程解，並轉換為緊湊表示法 (greedyInitial=1 時改用 LPT 貪婪建構加上區域改善)
+        Map<String, Integer> args = dataManager.getArguments();
+        boolean greedy = args.getOrDefault("greedyInitial", 0) != 0;
+        Schedule initialSchedule = greedy ? createGreedyInitialSchedule(surgeryNodes)
+                : createInitialSchedule(surgeryNodes);
+        CompactSchedule compactInitial = CompactSchedule.fromSchedule(initialSchedule, roomNames, surgeryNodes,
+                startTime, transitionTime);
+        CostEvaluator evaluator = new CostEvaluator(dataManager);
+        evaluator.reset(compactInitial); // 計算初始解的成本
+        costLowerBound = evaluator.getCostLowerBound();
+        int initialAcceptance = 0; // 0 表示依 initialAcceptance 參數
+        if (greedy) {
+            improveLocally(compactInitial, evaluator);
+            initialSchedule = compactInitial.toSchedule();
+            // 貪婪初始解已接近區域最佳，以較低的初始接受率從較低的溫度開始退火
+            initialAcceptance = args.getOrDefault("greedyAcceptance", DEFAULT_GREEDY_ACCEPTANCE);
+        }
+        initialSchedule.setCost(compactInitial.getCost());
+        if (verbose) {
+            System.out.printf("初始解成本: %.2f，成本下界: %.2f\n", compactInitial.getCost(), costLowerBound);
+        }
 
-        // 3. 根據初始接受率動態計算初始溫度
-        double initialTemperature = findInitialTemperature(currentSchedule);
-        double currentTemperature = initialTemperature;
-        System.out.println("計算出的初始溫度為: " + String.format("%.2f", initialTemperature));
+        // 有暖啟動模型時，改用依前幾天親和度建立的初始解 (成本較低時)，並以較低的初始接受率校準起始溫度
+        warmStarted = false;
+        if (warmStart != null && !warmStart.isEmpty()) {
+            Schedule warmSchedule = warmStart.initialSchedule(surgeryNodes, dataManager);
+            CompactSchedule compactWarm = CompactSchedule.fromSchedule(warmSchedule, roomNames, surgeryNodes,
+                    startTime, transitionTime);
+            new CostEvaluator(dataManager).reset(compactWarm);
+            if (compactWarm.getCost() < compactInitial.getCost()) {
+                warmSchedule.setCost(compactWarm.getCost());
+                initialSchedule = warmSchedule;
+                compactInitial = compactWarm;
+                warmStarted = true;
+                initialAcceptance = args.getOrDefault("warmAcceptance", DEFAULT_WARM_ACCEPTANCE);
+                if (verbose) {
+                    System.out.printf("採用暖啟動初始解 (成本 %.2f)\n", compactWarm.getCost());
+                }
+            }
+        }
 
-        // 4. 計算問題規模 n (手術數量 * 手術房數量)
-        int n = surgeryNodes.size() * dataManager.getAllRooms().size();
+        // 2. 執行搜尋引擎 (啟用遙測時同時輸出 JSONL 或註冊 MBean)
+        startTelemetry();
+        CompactSchedule bestSchedule;
+        try {
+            // 初始接受率直接交給引擎，不寫入 DataManager 的參數 (否則會殘留到之後在同一份 DataManager 上的 reoptimize)
+            engine.setInitialAcceptance(initialAcceptance);
+            bestSchedule = engine.search(compactInitial);
+            // 分支定界證明了最佳分配時，其成本 (不含醫師衝突) 即為更緊的成本下界
+            if (engine instanceof BranchAndBoundEngine) {
+                costLowerBound = Math.max(costLowerBound, ((BranchAndBoundEngine) engine).getProvenLowerBound());
+            }
+        } finally {
+            if (telemetry != null) {
+                telemetry.close();
+            }
+        }
 
-        // 新增：用於追蹤上一次的加班與超時時間
-        long lastRegularOvertime = -1;
-        long lastOvertime = -1;
+        if (verbose) {
+            System.out.println("\n排程完成。");
+        }
 
-        // 5. 模擬退火主要迴圈，直到溫度降至終止溫度
-        while (currentTemperature > FINAL_TEMPERATURE) {
-            // 根據問題規模計算在當前溫度下的迭代次數
-            int iterations = (int) Math.round(BETA * n);
+        // 3. 將最佳排程轉換回 Schedule，並更新回 DataManager 以便後續輸出
+        Schedule finalSchedule = bestSchedule.toSchedule();
+        updateDataManagerWithSchedule(bestSchedule);
 
-            for (int i = 0; i < iterations; i++) {
-                // 擾動目前解以產生一個鄰近解
-                Schedule neighborSchedule = perturbSchedule(currentSchedule, currentTemperature, initialTemperature);
-                calculateCost(neighborSchedule); // 計算鄰近解的成本
+        // 4. 將初始解與最佳解打包回傳
+        Map<String, Schedule> results = new HashMap<>();
+        results.put("initial", initialSchedule);
+        results.put("best", finalSchedule);
+        return results;
+    }
 
-                // 計算成本差異
-                double deltaE = neighborSchedule.getCost() - currentSchedule.getCost();
+    /**
+     * 當天手術有異動 (新增、取消或手術時間改變) 時，以先前的排程為基礎局部重新最佳化，不重新執行完整的排程
+     * 先移除取消的手術、以新的節點取代異動的手術 (保留原本的房間與順序；異動後不能再進入原房間者，例如改為需要特殊手術房，則與新增的手術一樣重新分配)，
+     * 再將新增的手術逐檯插入可進入的房間中使用時間最短者的最後；
+     * 之後只針對這些受影響的房間執行短時間的低溫退火 (見 {@link AnnealingChain#repair})，
+     * 迭代數由 repairIterations 參數決定 (預設 50000)，初始接受率由 repairAcceptance 參數決定 (預設 1%)。
+     * 完成後 DataManager 的手術清單與輸出皆更新為異動後的內容：新增的手術附加輸出記錄，異動的手術改寫記錄中的手術時間。
+     * * @param previous 先前的排程 (通常是上一次 {@link #schedule()} 或本方法回傳的 "best"，不會被修改)
+     *
+     * @param added      新增的手術
+     * @param removedIds 取消的手術申請單號
+     * @param changed    異動的手術 (以申請單號對應既有的手術，例如手術時間改變後的新節點)
+     * @return 一個包含 "initial" (局部修補後、退火前的排程) 和 "best" (最佳解) 的 Map
+     * @throws IllegalArgumentException 新增的手術已存在，或取消、異動的手術不存在
+     */
+    public Map<String, Schedule> reoptimize(Schedule previous, List<SurgeryNode> added, Collection<String> removedIds,
+            List<SurgeryNode> changed) {
+        // 1. 更新 DataManager 的手術清單
+        List<SurgeryNode> surgeryNodes = dataManager.getSurgeryNodes();
+        Map<String, SurgeryNode> current = new LinkedHashMap<>();
+        for (SurgeryNode node : surgeryNodes) {
+            current.put(node.getApplicationId(), node);
+        }
+        Set<String> affectedIds = new HashSet<>();
+        for (String id : new LinkedHashSet<>(removedIds)) {
+            if (current.remove(id) == null) {
+                throw new IllegalArgumentException("找不到要取消的手術：" + id);
+            }
+            affectedIds.add(id);
+        }
+        for (SurgeryNode node : changed) {
+            if (current.replace(node.getApplicationId(), node) == null) {
+                throw new IllegalArgumentException("找不到要異動的手術：" + node.getApplicationId());
+            }
+            affectedIds.add(node.getApplicationId());
+        }
+        for (SurgeryNode node : added) {
+            if (current.putIfAbsent(node.getApplicationId(), node) != null) {
+                throw new IllegalArgumentException("手術已存在：" + node.getApplicationId());
+            }
+        }
+        surgeryNodes.clear();
+        surgeryNodes.addAll(current.values());
+        dataManager.updateTimetableRows(added, removedIds, changed);
 
-                // Metropolis 接受準則：
-                // 如果鄰近解更好 (deltaE < 0)，則直接接受
-                // 如果鄰近解較差，則以一定機率接受，避免陷入局部最佳解
-                if (deltaE < 0 || random.nextDouble() < Math.exp(-deltaE / currentTemperature)) {
-                    currentSchedule = neighborSchedule;
-                    // 如果目前解優於歷史最佳解，則更新最佳解
-                    if (currentSchedule.getCost() < bestSchedule.getCost()) {
-                        bestSchedule = currentSchedule.copy();
+        // 2. 以申請單號對應回目前的節點，保留先前的房間與順序 (異動後不能進入原房間的手術除外)，並記錄有手術取消或異動的房間
+        Map<String, LinkedList<SurgeryNode>> roomSchedules = new HashMap<>();
+        Map<String, Integer> usage = new HashMap<>();
+        Set<String> placed = new HashSet<>();
+        Set<String> affectedRooms = new HashSet<>();
+        for (int r = 0; r < roomNames.size(); r++) {
+            String room = roomNames.get(r);
+            LinkedList<SurgeryNode> list = new LinkedList<>();
+            List<SurgeryNode> previousList = previous.getRoomSchedules().get(room);
+            if (previousList != null) {
+                for (SurgeryNode node : previousList) {
+                    SurgeryNode updated = current.get(node.getApplicationId());
+                    if (affectedIds.contains(node.getApplicationId())) {
+                        affectedRooms.add(room);
+                    }
+                    if (updated != null && canEnter(updated, r) && placed.add(updated.getApplicationId())) {
+                        list.add(updated);
                     }
                 }
             }
+            roomSchedules.put(room, list);
+            usage.put(room, usageOf(list));
+        }
 
-            // 新增：計算當前最佳解的指標
-            ScheduleMetrics currentBestMetrics = new ScheduleMetrics(bestSchedule, dataManager);
-            long currentRegularOvertime = currentBestMetrics.totalRegularOvertime;
-            long currentOvertime = currentBestMetrics.totalOvertime;
-
-            // 新增：如果不是第一次，就計算改善率並印出
-            if (lastRegularOvertime != -1) {
-                double regularOvertimeReduction = lastRegularOvertime > 0
-                        ? (1 - (double) currentRegularOvertime / lastRegularOvertime) * 100
-                        : 0;
-                double overtimeReduction = lastOvertime > 0 ? (1 - (double) currentOvertime / lastOvertime) * 100 : 0;
-
-                System.out.printf("溫度: %.2f -> 加班時間: %d (下降 %.2f%%), 超時時間: %d (下降 %.2f%%)\n",
-                        currentTemperature, currentRegularOvertime, regularOvertimeReduction,
-                        currentOvertime, overtimeReduction);
-            } else {
-                System.out.printf("溫度: %.2f -> 初始加班時間: %d, 初始超時時間: %d\n",
-                        currentTemperature, currentRegularOvertime, currentOvertime);
+        // 3. 新增 (或先前排程中沒有、不能留在原房間) 的手術插入可進入的房間中使用時間最短者
+        for (SurgeryNode node : surgeryNodes) {
+            if (!placed.contains(node.getApplicationId())) {
+                String room = leastLoadedRoom(node, usage);
+                roomSchedules.get(room).add(node);
+                usage.put(room, usageOf(roomSchedules.get(room)));
+                affectedRooms.add(room);
+            }
+        }
+        Schedule repairedSchedule = new Schedule(roomSchedules);
+        CompactSchedule compactRepaired = CompactSchedule.fromSchedule(repairedSchedule, roomNames, surgeryNodes,
+                startTime, transitionTime);
+        CostEvaluator evaluator = new CostEvaluator(dataManager);
+        evaluator.reset(compactRepaired);
+        costLowerBound = evaluator.getCostLowerBound(); // 下界依異動後的手術重新計算
+        repairedSchedule.setCost(compactRepaired.getCost());
+
+        // 4. 只針對受影響的房間執行短時間的低溫退火
+        CompactSchedule bestSchedule = compactRepaired;
+        if (!affectedRooms.isEmpty() && !surgeryNodes.isEmpty()) {
+            int[] rooms = new int[affectedRooms.size()];
+            int count = 0;
+            for (int r = 0; r < roomNames.size(); r++) {
+                if (affectedRooms.contains(roomNames.get(r))) {
+                    rooms[count++] = r;
+                }
             }
+            Map<String, Integer> args = dataManager.getArguments();
+            AnnealingChain chain = new AnnealingChain(0, dataManager, specialRoomFlags,
+                    new SplittableRandom(seed).split(), false);
+            chain.setInitialAcceptance(args.getOrDefault("repairAcceptance", DEFAULT_REPAIR_ACCEPTANCE));
+            bestSchedule = chain.repair(compactRepaired, rooms,
+                    Math.max(1, args.getOrDefault("repairIterations", DEFAULT_REPAIR_ITERATIONS)));
+        }
 
-            // 更新上一次的加班與超時時間
-            lastRegularOvertime = currentRegularOvertime;
-            lastOvertime = currentOvertime;
+        Schedule finalSchedule = bestSchedule.toSchedule();
+        updateDataManagerWithSchedule(bestSchedule);
+        // 每檯手術都必須有一筆輸出記錄，否則新增或取消的手術沒有正確反映在 OutTimeTable 中
+        if (dataManager.getOutputRowCount() != surgeryNodes.size()) {
+            throw new IllegalStateException("輸出記錄數 " + dataManager.getOutputRowCount() + " 與手術數 "
+                    + surgeryNodes.size() + " 不符");
+        }
+        Map<String, Schedule> results = new HashMap<>();
+        results.put("initial", repairedSchedule);
+        results.put("best", finalSchedule);
+        return results;
+    }
 
-            // 根據冷卻策略降低溫度
-            currentTemperature *= calculateCoolingRate(n);
+    // 房間的使用時間 (手術時間加上手術之間的銜接時間)
+    private int usageOf(List<SurgeryNode> list) {
+        int usage = 0;
+        for (SurgeryNode node : list) {
+            usage += node.getSurgeryTime();
         }
+        return list.isEmpty() ? 0 : usage + (list.size() - 1) * transitionTime;
+    }
 
-        System.out.println("\n排程完成。");
+    // 手術可進入的房間 (需要特殊手術房者只考慮特殊房；沒有特殊手術房時不限制) 中使用時間最短者
+    private String leastLoadedRoom(SurgeryNode node, Map<String, Integer> usage) {
+        String best = null;
+        for (int r = 0; r < roomNames.size(); r++) {
+            String room = roomNames.get(r);
+            if (canEnter(node, r) && (best == null || usage.get(room) < usage.get(best))) {
+                best = room;
+            }
+        }
+        return best;
+    }
 
-        // 6. 將最佳排程結果更新回 DataManager 以便後續輸出
-        updateDataManagerWithSchedule(bestSchedule);
+    // 手術是否可進入房間 r (需要特殊手術房者只能進入特殊房；沒有特殊手術房時不限制)
+    private boolean canEnter(SurgeryNode node, int r) {
+        if (specialRoomFlags[r] || !"Y".equalsIgnoreCase(node.getSpecialRoomRequirement())) {
+            return true;
+        }
+        for (boolean flag : specialRoomFlags) {
+            if (flag) {
+                return false;
+            }
+        }
+        return true;
+    }
 
-        // 7. 將初始解與最佳解打包回傳
-        Map<String, Schedule> results = new HashMap<>();
-        results.put("initial", initialSchedule);
-        results.put("best", bestSchedule);
-        return results;
+    /**
+     * 取得搜尋遙測 (可在 {@link #schedule()} 執行期間由其他執行緒讀取)
+     * * @return 遙測；未啟用時為 null
+     */
+    public SearchTelemetry getTelemetry() {
+        return telemetry;
+    }
+
+    // 開始記錄遙測：JSONL 寫入 log/Telemetry_[時間戳記]_[種子]_[執行序號].jsonl，MBean 名稱為種子與執行序號
+    private void startTelemetry() {
+        if (telemetry == null) {
+            return;
+        }
+        Map<String, Integer> args = dataManager.getArguments();
+        int run = TELEMETRY_RUNS.incrementAndGet();
+        String jsonlFile = null;
+        if (args.getOrDefault("telemetry", 0) != 0) {
+            String timestamp = new SimpleDateFormat("yyyyMMdd_HHmmss").format(new Date());
+            jsonlFile = "log/Telemetry_" + timestamp + "_" + seed + "_" + run + ".jsonl";
+        }
+        try {
+            if (jsonlFile != null) {
+                Files.createDirectories(Paths.get("log"));
+            }
+            telemetry.start(jsonlFile, args.getOrDefault("jmx", 0) != 0 ? "seed-" + seed + "-run-" + run : null);
+            if (verbose && jsonlFile != null) {
+                System.out.println("遙測資料寫入：" + jsonlFile);
+            }
+        } catch (IOException e) {
+            System.err.println("警告：無法開啟遙測檔案：" + e.getMessage());
+        }
+    }
+
+    /**
+     * 設定滾動式多日排程的暖啟動模型，之後的 {@link #schedule()} 會嘗試以前幾天的科別與手術房親和度建立初始解
+     * * @param warmStart 暖啟動模型；null 表示不使用
+     */
+    public void setWarmStart(RoomAffinity warmStart) {
+        this.warmStart = warmStart;
+    }
+
+    /**
+     * 最近一次排程是否採用了暖啟動的初始解 (暖啟動解的成本低於輪流分配的初始解時才會採用)
+     * * @return 是否採用暖啟動
+     */
+    public boolean isWarmStarted() {
+        return warmStarted;
+    }
+
+    /**
+     * 取得最近一次排程的成本下界：任何排程的加班、超時與平衡成本都不會低於此值 (見 {@link CostEvaluator#getCostLowerBound()})
+     * * @return 成本下界；尚未排程時為 0
+     */
+    public double getCostLowerBound() {
+        return costLowerBound;
+    }
+
+    /**
+     * 取得本次排程使用的亂數種子 (相同種子與輸入會產生完全相同的排程結果)
+     * * @return 亂數種子
+     */
+    public int getSeed() {
+        return seed;
+    }
+
+    /**
+     * 取得搜尋進行中目前的最佳排程 (anytime)，可在 {@link #schedule()} 執行期間由其他執行緒呼叫
+     * 最佳解於每個溫度層級 (平行回火為每個回合) 結束時更新
+     * * @return 目前最佳排程；搜尋尚未開始時為 null
+     */
+    public Schedule getCurrentBest() {
+        CompactSchedule best = engine.getCurrentBest();
+        return best == null ? null : best.toSchedule();
+    }
+
+    /**
+     * 取得最近一次排程中各退火鏈 (或平行回火副本) 的執行統計
+     * * @return 依編號排序的統計資料
+     */
+    public List<AnnealingChain.Stats> getChainStats() {
+        return engine.getStats();
     }
 
     /**
@@ -144,7 +430,7 @@ public class Scheduler {
      * 
      * @return 初始排程物件
      */
-    private Schedule createInitialSchedule(List<SurgeryNode> nodes) {
+    Schedule createInitialSchedule(List<SurgeryNode> nodes) {
         Map<String, LinkedList<SurgeryNode>> roomSchedules = new HashMap<>();
         for (String room : dataManager.getAllRooms()) {
             roomSchedules.put(room, new LinkedList<>());
@@ -177,246 +463,108 @@ public class Scheduler {
     }
 
     /**
-     * 計算排程的成本函數
-     * 成本 = 總加班成本 + 總超時成本 (權重為2) + 各房間使用時間的平衡成本
-     * * @param schedule 待計算成本的排程
-     * 
-     * @return 計算出的總成本
+     * 以最長處理時間優先 (LPT) 建立初始排程
+     * 手術依手術時間由長到短排序，需要特殊手術房的手術先分配到特殊房中負載最小者，其餘手術再分配到所有房間中負載最小者；
+     * 房間負載 (含手術之間的銜接時間) 以最小堆積維護，每檯手術只需 O(log R)。
+     * * @param nodes 所有待排程的手術節點
+     *
+     * @return 初始排程物件
      */
-    private double calculateCost(Schedule schedule) {
-        Map<String, LinkedList<SurgeryNode>> roomSchedules = schedule.getRoomSchedules();
-        Map<String, Integer> roomUsage = new HashMap<>();
-
-        double totalOvertimeCost = 0;
-        double totalRegularOvertimeCost = 0;
-
-        // 計算每個房間的使用時間、加班與超時成本
-        for (String room : dataManager.getAllRooms()) {
-            int currentTime = 0;
-            List<SurgeryNode> surgeries = roomSchedules.get(room);
-            if (surgeries != null) {
-                for (SurgeryNode surgery : surgeries) {
-                    currentTime += surgery.getSurgeryTime() + transitionTime;
-                }
-                if (!surgeries.isEmpty()) {
-                    currentTime -= transitionTime; // 最後一檯手術後不需銜接時間
-                }
-            }
-            roomUsage.put(room, currentTime);
-
-            // 計算加班成本
-            int regularOvertime = Math.max(0, currentTime - maxRegularTime);
-            totalRegularOvertimeCost += regularOvertime;
-
-            // 計算超時成本 (權重加倍)
-            int overtime = Math.max(0, currentTime - (maxRegularTime + maxOvertime));
-            totalOvertimeCost += overtime * 2.0;
+    Schedule createGreedyInitialSchedule(List<SurgeryNode> nodes) {
+        Map<String, LinkedList<SurgeryNode>> roomSchedules = new HashMap<>();
+        for (String room : roomNames) {
+            roomSchedules.put(room, new LinkedList<>());
         }
-
-        // 計算各房間使用時間的平衡成本
-        double totalUsage = roomUsage.values().stream().mapToInt(Integer::intValue).sum();
-        double avgUsage = totalUsage / (double) dataManager.getAllRooms().size();
-
-        double balanceCost = 0;
-        for (int usage : roomUsage.values()) {
-            balanceCost += Math.abs(usage - avgUsage);
+        List<SurgeryNode> sorted = new ArrayList<>(nodes);
+        sorted.sort((a, b) -> Integer.compare(b.getSurgeryTime(), a.getSurgeryTime()));
+
+        int[] load = new int[roomNames.size()];
+        // 負載相同時依房間編號，結果與輸入順序以外的因素無關
+        Comparator<Integer> byLoad = (a, b) -> load[a] != load[b] ? Integer.compare(load[a], load[b])
+                : Integer.compare(a, b);
+        PriorityQueue<Integer> specialHeap = new PriorityQueue<>(byLoad);
+        PriorityQueue<Integer> allHeap = new PriorityQueue<>(byLoad);
+        for (int r = 0; r < roomNames.size(); r++) {
+            if (specialRoomFlags[r]) {
+                specialHeap.add(r);
+            }
         }
 
-        // 加總所有成本
-        double finalCost = totalRegularOvertimeCost + totalOvertimeCost + balanceCost;
-        schedule.setCost(finalCost);
-        return finalCost;
-    }
-
-    /**
-     * 檢查排程是否滿足所有限制 (例如：特殊手術是否在特殊房)
-     * * @param schedule 待檢查的排程
-     * 
-     * @return 如果排程有效則回傳 true，否則 false
-     */
-    private boolean isValid(Schedule schedule) {
-        Set<String> specialRooms = dataManager.getSpecialRooms();
-        Map<String, LinkedList<SurgeryNode>> roomSchedules = schedule.getRoomSchedules();
-
-        for (Map.Entry<String, LinkedList<SurgeryNode>> entry : roomSchedules.entrySet()) {
-            String room = entry.getKey();
-            List<SurgeryNode> surgeries = entry.getValue();
-            for (SurgeryNode surgery : surgeries) {
-                // 檢查要求特殊房的手術是否被安排在非特殊房中
-                if ("Y".equalsIgnoreCase(surgery.getSpecialRoomRequirement()) && !specialRooms.contains(room)) {
-                    return false;
-                }
+        // 特殊手術先分配；之後再把特殊房 (已含其負載) 與一般房一起放入堆積
+        for (SurgeryNode node : sorted) {
+            if ("Y".equalsIgnoreCase(node.getSpecialRoomRequirement()) && !specialHeap.isEmpty()) {
+                assign(node, specialHeap, load, roomSchedules);
             }
         }
-        return true;
-    }
-
-    /**
-     * 使用二分搜尋法找到適合的初始溫度
-     * 目標是找到一個溫度，使得初始接受率約等於 INITIAL_ACCEPTANCE_RATE
-     * * @param initialSchedule 初始排程
-     * 
-     * @return 計算出的初始溫度
-     */
-    private double findInitialTemperature(Schedule initialSchedule) {
-        double low = 0.01, high = 10000;
-        double mid;
-        while (high - low > 0.1) {
-            mid = low + (high - low) / 2.0;
-            if (calculateAcceptanceRate(initialSchedule, mid) < INITIAL_ACCEPTANCE_RATE) {
-                low = mid;
-            } else {
-                high = mid;
+        for (int r = 0; r < roomNames.size(); r++) {
+            allHeap.add(r);
+        }
+        for (SurgeryNode node : sorted) {
+            if (!"Y".equalsIgnoreCase(node.getSpecialRoomRequirement()) || specialHeap.isEmpty()) {
+                assign(node, allHeap, load, roomSchedules);
             }
         }
-        return high;
+        return new Schedule(roomSchedules);
     }
 
-    /**
-     * 在給定溫度下，計算鄰近解的接受率
-     * * @param schedule 目前排程
-     * 
-     * @param temperature 測試溫度
-     * @return 接受率
-     */
-    private double calculateAcceptanceRate(Schedule schedule, double temperature) {
-        int accepted = 0;
-        int total = 100;
-        for (int i = 0; i < total; i++) {
-            Schedule neighbor = perturbSchedule(schedule, temperature, 10000);
-            calculateCost(neighbor);
-            if (neighbor.getCost() - schedule.getCost() < 0 ||
-                    random.nextDouble() < Math.exp(-(neighbor.getCost() - schedule.getCost()) / temperature)) {
-                accepted++;
-            }
-        }
-        return (double) accepted / total;
+    // 將手術分配到堆積中負載最小的房間並更新其負載
+    private void assign(SurgeryNode node, PriorityQueue<Integer> heap, int[] load,
+            Map<String, LinkedList<SurgeryNode>> roomSchedules) {
+        int room = heap.poll();
+        load[room] += (load[room] == 0 ? 0 : transitionTime) + node.getSurgeryTime();
+        roomSchedules.get(roomNames.get(room)).add(node);
+        heap.add(room);
     }
 
     /**
-     * 根據溫度階段對目前排程進行擾動，以產生鄰近解
-     * * @param currentSchedule 目前的排程
-     * 
-     * @param temp        目前溫度
-     * @param initialTemp 初始溫度
-     * @return 一個新的、有效的鄰近排程
+     * 區域改善：反覆嘗試將每檯手術移到其他可進入房間的最後，只要成本下降就接受 (first improvement)，
+     * 直到一整輪都沒有改善或達到 MAX_IMPROVEMENT_PASSES 輪；成本由增量評估器計算 (含醫師衝突)
+     * * @param schedule  要改善的排程 (直接修改)
+     *
+     * @param evaluator 已以此排程 reset 的成本評估器
      */
-    private Schedule perturbSchedule(Schedule currentSchedule, double temp, double initialTemp) {
-        Schedule neighbor;
-        int maxTries = 50; // 最大嘗試次數，避免無限迴圈
-        int tries = 0;
-
-        while (tries < maxTries) {
-            neighbor = currentSchedule.copy();
-            Map<String, LinkedList<SurgeryNode>> schedules = neighbor.getRoomSchedules();
-            List<String> rooms = new ArrayList<>(schedules.keySet());
-
-            if (rooms.isEmpty() || rooms.size() < 2)
-                return neighbor;
-
-            // 正規化溫度，用於判斷目前是高、中、低溫的哪個階段
-            double tNorm = (temp - FINAL_TEMPERATURE) / (initialTemp - FINAL_TEMPERATURE);
-
-            // 隨機選擇兩個不同的房間
-            String room1Name = rooms.get(random.nextInt(rooms.size()));
-            String room2Name = rooms.get(random.nextInt(rooms.size()));
-            while (room1Name.equals(room2Name)) {
-                room2Name = rooms.get(random.nextInt(rooms.size()));
-            }
-
-            LinkedList<SurgeryNode> list1 = schedules.get(room1Name);
-            LinkedList<SurgeryNode> list2 = schedules.get(room2Name);
-
-            if (list1.isEmpty()) {
-                tries++;
-                continue; // 如果來源房間是空的，就重來
-            }
-
-            SurgeryNode targetNode;
-            // 高溫階段：移動手術時間最長的手術，進行大範圍擾動
-            if (tNorm > TH) {
-                targetNode = Collections.max(list1, Comparator.comparingInt(SurgeryNode::getSurgeryTime));
-                // System.out.printf("高溫擾動 (%.2f): 移動最長手術 %s\n", tNorm,
-                // targetNode.getApplicationId());
-            } else { // 中低溫階段：移動手術時間最短的手術，進行小範圍微調
-                targetNode = Collections.min(list1, Comparator.comparingInt(SurgeryNode::getSurgeryTime));
-                // System.out.printf("中低溫擾動 (%.2f): 移動最短手術 %s\n", tNorm,
-                // targetNode.getApplicationId());
-            }
-            list1.remove(targetNode);
-
-            // 50% 的機率進行交換 (swap)，50% 的機率進行插入 (insert)
-            if (random.nextBoolean() && !list2.isEmpty()) {
-                // 交換
-                int indexToSwap = random.nextInt(list2.size());
-                SurgeryNode nodeToSwap = list2.get(indexToSwap);
-                list2.set(indexToSwap, targetNode);
-                list1.add(nodeToSwap);
-            } else {
-                // 插入
-                int insertIndex = list2.isEmpty() ? 0 : random.nextInt(list2.size() + 1);
-                list2.add(insertIndex, targetNode);
-            }
-
-            // 檢查擾動後的解是否依然有效，如果有效就回傳
-            if (isValid(neighbor)) {
-                return neighbor;
+    private void improveLocally(CompactSchedule schedule, CostEvaluator evaluator) {
+        boolean hasSpecialRoom = false;
+        for (boolean flag : specialRoomFlags) {
+            hasSpecialRoom |= flag;
+        }
+        Move move = new Move();
+        boolean improved = true;
+        for (int pass = 0; improved && pass < MAX_IMPROVEMENT_PASSES; pass++) {
+            improved = false;
+            for (int source = 0; source < schedule.getRoomCount(); source++) {
+                for (int index = schedule.length(source) - 1; index >= 0; index--) {
+                    boolean special = hasSpecialRoom && schedule.isSpecialRequired(schedule.get(source, index));
+                    for (int target = 0; target < schedule.getRoomCount(); target++) {
+                        if (target == source || special && !specialRoomFlags[target]) {
+                            continue;
+                        }
+                        move.set(Move.Type.INSERT, source, index, target, schedule.length(target));
+                        move.apply(schedule);
+                        // propose 回傳的是下界，下界不低於目前成本時必定沒有改善
+                        if (evaluator.propose(schedule, move) < schedule.getCost()) {
+                            double cost = evaluator.resolveProposal();
+                            if (cost < schedule.getCost()) {
+                                evaluator.commit();
+                                schedule.setCost(cost);
+                                improved = true;
+                                break;
+                            }
+                        }
+                        move.undo(schedule);
+                        evaluator.clearProposal();
+                    }
+                }
             }
-            tries++;
         }
-
-        // 如果嘗試多次都無法產生有效解，則回傳原始解
-        return currentSchedule;
-    }
-
-    /**
-     * 根據問題規模計算自適應的冷卻係數
-     * * @param n 問題規模 (手術數量 * 房間數量)
-     * 
-     * @return 冷卻係數
-     */
-    private double calculateCoolingRate(int n) {
-        return (ALPHA * Math.sqrt(n) - 1) / (ALPHA * Math.sqrt(n));
     }
 
     /**
      * 將最終的最佳排程結果更新回 DataManager
      * * @param finalSchedule 最終的最佳排程
      */
-    private void updateDataManagerWithSchedule(Schedule finalSchedule) {
-        List<String[]> newTimetableData = new ArrayList<>();
-        List<String[]> originalTimetable = dataManager.getTimetableData();
-
-        // 保留原始 CSV 的表頭
-        if (!originalTimetable.isEmpty()) {
-            newTimetableData.add(originalTimetable.get(0));
-        }
-
-        Map<String, LinkedList<SurgeryNode>> roomSchedules = finalSchedule.getRoomSchedules();
-
-        // 建立一個 Map 方便透過手術申請單號查找原始資料
-        Map<String, String[]> originalDataMap = new HashMap<>();
-        for (int i = 1; i < originalTimetable.size(); i++) {
-            String[] row = originalTimetable.get(i);
-            if (row.length > 1) {
-                originalDataMap.put(row[1], row);
-            }
-        }
-
-        // 根據最佳排程的結果，重新建立新的 Timetable 資料
-        for (Map.Entry<String, LinkedList<SurgeryNode>> entry : roomSchedules.entrySet()) {
-            String roomName = entry.getKey();
-            List<SurgeryNode> surgeries = entry.getValue();
-
-            for (SurgeryNode surgery : surgeries) {
-                String[] originalRow = originalDataMap.get(surgery.getApplicationId());
-                if (originalRow != null) {
-                    String[] newRow = Arrays.copyOf(originalRow, originalRow.length);
-                    newRow[5] = roomName; // 更新手術房欄位
-                    newTimetableData.add(newRow);
-                }
-            }
-        }
-        dataManager.updateTimetableData(newTimetableData);
+    private void updateDataManagerWithSchedule(CompactSchedule finalSchedule) {
+        // 輸出時保留原始 CSV 的表頭 (若有)，並依最佳排程替換每筆手術記錄的手術房欄位 (開始與結束時間取自其時間軸)
+        dataManager.applySchedule(finalSchedule);
     }
 }
\ No newline at end of file
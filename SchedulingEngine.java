@@ -0,0 +1,37 @@
+import java.util.*;
+
+/**
+ * 排程搜尋引擎的共同介面
+ * Scheduler 負責建立初始解與輸出結果，實際的搜尋則交由實作此介面的引擎執行，
+ * 以便在相同的成本函數與移動集合下比較不同的搜尋策略。
+ */
+public interface SchedulingEngine {
+    /**
+     * 從初始解開始搜尋
+     * * @param initialSchedule 初始排程 (不會被修改)
+     *
+     * @return 找到的最佳排程
+     */
+    CompactSchedule search(CompactSchedule initialSchedule);
+
+    /**
+     * 取得最近一次搜尋中各退火鏈 (或副本) 的執行統計
+     * * @return 依編號排序的統計資料
+     */
+    List<AnnealingChain.Stats> getStats();
+
+    /**
+     * 取得搜尋進行中目前的最佳解，可由其他執行緒隨時呼叫 (每個溫度層級或回合結束時更新)
+     * * @return 目前最佳解的快照 (不會再被修改)；搜尋尚未開始時為 null
+     */
+    CompactSchedule getCurrentBest();
+
+    /**
+     * 設定之後搜尋校準初始溫度所用的初始接受率，取代 initialAcceptance 參數 (不修改 DataManager 的參數)
+     * * @param percent 初始接受率 (%)，0 表示依 initialAcceptance 參數
+     */
+    void setInitialAcceptance(int percent);
+
+    /** 引擎名稱，用於報告 */
+    String getName();
+}
@@ -0,0 +1,237 @@
+import java.io.*;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.Locale;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+import javax.management.*;
+
+/**
+ * 搜尋過程的即時遙測
+ * 各退火鏈在自己的區域變數中累計，並定期 (每個溫度層級結束及每隔固定迭代次數) 以 LongAdder 彙整到此處，
+ * 熱迴圈中不需要同步。讀取端可透過 JMX (SearchTelemetryMBean) 或 log 資料夾下的 JSONL 檔案取得，
+ * JSONL 檔案由背景執行緒寫入，每個溫度層級 (平行回火為每個回合的每個副本) 一行。
+ */
+public class SearchTelemetry implements SearchTelemetryMBean {
+    /** 溫度階段：正規化溫度高於 TH 為高溫，低於 TL 為低溫，其餘為中溫 */
+    public static final int HIGH_PHASE = 0;
+    public static final int MID_PHASE = 1;
+    public static final int LOW_PHASE = 2;
+
+    private static final String END_OF_STREAM = "";
+
+    private final LongAdder iterations = new LongAdder();
+    private final LongAdder[] accepted = { new LongAdder(), new LongAdder(), new LongAdder() };
+    private final LongAdder[] rejected = { new LongAdder(), new LongAdder(), new LongAdder() };
+    private final LongAdder moveRetries = new LongAdder();
+    private final LongAdder moveNanos = new LongAdder();
+    private final LongAdder costNanos = new LongAdder();
+    private final LongAdder copyNanos = new LongAdder();
+    private final DoubleAccumulator bestCost = new DoubleAccumulator(Math::min, Double.POSITIVE_INFINITY);
+    private final AtomicLong currentCostBits = new AtomicLong(Double.doubleToLongBits(Double.NaN));
+    private volatile long startNanos = System.nanoTime();
+
+    private BlockingQueue<String> stream;
+    private Thread writerThread;
+    private ObjectName objectName;
+
+    /**
+     * 開始記錄：重設起始時間，並依需要開啟 JSONL 串流與註冊 MBean
+     * * @param jsonlFile JSONL 檔案路徑，null 表示不寫檔；檔案已存在時不覆寫，而是拋出例外
+     *
+     * @param mbeanName JMX 物件名稱中的 name 屬性，null 表示不註冊
+     * @throws IOException 開啟檔案錯誤
+     */
+    public void start(String jsonlFile, String mbeanName) throws IOException {
+        startNanos = System.nanoTime();
+        if (jsonlFile != null) {
+            BufferedWriter writer = new BufferedWriter(
+                    new OutputStreamWriter(Files.newOutputStream(Paths.get(jsonlFile), StandardOpenOption.CREATE_NEW),
+                            StandardCharsets.UTF_8));
+            BlockingQueue<String> queue = new LinkedBlockingQueue<>();
+            writerThread = new Thread(() -> drain(queue, writer), "telemetry-writer");
+            writerThread.setDaemon(true);
+            writerThread.start();
+            stream = queue;
+        }
+        if (mbeanName != null) {
+            try {
+                objectName = new ObjectName("SurgeryScheduler:type=SearchTelemetry,name=" + ObjectName.quote(mbeanName));
+                ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+            } catch (JMException e) {
+                System.err.println("警告：無法註冊遙測 MBean：" + e.getMessage());
+                objectName = null;
+            }
+        }
+    }
+
+    /** 結束記錄：寫完剩餘的 JSONL 資料並取消註冊 MBean */
+    public void close() {
+        if (stream != null) {
+            stream.add(END_OF_STREAM);
+            try {
+                writerThread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            stream = null;
+        }
+        if (objectName != null) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+            } catch (JMException e) {
+                System.err.println("警告：無法取消註冊遙測 MBean：" + e.getMessage());
+            }
+            objectName = null;
+        }
+    }
+
+    /**
+     * 彙整一條鏈自上次回報以來的計數 (由退火執行緒呼叫)
+     * * @param phase 溫度階段 (HIGH_PHASE、MID_PHASE、LOW_PHASE)
+     *
+     * @param iterationDelta 迭代次數
+     * @param acceptedDelta  接受次數
+     * @param rejectedDelta  拒絕次數
+     * @param retryDelta     產生移動時的重試次數
+     * @param moveTime       產生移動所花費的時間 (奈秒，抽樣估計)
+     * @param costTime       成本評估所花費的時間 (奈秒，抽樣估計)
+     * @param copyTime       複製最佳解所花費的時間 (奈秒)
+     */
+    public void record(int phase, long iterationDelta, long acceptedDelta, long rejectedDelta, long retryDelta,
+            long moveTime, long costTime, long copyTime) {
+        iterations.add(iterationDelta);
+        accepted[phase].add(acceptedDelta);
+        rejected[phase].add(rejectedDelta);
+        moveRetries.add(retryDelta);
+        moveNanos.add(moveTime);
+        costNanos.add(costTime);
+        copyNanos.add(copyTime);
+    }
+
+    /**
+     * 一個溫度層級 (或回合) 結束時更新成本並輸出一行 JSONL
+     * * @param chainId 鏈 (副本) 編號
+     *
+     * @param temperature 此層級的溫度
+     * @param currentCost 目前解的成本
+     * @param best        此鏈的最佳成本
+     */
+    public void levelCompleted(int chainId, double temperature, double currentCost, double best) {
+        currentCostBits.set(Double.doubleToLongBits(currentCost));
+        bestCost.accumulate(best);
+        BlockingQueue<String> queue = stream;
+        if (queue != null) {
+            queue.add(String.format(Locale.ROOT, "{\"elapsedMillis\":%d,\"chain\":%d,\"temperature\":%.4f,\"currentCost\":%.2f,"
+                    + "\"bestCost\":%.2f,%s}", getElapsedMillis(), chainId, temperature, currentCost, best,
+                    countersJson()));
+        }
+    }
+
+    /**
+     * 目前所有計數的 JSON 物件
+     * * @return 單行 JSON
+     */
+    public String toJson() {
+        return String.format(Locale.ROOT, "{\"elapsedMillis\":%d,\"currentCost\":%.2f,\"bestCost\":%.2f,%s}", getElapsedMillis(),
+                getCurrentCost(), getBestCost(), countersJson());
+    }
+
+    private String countersJson() {
+        return String.format(Locale.ROOT, "\"iterations\":%d,\"iterationsPerSecond\":%.0f,\"acceptanceRate\":{\"high\":%.4f,"
+                + "\"mid\":%.4f,\"low\":%.4f},\"moveRetries\":%d,\"millis\":{\"move\":%d,\"cost\":%d,\"copy\":%d}",
+                getIterations(), getIterationsPerSecond(), getHighPhaseAcceptanceRate(), getMidPhaseAcceptanceRate(),
+                getLowPhaseAcceptanceRate(), getMoveRetries(), getMoveGenerationMillis(), getCostEvaluationMillis(),
+                getCopyMillis());
+    }
+
+    // 背景執行緒：依序寫出佇列中的每一行，直到收到結束標記
+    private static void drain(BlockingQueue<String> queue, BufferedWriter writer) {
+        try (BufferedWriter out = writer) {
+            while (true) {
+                String line = queue.take();
+                if (line == END_OF_STREAM) {
+                    break;
+                }
+                out.write(line);
+                out.write('\n');
+                if (queue.isEmpty()) {
+                    out.flush(); // 讓外部工具可以即時讀到最新資料
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("警告：寫入遙測檔案失敗：" + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private double acceptanceRate(int phase) {
+        long acceptedCount = accepted[phase].sum();
+        long total = acceptedCount + rejected[phase].sum();
+        return total > 0 ? (double) acceptedCount / total : 0;
+    }
+
+    @Override
+    public long getIterations() {
+        return iterations.sum();
+    }
+
+    @Override
+    public double getIterationsPerSecond() {
+        long elapsed = System.nanoTime() - startNanos;
+        return elapsed > 0 ? getIterations() * 1e9 / elapsed : 0;
+    }
+
+    @Override
+    public double getHighPhaseAcceptanceRate() {
+        return acceptanceRate(HIGH_PHASE);
+    }
+
+    @Override
+    public double getMidPhaseAcceptanceRate() {
+        return acceptanceRate(MID_PHASE);
+    }
+
+    @Override
+    public double getLowPhaseAcceptanceRate() {
+        return acceptanceRate(LOW_PHASE);
+    }
+
+    @Override
+    public long getMoveRetries() {
+        return moveRetries.sum();
+    }
+
+    @Override
+    public double getBestCost() {
+        return bestCost.get();
+    }
+
+    @Override
+    public double getCurrentCost() {
+        return Double.longBitsToDouble(currentCostBits.get());
+    }
+
+    @Override
+    public long getMoveGenerationMillis() {
+        return moveNanos.sum() / 1_000_000;
+    }
+
+    @Override
+    public long getCostEvaluationMillis() {
+        return costNanos.sum() / 1_000_000;
+    }
+
+    @Override
+    public long getCopyMillis() {
+        return copyNanos.sum() / 1_000_000;
+    }
+
+    @Override
+    public long getElapsedMillis() {
+        return (System.nanoTime() - startNanos) / 1_000_000;
+    }
+}
@@ -0,0 +1,29 @@
+/**
+ * 搜尋遙測的 JMX 介面 (Standard MBean)
+ * 以 jconsole 或 VisualVM 連線後，可在 SurgeryScheduler 網域下即時讀取，不會暫停搜尋。
+ */
+public interface SearchTelemetryMBean {
+    long getIterations();
+
+    double getIterationsPerSecond();
+
+    double getHighPhaseAcceptanceRate();
+
+    double getMidPhaseAcceptanceRate();
+
+    double getLowPhaseAcceptanceRate();
+
+    long getMoveRetries();
+
+    double getBestCost();
+
+    double getCurrentCost();
+
+    long getMoveGenerationMillis();
+
+    long getCostEvaluationMillis();
+
+    long getCopyMillis();
+
+    long getElapsedMillis();
+}
@@ -0,0 +1,282 @@
+import java.util.*;
+
+/**
+ * 同一位主刀醫師的手術時間衝突 (重疊分鐘數) 的增量索引
+ * 醫師的手術依醫師分組，在以位置編號的陣列中連續存放 (offsets 為各醫師區段的起點)，並保存目前已提交排程中每檯手術的時間區間；
+ * 只有一檯手術的醫師不可能衝突，不會納入索引。
+ *
+ * 一次移動只會改變來源與目標房間中移動位置之後的手術開始時間，{@link #resolve} 只針對這些開始時間實際改變的手術，
+ * 與同一醫師的其他手術逐一比較重疊量，算出衝突總量的變化；每位醫師一天的手術只有數檯到二十多檯，
+ * 連續陣列的線性掃描比平衡樹的區間查詢更快，也不需要在 apply 與 undo 時維護額外結構。
+ *
+ * 逐對比較仍是評估移動中最耗時的部分，因此 {@link #propose} 只收集改變的手術，並回傳變化量的下界
+ * (這些手術目前的衝突全部消失)；呼叫端可先以下界判斷是否必定拒絕，只有無法判斷時才呼叫 {@link #resolve}。
+ */
+public class SurgeonConflictIndex {
+    /** 手術編號 -> 所屬醫師區段中的位置；醫師只有一檯手術或未知時為 -1 */
+    private final int[] positionOf;
+    /** 各醫師區段的起點 (長度為醫師數 + 1) */
+    private final int[] offsets;
+    /** 位置 -> 所屬醫師 */
+    private final int[] surgeonAt;
+    /** 位置 -> 手術時間 */
+    private final int[] durationAt;
+    /** 已提交排程中的時間區間，位置 p 的開始與結束時間交錯存放於 2p 與 2p + 1 */
+    private final int[] committed;
+    /** 候選移動中開始時間改變的位置與其新的開始時間 */
+    private final int[] changed;
+    private final int[] changedStart;
+    private int changedCount;
+
+    /** 位置 -> 該手術目前與同一醫師其他手術重疊的分鐘數 */
+    private final long[] caseConflict;
+    private long totalConflict;
+    private long proposedDelta;
+    private boolean hasProposal;
+    private boolean resolved;
+
+    private SurgeonConflictIndex(int[] positionOf, int[] cases, int[] offsets, int[] durations) {
+        this.positionOf = positionOf;
+        this.offsets = offsets;
+        this.surgeonAt = new int[cases.length];
+        this.durationAt = new int[cases.length];
+        for (int s = 0; s + 1 < offsets.length; s++) {
+            for (int p = offsets[s]; p < offsets[s + 1]; p++) {
+                surgeonAt[p] = s;
+                durationAt[p] = durations[cases[p]];
+            }
+        }
+        this.committed = new int[cases.length * 2];
+        this.changed = new int[cases.length];
+        this.changedStart = new int[cases.length];
+        this.caseConflict = new long[cases.length];
+    }
+
+    /**
+     * 依排程中手術的主刀醫師建立索引
+     * * @param schedule 排程 (只讀取手術節點與手術時間)
+     *
+     * @return 索引；沒有任何醫師有兩檯以上手術時回傳 null
+     */
+    public static SurgeonConflictIndex build(CompactSchedule schedule) {
+        int surgeryCount = schedule.getSurgeryCount();
+        Map<String, List<Integer>> bySurgeon = new LinkedHashMap<>();
+        for (int i = 0; i < surgeryCount; i++) {
+            String surgeon = schedule.getSurgery(i).getSurgeon();
+            if (surgeon != null && !surgeon.isEmpty()) {
+                bySurgeon.computeIfAbsent(surgeon, k -> new ArrayList<>()).add(i);
+            }
+        }
+
+        int[] positionOf = new int[surgeryCount];
+        Arrays.fill(positionOf, -1);
+        int size = 0;
+        int surgeons = 0;
+        for (List<Integer> list : bySurgeon.values()) {
+            if (list.size() > 1) {
+                size += list.size();
+                surgeons++;
+            }
+        }
+        if (surgeons == 0) {
+            return null;
+        }
+
+        int[] cases = new int[size];
+        int[] offsets = new int[surgeons + 1];
+        int[] durations = new int[surgeryCount];
+        for (int i = 0; i < surgeryCount; i++) {
+            durations[i] = schedule.getDuration(i);
+        }
+        int p = 0;
+        int s = 0;
+        for (List<Integer> list : bySurgeon.values()) {
+            if (list.size() > 1) {
+                offsets[s++] = p;
+                for (int surgery : list) {
+                    positionOf[surgery] = p;
+                    cases[p++] = surgery;
+                }
+            }
+        }
+        offsets[s] = p;
+        return new SurgeonConflictIndex(positionOf, cases, offsets, durations);
+    }
+
+    /**
+     * 以完整掃描的方式重新載入排程中的開始時間並計算衝突總量
+     * * @param schedule 作為目前解的排程
+     *
+     * @return 衝突總量 (分鐘)
+     */
+    public long reset(CompactSchedule schedule) {
+        for (int r = 0; r < schedule.getRoomCount(); r++) {
+            for (int i = 0; i < schedule.length(r); i++) {
+                int p = positionOf[schedule.get(r, i)];
+                if (p >= 0) {
+                    committed[2 * p] = schedule.startOf(r, i);
+                    committed[2 * p + 1] = committed[2 * p] + durationAt[p];
+                }
+            }
+        }
+        totalConflict = 0;
+        Arrays.fill(caseConflict, 0);
+        for (int s = 0; s + 1 < offsets.length; s++) {
+            for (int a = offsets[s]; a < offsets[s + 1]; a++) {
+                for (int b = a + 1; b < offsets[s + 1]; b++) {
+                    int conflict = overlap(committed[2 * a], committed[2 * a + 1], committed[2 * b], committed[2 * b + 1]);
+                    caseConflict[a] += conflict;
+                    caseConflict[b] += conflict;
+                    totalConflict += conflict;
+                }
+            }
+        }
+        hasProposal = false;
+        return totalConflict;
+    }
+
+    /**
+     * 記錄已套用在排程上的移動中開始時間改變的手術，但不改變已提交的狀態，也尚未計算衝突變化
+     * 只有兩個房間中從指定位置起的手術開始時間可能改變
+     * * @param schedule 已套用移動的排程
+     *
+     * @param room1  第一個受影響的房間
+     * @param index1 第一個房間中開始時間可能改變的第一個位置
+     * @param room2  第二個受影響的房間
+     * @param index2 第二個房間中開始時間可能改變的第一個位置
+     * @return 衝突總量變化的下界 (不大於 0)；沒有相關手術改變時即為實際變化量 0
+     */
+    public long propose(CompactSchedule schedule, int room1, int index1, int room2, int index2) {
+        changedCount = 0;
+        if (room1 == room2) {
+            collectChanged(schedule, room1, Math.min(index1, index2));
+        } else {
+            collectChanged(schedule, room1, index1);
+            collectChanged(schedule, room2, index2);
+        }
+        hasProposal = true;
+        resolved = changedCount == 0;
+        proposedDelta = 0;
+
+        // 每一對重疊最多由兩檯改變的手術各扣除一次，仍是下界
+        long bound = 0;
+        for (int c = 0; c < changedCount; c++) {
+            bound -= caseConflict[changed[c]];
+        }
+        return bound;
+    }
+
+    /**
+     * 計算最近一次 {@link #propose} 的移動造成的衝突變化量 (重複呼叫不會重新計算)
+     * * @return 衝突總量的變化 (分鐘)
+     */
+    public long resolve() {
+        if (resolved) {
+            return proposedDelta;
+        }
+        // 先假設同一醫師的其他手術都維持原本的時間，計算每檯改變的手術與它們的重疊變化
+        long delta = 0;
+        for (int c = 0; c < changedCount; c++) {
+            int a = changed[c];
+            int oldStart = committed[2 * a];
+            int oldEnd = committed[2 * a + 1];
+            int newStart = changedStart[c];
+            int newEnd = newStart + durationAt[a];
+            int s = surgeonAt[a];
+            for (int b = offsets[s], end = offsets[s + 1]; b < end; b++) {
+                int start = committed[2 * b];
+                int finish = committed[2 * b + 1];
+                delta += overlap(newStart, newEnd, start, finish) - overlap(oldStart, oldEnd, start, finish);
+            }
+            // 與自己比較的項目 (新區間與舊區間的重疊 - 舊區間的長度) 不屬於任何手術對，需扣除
+            delta -= overlap(newStart, newEnd, oldStart, oldEnd) - (oldEnd - oldStart);
+        }
+        // 同一醫師的兩檯手術都改變時，上面以對方的舊區間各算了一次，改以雙方的新區間修正 (改變的手術通常只有數檯)
+        for (int c = 0; c < changedCount; c++) {
+            int a = changed[c];
+            for (int d = c + 1; d < changedCount; d++) {
+                int b = changed[d];
+                if (surgeonAt[a] != surgeonAt[b]) {
+                    continue;
+                }
+                int oldA = committed[2 * a];
+                int oldB = committed[2 * b];
+                int newA = changedStart[c];
+                int newB = changedStart[d];
+                int durationA = durationAt[a];
+                int durationB = durationAt[b];
+                delta += overlap(newA, newA + durationA, newB, newB + durationB)
+                        + overlap(oldA, oldA + durationA, oldB, oldB + durationB)
+                        - overlap(newA, newA + durationA, oldB, oldB + durationB)
+                        - overlap(oldA, oldA + durationA, newB, newB + durationB);
+            }
+        }
+        proposedDelta = delta;
+        resolved = true;
+        return delta;
+    }
+
+    /** 最近一次 {@link #propose} 的衝突變化是否已計算 */
+    public boolean isResolved() {
+        return resolved;
+    }
+
+    /** 放棄尚未提交的候選移動 */
+    public void clearProposal() {
+        hasProposal = false;
+    }
+
+    /** 將最近一次 {@link #propose} 的開始時間與衝突變化套用到已提交的狀態 */
+    public void commit() {
+        if (!hasProposal) {
+            return;
+        }
+        // 逐檯移到新的時間，並更新它與同一醫師其他手術 (已移動者以新時間計) 的重疊，
+        // 依序套用的結果即為整個移動的變化，不需要另外處理兩檯都改變的手術對
+        for (int c = 0; c < changedCount; c++) {
+            int a = changed[c];
+            int oldStart = committed[2 * a];
+            int oldEnd = committed[2 * a + 1];
+            int newStart = changedStart[c];
+            int newEnd = newStart + durationAt[a];
+            int s = surgeonAt[a];
+            long caseDelta = 0;
+            for (int b = offsets[s], end = offsets[s + 1]; b < end; b++) {
+                if (b != a) {
+                    int start = committed[2 * b];
+                    int finish = committed[2 * b + 1];
+                    int pairDelta = overlap(newStart, newEnd, start, finish) - overlap(oldStart, oldEnd, start, finish);
+                    caseConflict[b] += pairDelta;
+                    caseDelta += pairDelta;
+                }
+            }
+            caseConflict[a] += caseDelta;
+            totalConflict += caseDelta;
+            committed[2 * a] = newStart;
+            committed[2 * a + 1] = newEnd;
+        }
+        hasProposal = false;
+    }
+
+    public long getTotalConflict() {
+        return totalConflict;
+    }
+
+    // 記錄房間中從 index 起開始時間與已提交狀態不同的手術
+    private void collectChanged(CompactSchedule schedule, int room, int index) {
+        for (int i = index, length = schedule.length(room); i < length; i++) {
+            int p = positionOf[schedule.get(room, i)];
+            if (p >= 0) {
+                int start = schedule.startOf(room, i);
+                if (start != committed[2 * p]) {
+                    changed[changedCount] = p;
+                    changedStart[changedCount++] = start;
+                }
+            }
+        }
+    }
+
+    private static int overlap(int start1, int end1, int start2, int end2) {
+        return Math.max(0, Math.min(end1, end2) - Math.max(start1, start2));
+    }
+}
@@ -3,12 +3,23 @@ public class SurgeryNode {
     private final String initialRoom;
     private final int surgeryTime;
     private final String specialRoomRequirement;
+    /** 科別 (TimeTable 第 4 欄)；未知時為 null */
+    private final String department;
+    /** 主刀醫師 (TimeTable 第 5 欄)；未知時為 null，不參與醫師時間衝突的檢查 */
+    private final String surgeon;
 
     public SurgeryNode(String applicationId, String initialRoom, int surgeryTime, String specialRoomRequirement) {
+        this(applicationId, initialRoom, surgeryTime, specialRoomRequirement, null, null);
+    }
+
+    public SurgeryNode(String applicationId, String initialRoom, int surgeryTime, String specialRoomRequirement,
+            String department, String surgeon) {
         this.applicationId = applicationId;
         this.initialRoom = initialRoom;
         this.surgeryTime = surgeryTime;
         this.specialRoomRequirement = specialRoomRequirement;
+        this.department = department;
+        this.surgeon = surgeon;
     }
 
     public String getApplicationId() {
@@ -27,6 +38,14 @@ public class SurgeryNode {
         return specialRoomRequirement;
     }
 
+    public String getDepartment() {
+        return department;
+    }
+
+    public String getSurgeon() {
+        return surgeon;
+    }
+
     public String toCsvString() {
         return applicationId + "," + initialRoom + "," + surgeryTime + "," + specialRoomRequirement;
     }
@@ -38,6 +57,8 @@ public class SurgeryNode {
                 ", 初始手術房='" + initialRoom + '\'' +
                 ", 手術時間=" + surgeryTime +
                 ", 特殊手術房需求='" + specialRoomRequirement + '\'' +
+                ", 科別='" + department + '\'' +
+                ", 主刀醫師='" + surgeon + '\'' +
                 '}';
     }
 }
\ No newline at end of file
@@ -0,0 +1,161 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.*;
+
+import bench.SchedulerHarness;
+
+/**
+ * SchedulerHarness 的實作 (位於預設套件，才能存取排程器的類別與套件層級方法)
+ * 真實資料從專案根目錄讀取 (系統屬性 scheduler.root，預設為目前目錄或上一層目錄)；
+ * 合成資料則依指定的手術數與房間數以固定種子產生。
+ */
+public class BenchHarness implements SchedulerHarness {
+    private DataManager dataManager;
+    private Schedule schedule;
+    private CompactSchedule compactSchedule;
+    private CostEvaluator costEvaluator;
+    private AnnealingChain chain;
+    private double referenceTemperature;
+
+    @Override
+    public void setUp(String instance, long seed) throws IOException {
+        File root = resolveRoot();
+        dataManager = new DataManager();
+        if (instance.startsWith("synthetic-")) {
+            String[] size = instance.substring("synthetic-".length()).split("x");
+            buildSynthetic(Integer.parseInt(size[0]), Integer.parseInt(size[1]), seed);
+        } else {
+            dataManager.readRoomData(new File(root, "in/room.csv").getPath());
+            dataManager.readArgumentsData(new File(root, "in/Arguments4Exec.csv").getPath());
+            dataManager.readTimeTableData(new File(root, instance).getPath());
+        }
+        dataManager.getArguments().put("verbose", 0);
+        dataManager.getArguments().put("chains", 1);
+        dataManager.getArguments().put("seed", (int) seed);
+
+        List<String> roomNames = new ArrayList<>(dataManager.getAllRooms());
+        boolean[] specialRoomFlags = new boolean[roomNames.size()];
+        for (int r = 0; r < roomNames.size(); r++) {
+            specialRoomFlags[r] = dataManager.getSpecialRooms().contains(roomNames.get(r));
+        }
+
+        schedule = new Scheduler(dataManager).createInitialSchedule(dataManager.getSurgeryNodes());
+        Map<String, Integer> args = dataManager.getArguments();
+        compactSchedule = CompactSchedule.fromSchedule(schedule, roomNames, dataManager.getSurgeryNodes(),
+                args.getOrDefault("startTime", 510), args.getOrDefault("transitionTime", 45));
+        costEvaluator = new CostEvaluator(dataManager);
+        costEvaluator.reset(compactSchedule);
+        schedule.setCost(compactSchedule.getCost());
+
+        chain = new AnnealingChain(0, dataManager, specialRoomFlags, new SplittableRandom(seed), false);
+        chain.start(compactSchedule);
+        referenceTemperature = 1000;
+    }
+
+    @Override
+    public double calculateCost() {
+        return costEvaluator.reset(compactSchedule);
+    }
+
+    @Override
+    public double perturbHighTemperature() {
+        return perturbAndUndo(referenceTemperature);
+    }
+
+    @Override
+    public double perturbLowTemperature() {
+        return perturbAndUndo(1);
+    }
+
+    @Override
+    public double calibrateTemperature() {
+        return chain.calibrateTemperature();
+    }
+
+    @Override
+    public Object copySchedule() {
+        return schedule.copy();
+    }
+
+    @Override
+    public Object copyCompactSchedule() {
+        return compactSchedule.copy();
+    }
+
+    @Override
+    public boolean isValid() {
+        return chain.isValid(chain.getCurrentSchedule());
+    }
+
+    @Override
+    public double schedule() {
+        Map<String, Schedule> results = new Scheduler(dataManager).schedule();
+        return results.get("best").getCost();
+    }
+
+    @Override
+    public int surgeryCount() {
+        return dataManager.getSurgeryNodes().size();
+    }
+
+    @Override
+    public int loadArchive(String directory, boolean mapped) throws IOException {
+        int surgeries = 0;
+        for (Path file : BatchRunner.resolveInputs(new File(resolveRoot(), directory).getPath())) {
+            DataManager archive = new DataManager();
+            if (mapped) {
+                archive.readTimeTableDataMapped(file.toString());
+            } else {
+                archive.readTimeTableDataStreamed(file.toString());
+            }
+            surgeries += archive.getSurgeryNodes().size();
+        }
+        return surgeries;
+    }
+
+    // 產生一個移動並增量計算成本，之後立即還原，使每次量測都從相同的目前解開始
+    private double perturbAndUndo(double temperature) {
+        CompactSchedule current = chain.getCurrentSchedule();
+        if (!chain.perturbSchedule(current, temperature, referenceTemperature)) {
+            return current.getCost();
+        }
+        Move move = chain.getLastMove();
+        double cost = chain.evaluateMove(move);
+        move.undo(current);
+        return cost;
+    }
+
+    // 依規模產生合成資料：前兩間為特殊手術房，約 5% 的手術需要特殊手術房
+    private void buildSynthetic(int surgeries, int rooms, long seed) {
+        Random random = new Random(seed);
+        for (int r = 0; r < rooms; r++) {
+            String room = String.format("R%03d", r);
+            dataManager.getAllRooms().add(room);
+            if (r < 2) {
+                dataManager.getSpecialRooms().add(room);
+            }
+        }
+        List<String> roomNames = new ArrayList<>(dataManager.getAllRooms());
+        for (int i = 0; i < surgeries; i++) {
+            int duration = 30 + 15 * random.nextInt(19); // 30 ~ 300 分鐘
+            String special = random.nextInt(100) < 5 ? "Y" : "N";
+            dataManager.getSurgeryNodes().add(new SurgeryNode("S" + i,
+                    roomNames.get(random.nextInt(roomNames.size())), duration, special));
+        }
+        Map<String, Integer> args = dataManager.getArguments();
+        args.put("startTime", 510);
+        args.put("maxRegularTime", 540);
+        args.put("maxOvertime", 120);
+        args.put("transitionTime", 45);
+    }
+
+    private static File resolveRoot() {
+        String configured = System.getProperty("scheduler.root");
+        if (configured != null) {
+            return new File(configured);
+        }
+        File current = new File(".");
+        return new File(current, "in/room.csv").exists() ? current : new File("..");
+    }
+}
@@ -0,0 +1,358 @@
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+
+/**
+ * 增量計算的一致性自我檢查 (位於預設套件，才能存取排程器的套件層級方法)
+ * 以固定種子產生的合成資料隨機套用、接受或還原移動，將增量維護的狀態與完整重新計算的結果逐一比較；
+ * 分支定界則在小型實例上與窮舉所有房間分配的結果比較；串流與記憶體映射兩種 TimeTable 讀取器則以含引號欄位的資料比較。
+ * 任何不一致都會列出，並以非零的結束碼結束，修改增量成本評估等熱路徑後可用來確認結果不變：
+ * <pre>
+ * mvn -f bench/pom.xml package
+ * java -cp bench/target/benchmarks.jar ConsistencyCheck [每個實例的移動數，預設 200000]
+ * </pre>
+ */
+public class ConsistencyCheck {
+    private static final double EPSILON = 1e-6;
+    /** 合成實例的 手術數 x 房間數 */
+    private static final int[][] INSTANCES = { { 20, 4 }, { 60, 8 }, { 120, 24 } };
+    /** 與窮舉比較的分支定界小型實例 (手術數 x 房間數) 與每種大小的實例數 */
+    private static final int[][] EXACT_INSTANCES = { { 6, 3 }, { 8, 3 }, { 9, 3 }, { 7, 4 }, { 8, 4 } };
+    private static final int EXACT_SEEDS = 20;
+
+    private static int failures;
+
+    /** 讀取器比較用的 TimeTable：含引號內的逗號、跳脫的雙引號、帶引號的數字與 UTF-8 字元 */
+    private static final String[] LOADER_ROWS = {
+        "序號,申請單號,病歷號,科別,主刀醫師,手術房,備註,手術時間,特殊房",
+        "0,\"3844,01\",x,ORTH,\"Dr \"\"A\"\"\",A1,x,60,N",
+        "1,3844-02,x,ORTH,\"Dr \"\"A\"\"\",\"A1\",\"a, b\",\"75\",N",
+        "2,3844-03,\"\",外科,王醫師,A2,x\"y,45,\"Y\"",
+        "3,3844-04,x,外科,王醫師,A2,,abc,N",
+    };
+
+    public static void main(String[] args) throws IOException {
+        int moves = args.length > 0 ? Integer.parseInt(args[0]) : 200000;
+        for (int[] size : INSTANCES) {
+            DataManager dataManager = synthetic(size[0], size[1], 11L * size[0] + size[1]);
+            checkCostEvaluator(dataManager, moves, new SplittableRandom(size[0]));
+            checkTimeline(dataManager, moves, new SplittableRandom(size[1]));
+        }
+        for (int[] size : EXACT_INSTANCES) {
+            for (int k = 0; k < EXACT_SEEDS; k++) {
+                checkBranchAndBound(synthetic(size[0], size[1], 1000L * k + 7L * size[0] + size[1]));
+            }
+            System.out.println("BranchAndBoundEngine " + size[0] + "x" + size[1] + "：" + EXACT_SEEDS + " 個實例與窮舉比較完畢");
+        }
+        checkLoaders();
+        if (failures > 0) {
+            System.err.println("一致性檢查失敗：" + failures + " 項");
+            System.exit(1);
+        }
+        System.out.println("一致性檢查全部通過");
+    }
+
+    /**
+     * 增量成本評估：每次移動的成本 (以及醫師衝突的下界) 與完整重新計算相同，提交後的狀態與重新計算相同，
+     * 加班、超時與成本下界不超過實際值
+     * * @param dataManager 合成實例
+     *
+     * @param moves  隨機移動數
+     * @param random 亂數產生器
+     */
+    private static void checkCostEvaluator(DataManager dataManager, int moves, SplittableRandom random) {
+        String name = "CostEvaluator " + describe(dataManager);
+        CompactSchedule schedule = initialSchedule(dataManager);
+        CostEvaluator evaluator = new CostEvaluator(dataManager);
+        evaluator.reset(schedule);
+        Move move = new Move();
+        for (int i = 0; i < moves; i++) {
+            if (!randomMove(schedule, move, random)) {
+                continue;
+            }
+            move.apply(schedule);
+            double bound = evaluator.propose(schedule, move);
+            double proposed = evaluator.resolveProposal();
+            double expected = fullCost(dataManager, schedule);
+            expect(name + " 第 " + i + " 次移動的成本", proposed, expected);
+            if (bound > proposed + EPSILON) {
+                fail(name + " 第 " + i + " 次移動的成本下界 " + bound + " 大於實際成本 " + proposed);
+            }
+            if (random.nextBoolean()) {
+                evaluator.commit();
+                schedule.setCost(proposed);
+            } else {
+                move.undo(schedule);
+                evaluator.clearProposal();
+            }
+            if (i % 97 == 0) {
+                expect(name + " 第 " + i + " 次移動後的目前成本", evaluator.getCost(), fullCost(dataManager, schedule));
+                if (evaluator.getRegularOvertimeLowerBound() > evaluator.getTotalRegularOvertime()
+                        || evaluator.getOvertimeLowerBound() > evaluator.getTotalOvertime()
+                        || evaluator.getCostLowerBound() > evaluator.getCost() + EPSILON) {
+                    fail(name + " 第 " + i + " 次移動後的下界大於實際值");
+                }
+            }
+        }
+        System.out.println(name + "：" + moves + " 次移動檢查完畢");
+    }
+
+    /**
+     * 緊湊排程的時間軸：隨機套用或還原移動 (以及複製) 後，增量維護的 starts 與依房間內順序重新累加的結果相同
+     * * @param dataManager 合成實例
+     *
+     * @param moves  隨機移動數
+     * @param random 亂數產生器
+     */
+    private static void checkTimeline(DataManager dataManager, int moves, SplittableRandom random) {
+        String name = "CompactSchedule 時間軸 " + describe(dataManager);
+        Map<String, Integer> args = dataManager.getArguments();
+        int startTime = args.get("startTime");
+        int transitionTime = args.get("transitionTime");
+        CompactSchedule schedule = initialSchedule(dataManager);
+        Move move = new Move();
+        for (int i = 0; i < moves; i++) {
+            if (!randomMove(schedule, move, random)) {
+                continue;
+            }
+            move.apply(schedule);
+            if (random.nextBoolean()) {
+                move.undo(schedule);
+            }
+            CompactSchedule checked = i % 1009 == 0 ? schedule.copy() : schedule;
+            for (int r = 0; r < checked.getRoomCount(); r++) {
+                int time = startTime;
+                for (int k = 0; k < checked.length(r); k++) {
+                    int end = time + checked.getDuration(checked.get(r, k));
+                    if (checked.startOf(r, k) != time || checked.endOf(r, k) != end) {
+                        fail(name + " 第 " + i + " 次移動後房間 " + r + " 第 " + k + " 檯：" + checked.startOf(r, k)
+                                + "~" + checked.endOf(r, k) + "，重新計算為 " + time + "~" + end);
+                    }
+                    time = end + transitionTime;
+                }
+                int expectedEnd = checked.length(r) == 0 ? startTime : time - transitionTime;
+                if (checked.roomEndTime(r) != expectedEnd) {
+                    fail(name + " 第 " + i + " 次移動後房間 " + r + " 的結束時間：" + checked.roomEndTime(r)
+                            + "，重新計算為 " + expectedEnd);
+                }
+            }
+        }
+        System.out.println(name + "：" + moves + " 次移動檢查完畢");
+    }
+
+    /**
+     * TimeTable 讀取器：串流 (CsvReader) 與記憶體映射 (MappedTimeTable) 讀出的手術欄位與原樣輸出相同，
+     * 引號已去除、"" 已還原為 "
+     */
+    private static void checkLoaders() throws IOException {
+        Path file = Files.createTempFile("loader-check", ".csv");
+        try {
+            Files.write(file, Arrays.asList(LOADER_ROWS), StandardCharsets.UTF_8);
+            DataManager streamed = new DataManager();
+            streamed.readTimeTableDataStreamed(file.toString());
+            DataManager mapped = new DataManager();
+            mapped.readTimeTableDataMapped(file.toString());
+
+            List<SurgeryNode> expected = streamed.getSurgeryNodes();
+            List<SurgeryNode> actual = mapped.getSurgeryNodes();
+            if (expected.size() != actual.size()) {
+                fail("MappedTimeTable 讀出 " + actual.size() + " 檯手術，串流讀取為 " + expected.size());
+                return;
+            }
+            if (!expected.isEmpty() && !"3844,01".equals(expected.get(0).getApplicationId())) {
+                fail("CsvReader 的申請單號為 " + expected.get(0).getApplicationId() + "，預期為 3844,01");
+            }
+            for (int i = 0; i < expected.size(); i++) {
+                SurgeryNode e = expected.get(i);
+                SurgeryNode a = actual.get(i);
+                String[] expectedFields = { e.getApplicationId(), e.getInitialRoom(),
+                        Integer.toString(e.getSurgeryTime()), e.getSpecialRoomRequirement(), e.getDepartment(),
+                        e.getSurgeon() };
+                String[] actualFields = { a.getApplicationId(), a.getInitialRoom(),
+                        Integer.toString(a.getSurgeryTime()), a.getSpecialRoomRequirement(), a.getDepartment(),
+                        a.getSurgeon() };
+                if (!Arrays.equals(expectedFields, actualFields)) {
+                    fail("MappedTimeTable 第 " + i + " 檯手術：" + Arrays.toString(actualFields) + "，串流讀取為 "
+                            + Arrays.toString(expectedFields));
+                }
+            }
+
+            ByteArrayOutputStream expectedOutput = new ByteArrayOutputStream();
+            streamed.writeTo(expectedOutput);
+            ByteArrayOutputStream actualOutput = new ByteArrayOutputStream();
+            mapped.writeTo(actualOutput);
+            if (!Arrays.equals(expectedOutput.toByteArray(), actualOutput.toByteArray())) {
+                fail("MappedTimeTable 的輸出與串流讀取不同");
+            }
+        } finally {
+            Files.delete(file);
+        }
+        System.out.println("TimeTable 讀取器：" + (LOADER_ROWS.length - 1) + " 筆記錄比較完畢");
+    }
+
+    /**
+     * 分支定界：證明的最佳分配成本 (不計醫師衝突) 與窮舉所有滿足特殊手術房限制的房間分配所得的最小成本相同
+     * * @param dataManager 小型合成實例 (會將 surgeonConflictWeight 設為 0)
+     */
+    private static void checkBranchAndBound(DataManager dataManager) {
+        String name = "BranchAndBoundEngine " + describe(dataManager);
+        dataManager.getArguments().put("surgeonConflictWeight", 0);
+        dataManager.getArguments().put("bbTimeLimit", 60000);
+        CompactSchedule initial = initialSchedule(dataManager);
+        new CostEvaluator(dataManager).reset(initial);
+        boolean[] specialRoomFlags = new boolean[initial.getRoomCount()];
+        for (int r = 0; r < specialRoomFlags.length; r++) {
+            specialRoomFlags[r] = dataManager.getSpecialRooms().contains(initial.getRoomName(r));
+        }
+        BranchAndBoundEngine engine = new BranchAndBoundEngine(dataManager, specialRoomFlags, 1, null);
+        CompactSchedule best = engine.search(initial);
+        if (!engine.isProvedOptimal()) {
+            fail(name + " 未能證明最佳解");
+            return;
+        }
+
+        // 窮舉：以 R 進位數列舉每檯手術的房間
+        int n = initial.getSurgeryCount();
+        int rooms = initial.getRoomCount();
+        int[] assignment = new int[n];
+        CompactSchedule candidate = initial.copy();
+        CostEvaluator evaluator = new CostEvaluator(dataManager);
+        double minimum = Double.MAX_VALUE;
+        do {
+            boolean feasible = true;
+            for (int i = 0; i < n && feasible; i++) {
+                feasible = canHost(candidate, assignment[i], i);
+            }
+            if (feasible) {
+                for (int r = 0; r < rooms; r++) {
+                    while (candidate.length(r) > 0) {
+                        candidate.removeLast(r);
+                    }
+                }
+                for (int i = 0; i < n; i++) {
+                    candidate.append(assignment[i], i);
+                }
+                minimum = Math.min(minimum, evaluator.reset(candidate));
+            }
+        } while (nextAssignment(assignment, rooms));
+
+        expect(name + " 證明的最佳成本", engine.getProvenLowerBound(), minimum);
+        expect(name + " 回傳排程的成本", best.getCost(), minimum);
+    }
+
+    // 將分配視為 R 進位數加一；所有分配都列舉過時回傳 false
+    private static boolean nextAssignment(int[] assignment, int rooms) {
+        for (int i = 0; i < assignment.length; i++) {
+            if (++assignment[i] < rooms) {
+                return true;
+            }
+            assignment[i] = 0;
+        }
+        return false;
+    }
+
+    /**
+     * 產生一個滿足特殊手術房限制的隨機插入或交換 (尚未套用)
+     * * @param schedule 目前排程
+     *
+     * @param move   寫入移動內容
+     * @param random 亂數產生器
+     * @return 是否產生了移動
+     */
+    static boolean randomMove(CompactSchedule schedule, Move move, SplittableRandom random) {
+        int roomCount = schedule.getRoomCount();
+        int source = random.nextInt(roomCount);
+        int target = random.nextInt(roomCount);
+        if (source == target || schedule.length(source) == 0) {
+            return false;
+        }
+        int sourceIndex = random.nextInt(schedule.length(source));
+        if (!canHost(schedule, target, schedule.get(source, sourceIndex))) {
+            return false;
+        }
+        int targetLength = schedule.length(target);
+        if (targetLength > 0 && random.nextBoolean()) {
+            int swapIndex = random.nextInt(targetLength);
+            if (!canHost(schedule, source, schedule.get(target, swapIndex))) {
+                return false;
+            }
+            move.set(Move.Type.SWAP, source, sourceIndex, target, swapIndex);
+        } else {
+            move.set(Move.Type.INSERT, source, sourceIndex, target, random.nextInt(targetLength + 1));
+        }
+        return true;
+    }
+
+    // 合成實例的前兩間為特殊手術房
+    private static boolean canHost(CompactSchedule schedule, int room, int surgery) {
+        return room < 2 || !schedule.isSpecialRequired(surgery);
+    }
+
+    /**
+     * 產生合成實例：前兩間為特殊手術房，約 5% 的手術需要特殊手術房，主刀醫師從少數幾位中抽選以產生衝突
+     * * @param surgeries 手術數
+     *
+     * @param rooms 房間數
+     * @param seed  亂數種子
+     * @return 已載入手術與參數的資料管理器
+     */
+    static DataManager synthetic(int surgeries, int rooms, long seed) {
+        DataManager dataManager = new DataManager();
+        Random random = new Random(seed);
+        for (int r = 0; r < rooms; r++) {
+            String room = String.format("R%03d", r);
+            dataManager.getAllRooms().add(room);
+            if (r < 2) {
+                dataManager.getSpecialRooms().add(room);
+            }
+        }
+        List<String> roomNames = new ArrayList<>(dataManager.getAllRooms());
+        int surgeons = Math.max(2, surgeries / 4);
+        for (int i = 0; i < surgeries; i++) {
+            int duration = 30 + 15 * random.nextInt(19); // 30 ~ 300 分鐘
+            String special = random.nextInt(100) < 5 ? "Y" : "N";
+            dataManager.getSurgeryNodes().add(new SurgeryNode("S" + i,
+                    roomNames.get(random.nextInt(roomNames.size())), duration, special, "D" + random.nextInt(3),
+                    "M" + random.nextInt(surgeons)));
+        }
+        Map<String, Integer> args = dataManager.getArguments();
+        args.put("startTime", 510);
+        args.put("maxRegularTime", 540);
+        args.put("maxOvertime", 120);
+        args.put("transitionTime", 45);
+        args.put("verbose", 0);
+        args.put("surgeonConflictWeight", 3); // 預設不檢查醫師衝突，自我檢查需涵蓋衝突索引
+        return dataManager;
+    }
+
+    /** 以輪流分配的初始解建立緊湊排程 (房間順序與 DataManager 相同) */
+    static CompactSchedule initialSchedule(DataManager dataManager) {
+        Map<String, Integer> args = dataManager.getArguments();
+        Schedule schedule = new Scheduler(dataManager).createInitialSchedule(dataManager.getSurgeryNodes());
+        return CompactSchedule.fromSchedule(schedule, new ArrayList<>(dataManager.getAllRooms()),
+                dataManager.getSurgeryNodes(), args.get("startTime"), args.get("transitionTime"));
+    }
+
+    /** 以新的評估器完整重新計算成本 (不修改排程) */
+    static double fullCost(DataManager dataManager, CompactSchedule schedule) {
+        return new CostEvaluator(dataManager).reset(schedule.copy());
+    }
+
+    static String describe(DataManager dataManager) {
+        return dataManager.getSurgeryNodes().size() + "x" + dataManager.getAllRooms().size();
+    }
+
+    static void expect(String what, double actual, double expected) {
+        if (Math.abs(actual - expected) > EPSILON) {
+            fail(what + "：" + actual + "，完整重新計算為 " + expected);
+        }
+    }
+
+    static void fail(String message) {
+        if (failures++ < 20) {
+            System.err.println("不一致：" + message);
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * 模擬退火熱迴圈中各個步驟的微基準測試：成本計算、鄰近解產生 (含增量成本與還原)、初始溫度校準、
+ * 排程複製與特殊手術房限制檢查。
+ * 以 -prof gc 執行可同時觀察每次操作的配置量 (gc.alloc.rate.norm)。
+ */
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class HotPathBenchmark {
+    @Param({"TimeTable/_2024-07-01_TimeTable.csv", "synthetic-200x50", "synthetic-500x50", "synthetic-1000x60"})
+    public String instance;
+
+    @Param("42")
+    public long seed;
+
+    private SchedulerHarness harness;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        harness = SchedulerHarness.create();
+        harness.setUp(instance, seed);
+    }
+
+    @Benchmark
+    public double calculateCost() {
+        return harness.calculateCost();
+    }
+
+    @Benchmark
+    public double perturbHighTemperature() {
+        return harness.perturbHighTemperature();
+    }
+
+    @Benchmark
+    public double perturbLowTemperature() {
+        return harness.perturbLowTemperature();
+    }
+
+    @Benchmark
+    public double calibrateTemperature() {
+        return harness.calibrateTemperature();
+    }
+
+    @Benchmark
+    public Object copySchedule() {
+        return harness.copySchedule();
+    }
+
+    @Benchmark
+    public Object copyCompactSchedule() {
+        return harness.copyCompactSchedule();
+    }
+
+    @Benchmark
+    public boolean isValid() {
+        return harness.isValid();
+    }
+}
@@ -0,0 +1,35 @@
+package bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * 讀取整個 TimeTable 資料夾的基準測試：串流 CsvReader 與記憶體映射 MappedTimeTable 的比較
+ * 每次呼叫都重新讀取所有檔案並建立 SurgeryNode；可加上 -prof gc 比較每次讀取的配置量。
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class LoaderBenchmark {
+    @Param("TimeTable")
+    public String directory;
+
+    @Param({"streamed", "mapped"})
+    public String loader;
+
+    private SchedulerHarness harness;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        harness = SchedulerHarness.create();
+    }
+
+    @Benchmark
+    public int loadArchive() throws Exception {
+        return harness.loadArchive(directory, "mapped".equals(loader));
+    }
+}
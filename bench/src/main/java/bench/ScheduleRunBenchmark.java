@@ -0,0 +1,36 @@
+package bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * 完整執行一次 Scheduler.schedule() 的端對端基準測試
+ * 每次執行都從相同的初始排程開始；大型合成資料的完整退火耗時過長，因此只量測真實資料與小型合成資料。
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Thread)
+public class ScheduleRunBenchmark {
+    @Param({"TimeTable/_2024-07-01_TimeTable.csv", "synthetic-200x50"})
+    public String instance;
+
+    @Param("42")
+    public long seed;
+
+    private SchedulerHarness harness;
+
+    @Setup(Level.Iteration)
+    public void setUp() throws Exception {
+        harness = SchedulerHarness.create();
+        harness.setUp(instance, seed);
+    }
+
+    @Benchmark
+    public double schedule() {
+        return harness.schedule();
+    }
+}
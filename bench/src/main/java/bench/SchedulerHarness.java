@@ -0,0 +1,63 @@
+package bench;
+
+/**
+ * 基準測試與排程器之間的橋接介面
+ * 排程器的類別位於預設套件，JMH 的基準測試類別必須位於具名套件，
+ * 因此由預設套件中的 BenchHarness 實作此介面，再由基準測試以反射建立。
+ */
+public interface SchedulerHarness {
+    /**
+     * 準備一個排程實例
+     *
+     * @param instance 相對於專案根目錄的 TimeTable 路徑，或 synthetic-手術數x房間數 (例如 synthetic-200x50)
+     * @param seed     亂數種子
+     * @throws Exception 讀取資料錯誤
+     */
+    void setUp(String instance, long seed) throws Exception;
+
+    /** 完整掃描計算目前解的成本 (CostEvaluator.reset) */
+    double calculateCost();
+
+    /** 高溫階段：產生一個移動 (移動最長手術)、增量計算成本後還原 */
+    double perturbHighTemperature();
+
+    /** 低溫階段：產生一個移動 (移動最短手術)、增量計算成本後還原 */
+    double perturbLowTemperature();
+
+    /** 校準初始溫度 (退火開始前的啟動成本) */
+    double calibrateTemperature();
+
+    /** 以 LinkedList 為基礎的 Schedule.copy() */
+    Object copySchedule();
+
+    /** 以陣列為基礎的 CompactSchedule.copy() */
+    Object copyCompactSchedule();
+
+    /** 完整掃描檢查特殊手術房限制 */
+    boolean isValid();
+
+    /** 執行一次完整的 Scheduler.schedule()，回傳最佳成本 */
+    double schedule();
+
+    /** 手術數量 */
+    int surgeryCount();
+
+    /**
+     * 讀取資料夾中所有 TimeTable 檔案 (每個檔案使用新的 DataManager)
+     *
+     * @param directory 相對於專案根目錄的資料夾
+     * @param mapped    是否使用記憶體映射的讀取器
+     * @return 讀入的手術總數
+     * @throws Exception 讀取資料錯誤
+     */
+    int loadArchive(String directory, boolean mapped) throws Exception;
+
+    /** 建立預設套件中的 BenchHarness 實作 */
+    static SchedulerHarness create() {
+        try {
+            return (SchedulerHarness) Class.forName("BenchHarness").getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("無法建立 BenchHarness", e);
+        }
+    }
+}
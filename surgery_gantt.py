@@ -37,6 +37,39 @@ def read_timetable(file_path):
             timetable.append(row)
     return timetable
 
+def is_surgery_row(row):
+    """是否為手術記錄：手術時間欄 (第 8 欄) 為整數；標題行或欄位不足的列不是手術"""
+    if len(row) < 9:
+        return False
+    try:
+        int(row[7])
+    except ValueError:
+        return False
+    return True
+
+def surgery_intervals(timetable, arguments, all_rooms):
+    """取得每檯手術的 (欄位, 開始時間, 結束時間)
+    OutTimeTable.csv 已在最後兩欄提供開始與結束時間 (分鐘)，直接使用；
+    原始 TimeTable.csv 沒有這兩欄，依房間內順序由開始時間與銜接期間推算"""
+    start_time = arguments['每日開始排程時間']
+    transition_time = arguments['兩檯手術之間的銜接期間']
+
+    intervals = []
+    room_current_time = {room: start_time for room in all_rooms}  # 每個房間的時間起點
+    for surgery in timetable:
+        if not is_surgery_row(surgery):  # 跳過標題行 (TimeTable 通常沒有標題行)
+            continue
+        fields = surgery[:10]
+        room, duration = fields[5], int(fields[7])
+        if len(surgery) >= 12:
+            surgery_start, surgery_end = int(surgery[10]), int(surgery[11])
+        else:
+            surgery_start = room_current_time[room]
+            surgery_end = surgery_start + duration
+        room_current_time[room] = surgery_end + transition_time
+        intervals.append((fields, surgery_start, surgery_end))
+    return intervals
+
 def calculate_time_in_blocks(timetable, arguments, all_rooms):
     """計算手術在不同背景區塊的時間"""
     start_time = arguments['每日開始排程時間']
@@ -50,13 +83,7 @@ def calculate_time_in_blocks(timetable, arguments, all_rooms):
     time_in_yellow = 0
     time_in_red = 0
 
-    room_current_time = {room: start_time for room in all_rooms}  # 每個房間的時間起點
-    for surgery in timetable[1:]:  # 跳過標題行
-        surgery_date, app_id, patient_id, dept, surgeon, room, anaesthesia, duration, special, priority = surgery
-        duration = int(duration)
-        surgery_start = room_current_time[room]
-        surgery_end = surgery_start + duration
-
+    for _, surgery_start, surgery_end in surgery_intervals(timetable, arguments, all_rooms):
         # 計算手術在黃色區塊的時間
         if surgery_start < red_start and surgery_end > yellow_start:
             overlap_yellow_start = max(surgery_start, yellow_start)
@@ -69,9 +96,6 @@ def calculate_time_in_blocks(timetable, arguments, all_rooms):
             overlap_red_end = min(surgery_end, 1440)
             time_in_red += max(0, overlap_red_end - overlap_red_start)
 
-        # 更新房間的時間起點
-        room_current_time[room] = surgery_end + transition_time
-
     return time_in_yellow, time_in_red
 
 def plot_gantt(timetable, all_rooms, special_rooms, arguments, ax, title):
@@ -82,33 +106,21 @@ def plot_gantt(timetable, all_rooms, special_rooms, arguments, ax, title):
     max_overtime = arguments['每日允許可用的最大超時期間']
     transition_time = arguments['兩檯手術之間的銜接期間']
 
-    # 計算最後一檯手術結束的時間
-    room_current_time = {room: start_time for room in all_rooms}  # 每個房間的時間起點
-    for surgery in timetable[1:]:  # 跳過標題行
-        surgery_date, app_id, patient_id, dept, surgeon, room, anaesthesia, duration, special, priority = surgery
-        duration = int(duration)
-        surgery_start = room_current_time[room]
-        surgery_end = surgery_start + duration + transition_time
-        room_current_time[room] = surgery_end
-
-    final_end_time = max(room_current_time.values())  # 所有房間的最後結束時間
+    # 計算最後一檯手術結束的時間 (含之後的銜接時間)
+    intervals = surgery_intervals(timetable, arguments, all_rooms)
+    final_end_time = max([end + transition_time for _, _, end in intervals], default=start_time)  # 所有房間的最後結束時間
 
     # 背景顏色覆蓋到最後一檯手術的結束時間
     ax.axvspan(start_time, start_time + max_regular, color='lightgreen', alpha=0.5, label='正常時間')
     ax.axvspan(start_time + max_regular, start_time + max_regular + max_overtime, color='khaki', alpha=0.5, label='加班時間')
     ax.axvspan(start_time + max_regular + max_overtime, final_end_time, color='lightcoral', alpha=0.5, label='超時時間')
 
-    room_current_time = {room: start_time for room in all_rooms}  # 重置各房間的時間起點
-    for surgery in timetable[1:]:
+    for surgery, surgery_start, surgery_end in intervals:
         surgery_date, app_id, patient_id, dept, surgeon, room, anaesthesia, duration, special, priority = surgery
         duration = int(duration)
         room_name = room + (' (Y)' if room in special_rooms else '')
         y_pos = room_indices[room]
 
-        # 確保手術開始時間在每日開始排程時間之後
-        surgery_start = room_current_time[room]
-        surgery_end = surgery_start + duration
-
         # 畫手術區塊
         ax.barh(y_pos, duration, left=surgery_start, color='skyblue', edgecolor='black')
         # 顯示手術編號
@@ -119,9 +131,6 @@ def plot_gantt(timetable, all_rooms, special_rooms, arguments, ax, title):
         # 畫銜接時間
         ax.barh(y_pos, transition_time, left=surgery_end, color='blue', edgecolor='black')
 
-        # 更新房間的時間起點
-        room_current_time[room] = surgery_end + transition_time
-
     # 房間名稱
     ax.set_yticks(range(len(all_rooms)))
     ax.set_yticklabels(all_rooms)